@@ -0,0 +1,330 @@
+package NeuralNetCPUv;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Activation function of a layer, with primitive float signatures.
+ *
+ * The scalar methods work on one value; the bulk methods run over a whole
+ * array range in a single loop, so a layer evaluates its activation without
+ * boxing or allocating. The derivative is always taken with respect to the
+ * pre-activation value z (what Layer stores in lastZ).
+ *
+ * Built-in implementations (RELU, SIGMOID, TANH, LINEAR, LEAKY_RELU) reuse
+ * the formulas in Activations and override the bulk methods with plain
+ * loops over their own math. SIGMOID and TANH switch to the FastMath
+ * approximations when FastMath.isEnabled().
+ */
+public interface Activation {
+
+    /** f(x) */
+    float apply(float x);
+
+    /** f'(x) */
+    float derivative(float x);
+
+    /** Short name used when printing a network */
+    default String name() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * out[outOff + i] = f(in[inOff + i]) for i in [0, n).
+     * in and out may be the same array range.
+     */
+    default void apply(float[] in, int inOff, float[] out, int outOff, int n) {
+        for (int i = 0; i < n; i++) {
+            out[outOff + i] = apply(in[inOff + i]);
+        }
+    }
+
+    /** out[i] = f(in[i]) for i in [0, n) */
+    default void apply(float[] in, float[] out, int n) {
+        apply(in, 0, out, 0, n);
+    }
+
+    /**
+     * out[outOff + i] = f'(in[inOff + i]) for i in [0, n).
+     * in and out may be the same array range.
+     */
+    default void derivative(float[] in, int inOff, float[] out, int outOff, int n) {
+        for (int i = 0; i < n; i++) {
+            out[outOff + i] = derivative(in[inOff + i]);
+        }
+    }
+
+    /** out[i] = f'(in[i]) for i in [0, n) */
+    default void derivative(float[] in, float[] out, int n) {
+        derivative(in, 0, out, 0, n);
+    }
+
+    /**
+     * Backpropagation through the activation: grad[i] *= f'(z[i]) for i in [0, n).
+     * Turns dL/dA into dL/dZ in place.
+     */
+    default void multiplyDerivative(float[] z, float[] grad, int n) {
+        for (int i = 0; i < n; i++) {
+            grad[i] *= derivative(z[i]);
+        }
+    }
+
+    // ============================
+    // Built-in activations
+    // ============================
+
+    Activation RELU = new Relu();
+    Activation SIGMOID = new Sigmoid();
+    Activation TANH = new Tanh();
+    Activation LINEAR = new Linear();
+    Activation LEAKY_RELU = new LeakyRelu(0.01f);
+
+    /**
+     * Leaky ReLU with a custom negative slope.
+     *
+     * @param alpha slope used for x <= 0 (e.g. 0.01)
+     */
+    static Activation leakyRelu(float alpha) {
+        return new LeakyRelu(alpha);
+    }
+
+    /**
+     * Built-in activation from its name() (e.g. "ReLU", "LeakyReLU(0.01)").
+     *
+     * @throws IllegalArgumentException for unknown or custom activations
+     */
+    static Activation forName(String name) {
+        switch (name) {
+            case "ReLU":
+                return RELU;
+            case "Sigmoid":
+                return SIGMOID;
+            case "Tanh":
+                return TANH;
+            case "Linear":
+                return LINEAR;
+            default:
+                if (name.startsWith("LeakyReLU(") && name.endsWith(")")) {
+                    return leakyRelu(Float.parseFloat(name.substring(10, name.length() - 1)));
+                }
+                throw new IllegalArgumentException("Unknown activation: " + name);
+        }
+    }
+
+    /**
+     * Wraps boxed functions (the old Layer constructor arguments).
+     * Slower than the built-ins: every value is boxed.
+     *
+     * @param function   f(x)
+     * @param derivative f'(x), or null for a constant derivative of 1
+     */
+    static Activation of(Function<Float, Float> function, Function<Float, Float> derivative) {
+        return new Activation() {
+            @Override
+            public float apply(float x) {
+                return function.apply(x);
+            }
+
+            @Override
+            public float derivative(float x) {
+                return derivative != null ? derivative.apply(x) : 1.0f;
+            }
+
+            @Override
+            public String name() {
+                return "Custom";
+            }
+        };
+    }
+
+    /** max(0, x) */
+    final class Relu implements Activation {
+        @Override
+        public float apply(float x) {
+            return Activations.relu(x);
+        }
+
+        @Override
+        public float derivative(float x) {
+            return Activations.reluDerivative(x);
+        }
+
+        @Override
+        public String name() {
+            return "ReLU";
+        }
+
+        @Override
+        public void apply(float[] in, int inOff, float[] out, int outOff, int n) {
+            for (int i = 0; i < n; i++) {
+                out[outOff + i] = Math.max(0.0f, in[inOff + i]);
+            }
+        }
+
+        @Override
+        public void derivative(float[] in, int inOff, float[] out, int outOff, int n) {
+            for (int i = 0; i < n; i++) {
+                out[outOff + i] = in[inOff + i] > 0.0f ? 1.0f : 0.0f;
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(float[] z, float[] grad, int n) {
+            for (int i = 0; i < n; i++) {
+                grad[i] = z[i] > 0.0f ? grad[i] : 0.0f;
+            }
+        }
+    }
+
+    /** x for x > 0, alpha * x otherwise */
+    final class LeakyRelu implements Activation {
+        public final float alpha;
+
+        public LeakyRelu(float alpha) {
+            this.alpha = alpha;
+        }
+
+        @Override
+        public float apply(float x) {
+            return Activations.leakyRelu(x, alpha);
+        }
+
+        @Override
+        public float derivative(float x) {
+            return Activations.leakyReluDerivative(x, alpha);
+        }
+
+        @Override
+        public String name() {
+            return "LeakyReLU(" + alpha + ")";
+        }
+
+        @Override
+        public void apply(float[] in, int inOff, float[] out, int outOff, int n) {
+            float a = alpha;
+            for (int i = 0; i < n; i++) {
+                float x = in[inOff + i];
+                out[outOff + i] = x > 0.0f ? x : a * x;
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(float[] z, float[] grad, int n) {
+            float a = alpha;
+            for (int i = 0; i < n; i++) {
+                grad[i] = z[i] > 0.0f ? grad[i] : a * grad[i];
+            }
+        }
+    }
+
+    /** 1 / (1 + e^(-x)) */
+    final class Sigmoid implements Activation {
+        @Override
+        public float apply(float x) {
+            return Activations.sigmoid(x);
+        }
+
+        @Override
+        public float derivative(float x) {
+            return Activations.sigmoidDerivative(x);
+        }
+
+        @Override
+        public String name() {
+            return "Sigmoid";
+        }
+
+        @Override
+        public void apply(float[] in, int inOff, float[] out, int outOff, int n) {
+            if (FastMath.isEnabled()) {
+                Kernels.get().sigmoid(in, inOff, out, outOff, n);
+                return;
+            }
+            for (int i = 0; i < n; i++) {
+                out[outOff + i] = Activations.sigmoid(in[inOff + i]);
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(float[] z, float[] grad, int n) {
+            boolean fast = FastMath.isEnabled();
+            for (int i = 0; i < n; i++) {
+                float s = fast ? FastMath.sigmoid(z[i]) : Activations.sigmoid(z[i]);
+                grad[i] *= s * (1.0f - s);
+            }
+        }
+    }
+
+    /** tanh(x) */
+    final class Tanh implements Activation {
+        @Override
+        public float apply(float x) {
+            return Activations.tanh(x);
+        }
+
+        @Override
+        public float derivative(float x) {
+            return Activations.tanhDerivative(x);
+        }
+
+        @Override
+        public String name() {
+            return "Tanh";
+        }
+
+        @Override
+        public void apply(float[] in, int inOff, float[] out, int outOff, int n) {
+            if (FastMath.isEnabled()) {
+                Kernels.get().tanh(in, inOff, out, outOff, n);
+                return;
+            }
+            for (int i = 0; i < n; i++) {
+                out[outOff + i] = Activations.tanh(in[inOff + i]);
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(float[] z, float[] grad, int n) {
+            boolean fast = FastMath.isEnabled();
+            for (int i = 0; i < n; i++) {
+                float t = fast ? FastMath.tanh(z[i]) : Activations.tanh(z[i]);
+                grad[i] *= 1.0f - t * t;
+            }
+        }
+    }
+
+    /** Identity (used before softmax in the output layer) */
+    final class Linear implements Activation {
+        @Override
+        public float apply(float x) {
+            return x;
+        }
+
+        @Override
+        public float derivative(float x) {
+            return 1.0f;
+        }
+
+        @Override
+        public String name() {
+            return "Linear";
+        }
+
+        @Override
+        public void apply(float[] in, int inOff, float[] out, int outOff, int n) {
+            if (in != out || inOff != outOff) {
+                System.arraycopy(in, inOff, out, outOff, n);
+            }
+        }
+
+        @Override
+        public void derivative(float[] in, int inOff, float[] out, int outOff, int n) {
+            Arrays.fill(out, outOff, outOff + n, 1.0f);
+        }
+
+        @Override
+        public void multiplyDerivative(float[] z, float[] grad, int n) {
+            // f'(z) = 1: the gradient passes through unchanged
+        }
+    }
+}
@@ -64,6 +64,38 @@ public class Activations {
         }
     }
 
+    /**
+     * Leaky ReLU activation function.
+     * Formula: LeakyReLU(x) = x if x > 0, else alpha * x
+     *
+     * @param x     the input value
+     * @param alpha slope for negative inputs (e.g. 0.01)
+     * @return the leaky ReLU of x
+     */
+    public static float leakyRelu(float x, float alpha) {
+        if (x > 0.0f) {
+            return x;          // positive values remain unchanged
+        } else {
+            return alpha * x;  // negative values are scaled down
+        }
+    }
+
+    /**
+     * Derivative of the leaky ReLU function.
+     * Formula: LeakyReLU'(x) = 1 if x > 0, else alpha
+     *
+     * @param x     the input value
+     * @param alpha slope for negative inputs
+     * @return the derivative of leaky ReLU at x
+     */
+    public static float leakyReluDerivative(float x, float alpha) {
+        if (x > 0.0f) {
+            return 1.0f;
+        } else {
+            return alpha;
+        }
+    }
+
     /**
      * Hyperbolic tangent (tanh) activation function.
      * Formula: tanh(x) = (e^x - e^(-x)) / (e^x + e^(-x))
@@ -102,30 +134,52 @@ public class Activations {
      * @return the softmax output vector
      */
     public static float[] softmax(float[] z) {
-        // Step 1: find the maximum value in the array for numerical stability
-        float maxValue = z[0];
-        for (int i = 1; i < z.length; i++) {
-            if (z[i] > maxValue) {
-                maxValue = z[i];
+        float[] softmaxOutput = new float[z.length];
+        softmaxInto(z, 0, softmaxOutput, 0, z.length);
+        return softmaxOutput;
+    }
+
+    /**
+     * Softmax of z[zOffset .. zOffset + n) written to out[outOffset ..].
+     * Used for one row of a batch; z and out may be the same range.
+     * Uses FastMath.softmaxInPlace when fast math is enabled.
+     *
+     * @param z         array holding the raw scores
+     * @param zOffset   index of the first score
+     * @param out       destination array
+     * @param outOffset index of the first output element
+     * @param n         number of scores
+     */
+    public static void softmaxInto(float[] z, int zOffset, float[] out, int outOffset, int n) {
+        // Fast math: fused in-place version
+        if (FastMath.isEnabled()) {
+            if (z != out || zOffset != outOffset) {
+                System.arraycopy(z, zOffset, out, outOffset, n);
+            }
+            FastMath.softmaxInPlace(out, outOffset, n);
+            return;
+        }
+
+        // Step 1: find the maximum value for numerical stability
+        float maxValue = z[zOffset];
+        for (int i = 1; i < n; i++) {
+            if (z[zOffset + i] > maxValue) {
+                maxValue = z[zOffset + i];
             }
         }
 
         // Step 2: exponentiate each element (after subtracting maxValue)
-        float[] exponentials = new float[z.length];
         float sumOfExponentials = 0.0f;
-        for (int i = 0; i < z.length; i++) {
-            double exponent = Math.exp(z[i] - maxValue);
-            exponentials[i] = (float) exponent;
-            sumOfExponentials += exponentials[i];
+        for (int i = 0; i < n; i++) {
+            float exponential = (float) Math.exp(z[zOffset + i] - maxValue);
+            out[outOffset + i] = exponential;
+            sumOfExponentials += exponential;
         }
 
         // Step 3: divide each exponentiated value by the sum to normalize
-        float[] softmaxOutput = new float[z.length];
-        for (int i = 0; i < z.length; i++) {
-            softmaxOutput[i] = exponentials[i] / sumOfExponentials;
+        for (int i = 0; i < n; i++) {
+            out[outOffset + i] /= sumOfExponentials;
         }
-
-        return softmaxOutput;
     }
 
     /**
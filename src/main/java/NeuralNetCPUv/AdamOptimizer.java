@@ -0,0 +1,79 @@
+package NeuralNetCPUv;
+
+/**
+ * Adam and AdamW.
+ *
+ * Per parameter, with step t:
+ *   m = beta1 * m + (1 - beta1) * g
+ *   v = beta2 * v + (1 - beta2) * g^2
+ *   p -= lr * (m / (1 - beta1^t)) / (sqrt(v / (1 - beta2^t)) + eps)
+ *
+ * Weight decay is either added to the gradient (Adam, L2) or applied
+ * directly to the parameter as p -= lr * weightDecay * p (AdamW,
+ * "decoupled"). The bias corrections are computed once per step, so the
+ * inner loop is only multiplies, adds, one sqrt and one divide.
+ */
+public class AdamOptimizer extends Optimizer {
+
+    public final float beta1;
+    public final float beta2;
+    public final float epsilon;
+    public final float weightDecay;
+    public final boolean decoupledWeightDecay;
+
+    /**
+     * @param learningRate         step size
+     * @param beta1                decay of the first moment (e.g. 0.9)
+     * @param beta2                decay of the second moment (e.g. 0.999)
+     * @param epsilon              added to the denominator (e.g. 1e-8)
+     * @param weightDecay          weight decay factor (0 = none)
+     * @param decoupledWeightDecay true for AdamW, false for L2 in the gradient
+     */
+    public AdamOptimizer(float learningRate, float beta1, float beta2, float epsilon,
+                         float weightDecay, boolean decoupledWeightDecay) {
+        super(learningRate);
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+        this.weightDecay = weightDecay;
+        this.decoupledWeightDecay = decoupledWeightDecay;
+    }
+
+    @Override
+    public String name() {
+        return (decoupledWeightDecay ? "AdamW" : "Adam") + "(lr=" + learningRate + ")";
+    }
+
+    @Override
+    protected int stateArrays() {
+        return 2;
+    }
+
+    @Override
+    protected void update(float[] param, int pOff, float[] grad, int gOff,
+                          float[][] state, int sOff, int n) {
+        float[] m = state[0];
+        float[] v = state[1];
+        float b1 = beta1;
+        float b2 = beta2;
+        float eps = epsilon;
+
+        // Bias corrections folded into two scalars
+        float stepSize = (float) (learningRate / (1.0 - Math.pow(beta1, stepCount)));
+        float invSqrtCorrection = (float) (1.0 / Math.sqrt(1.0 - Math.pow(beta2, stepCount)));
+        float l2 = decoupledWeightDecay ? 0.0f : weightDecay;
+        float decay = decoupledWeightDecay ? 1.0f - learningRate * weightDecay : 1.0f;
+
+        for (int i = 0; i < n; i++) {
+            float p = param[pOff + i];
+            float g = grad[gOff + i] + l2 * p;
+            float mi = b1 * m[sOff + i] + (1.0f - b1) * g;
+            float vi = b2 * v[sOff + i] + (1.0f - b2) * g * g;
+            m[sOff + i] = mi;
+            v[sOff + i] = vi;
+            float denom = (float) Math.sqrt(vi) * invSqrtCorrection + eps;
+            param[pOff + i] = decay * p - stepSize * mi / denom;
+            grad[gOff + i] = 0.0f;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package NeuralNetCPUv;
+
+/**
+ * Private activation buffers for the batch forward and backward pass of a
+ * network, independent of the layers' cached batch state.
+ *
+ * Uses only the stateless Layer.forwardBatchInto / backwardBatchInto, so
+ * several threads (each with its own workspace and gradient buffers) can
+ * compute gradients against the same layers at the same time.
+ */
+final class BatchWorkspace {
+
+    private final Layer[] layers;
+    private Matrix[] z;           // pre-activation per layer
+    private Matrix[] outputs;     // activation per layer
+    private Matrix[] inputGrads;  // gradient w.r.t. each layer's input (layer 0 unused)
+    private Matrix delta;         // softmax - target of the output layer
+    private int capacity = -1;
+
+    BatchWorkspace(Layer[] layers) {
+        this.layers = layers;
+    }
+
+    /** Makes sure the buffers hold at least the given number of rows */
+    void ensureCapacity(int rows) {
+        if (rows <= capacity) {
+            return;
+        }
+        z = new Matrix[layers.length];
+        outputs = new Matrix[layers.length];
+        inputGrads = new Matrix[layers.length];
+        for (int l = 0; l < layers.length; l++) {
+            z[l] = new Matrix(rows, layers[l].outputSize);
+            outputs[l] = new Matrix(rows, layers[l].outputSize);
+            inputGrads[l] = l > 0 ? new Matrix(rows, layers[l].inputSize) : null;
+        }
+        delta = new Matrix(rows, layers[layers.length - 1].outputSize);
+        capacity = rows;
+    }
+
+    /**
+     * Forward pass, softmax cross-entropy and backward pass of one batch.
+     * Per layer l the parameter gradients scale * (sum over the batch) are
+     * written to (or, with accumulate, added to) weightGrads[l] / biasGrads[l].
+     *
+     * @return summed loss of the batch
+     */
+    double computeGradients(Matrix X, Matrix Y, float scale, boolean accumulate,
+                            Matrix[] weightGrads, float[][] biasGrads) {
+        int m = X.rows;
+        int last = layers.length - 1;
+        ensureCapacity(m);
+
+        // Step 1: forward pass into the workspace
+        Matrix input = X;
+        for (int l = 0; l <= last; l++) {
+            layers[l].forwardBatchInto(input, z[l].rowRange(0, m), outputs[l].rowRange(0, m));
+            input = outputs[l].rowRange(0, m);
+        }
+
+        // Step 2: softmax, loss and delta = p - y per row
+        Matrix logits = outputs[last];
+        int classes = delta.cols;
+        double loss = 0.0;
+        for (int r = 0; r < m; r++) {
+            int p = delta.index(r, 0);
+            int t = Y.index(r, 0);
+            Activations.softmaxInto(logits.data, logits.index(r, 0), delta.data, p, classes);
+            for (int j = 0; j < classes; j++) {
+                float target = Y.data[t + j];
+                loss -= target * Math.log(delta.data[p + j] + 1e-10f);
+                delta.data[p + j] -= target;
+            }
+        }
+
+        // Step 3: backward pass into the caller's gradient buffers
+        Matrix dZ = delta.rowRange(0, m);
+        for (int l = last; l >= 0; l--) {
+            Matrix layerInput = l == 0 ? X : outputs[l - 1].rowRange(0, m);
+            Matrix dX = l > 0 ? inputGrads[l].rowRange(0, m) : null;
+            layers[l].backwardBatchInto(layerInput, dZ, scale, accumulate, weightGrads[l], biasGrads[l], dX);
+
+            if (l > 0) {
+                layers[l - 1].activation.multiplyDerivative(z[l - 1].data, dX.data, m * dX.cols);
+                dZ = dX;
+            }
+        }
+        return loss;
+    }
+}
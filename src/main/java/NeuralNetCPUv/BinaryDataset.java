@@ -0,0 +1,444 @@
+package NeuralNetCPUv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Dataset stored in a compact binary file and memory-mapped for use.
+ *
+ * File layout (all values little-endian):
+ *
+ *   offset  size  field
+ *        0     4  magic "NNDS"
+ *        4     4  format version (1)
+ *        8     4  dtype (0 = float32)
+ *       12     4  inputSize   (feature columns)
+ *       16     4  outputSize  (label columns)
+ *       20     4  numClasses  (0 for a numeric target)
+ *       24     8  numExamples
+ *       32     8  featuresOffset
+ *       40     8  labelsOffset
+ *       48     8  contentHash
+ *       56     8  sourceFingerprint (0 if unknown)
+ *       64        features: numExamples x inputSize floats, row-major
+ *                 labels:   numExamples x outputSize floats, row-major
+ *
+ * Both blocks start on a 64-byte boundary. Opening a file only reads the
+ * header and maps the rest, so startup does not depend on the dataset
+ * size; pages are loaded by the OS when training first touches them, and
+ * rows are copied straight from the mapping into batch buffers.
+ *
+ * contentHash is a 64-bit fingerprint of the feature and label values. It
+ * identifies a converted dataset across jobs and is checked by verify()
+ * (which reads the whole file, so it is not done on open). It is not a
+ * cryptographic hash. sourceFingerprint records where the data came from
+ * (for a converted CSV: the schema and the file's size and modification
+ * time), so a cached conversion is only reused for the same input.
+ *
+ * Files are written by DataUtils.convertCsvToBinary (streaming from CSV)
+ * or by write(...) for datasets already in memory.
+ */
+public class BinaryDataset implements AutoCloseable {
+
+    /** "NNDS" read as a little-endian int */
+    public static final int MAGIC = 0x53444E4E;
+
+    /** Current format version */
+    public static final int VERSION = 1;
+
+    /** Element type of the blocks; only float32 exists so far */
+    public static final int DTYPE_FLOAT32 = 0;
+
+    /** Header size, also the alignment of both blocks */
+    public static final int HEADER_BYTES = 64;
+
+    /** Number of examples */
+    public final int numExamples;
+
+    /** Feature values per example */
+    public final int inputSize;
+
+    /** Label values per example */
+    public final int outputSize;
+
+    /** Number of classes (one-hot labels), or 0 for a numeric target */
+    public final int numClasses;
+
+    /** Fingerprint of the feature and label values, from the header */
+    public final long contentHash;
+
+    /** Fingerprint of the source the file was converted from, or 0 */
+    public final long sourceFingerprint;
+
+    /** Mapped features, numExamples x inputSize */
+    public final OffHeapMatrix features;
+
+    /** Mapped labels, numExamples x outputSize */
+    public final OffHeapMatrix labels;
+
+    /** Arena of the mapping, closed by close() */
+    private final Arena arena;
+
+    private BinaryDataset(int numExamples, int inputSize, int outputSize, int numClasses, long contentHash,
+                          long sourceFingerprint, OffHeapMatrix features, OffHeapMatrix labels, Arena arena) {
+        this.numExamples = numExamples;
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.numClasses = numClasses;
+        this.contentHash = contentHash;
+        this.sourceFingerprint = sourceFingerprint;
+        this.features = features;
+        this.labels = labels;
+        this.arena = arena;
+    }
+
+    // ============================
+    // Loading
+    // ============================
+
+    /**
+     * Reads the header and maps a dataset file (read-only). The mapping may
+     * be read by several threads; release it with close().
+     *
+     * @throws IOException if the file is not a valid dataset file
+     */
+    public static BinaryDataset open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Step 1: header
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the header is complete or the file ends
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a dataset file: " + file);
+            }
+            if (header.getInt(4) != VERSION || header.getInt(8) != DTYPE_FLOAT32) {
+                throw new IOException("Unsupported dataset version " + header.getInt(4)
+                        + " / dtype " + header.getInt(8) + ": " + file);
+            }
+            int inputSize = header.getInt(12);
+            int outputSize = header.getInt(16);
+            int numClasses = header.getInt(20);
+            long rows = header.getLong(24);
+            long featuresOffset = header.getLong(32);
+            long labelsOffset = header.getLong(40);
+            long contentHash = header.getLong(48);
+            long sourceFingerprint = header.getLong(56);
+
+            // Step 2: the blocks must fit in the file
+            long featureBytes = rows * inputSize * Float.BYTES;
+            long labelBytes = rows * outputSize * Float.BYTES;
+            if (rows < 0 || rows > Integer.MAX_VALUE || inputSize < 0 || outputSize < 0
+                    || featuresOffset < HEADER_BYTES || labelsOffset < featuresOffset + featureBytes
+                    || channel.size() < labelsOffset + labelBytes) {
+                throw new IOException("Corrupt dataset header: " + file);
+            }
+
+            // Step 3: map both blocks with one shared arena
+            Arena arena = Arena.ofShared();
+            try {
+                MemorySegment seg = channel.map(FileChannel.MapMode.READ_ONLY, 0, labelsOffset + labelBytes, arena);
+                OffHeapMatrix features = new OffHeapMatrix(seg.asSlice(featuresOffset, featureBytes),
+                        (int) rows, inputSize, inputSize);
+                OffHeapMatrix labels = new OffHeapMatrix(seg.asSlice(labelsOffset, labelBytes),
+                        (int) rows, outputSize, outputSize);
+                return new BinaryDataset((int) rows, inputSize, outputSize, numClasses, contentHash,
+                        sourceFingerprint, features, labels, arena);
+            } catch (IOException | RuntimeException ex) {
+                arena.close();
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Copies rows order[from .. from + count) into the first count rows of
+     * two heap batch buffers, e.g. a shuffled mini-batch.
+     */
+    public void copyRows(int[] order, int from, int count, Matrix batchFeatures, Matrix batchLabels) {
+        for (int i = 0; i < count; i++) {
+            int row = order[from + i];
+            features.getRow(row, batchFeatures.data, batchFeatures.index(i, 0));
+            labels.getRow(row, batchLabels.data, batchLabels.index(i, 0));
+        }
+    }
+
+    /** Copies the whole dataset onto the heap as a TrainDataset */
+    public TrainDataset toTrainDataset() {
+        TrainDataset out = new TrainDataset();
+        out.numExamples = numExamples;
+        out.features = features.toHeap();
+        out.labels = labels.toHeap();
+        return out;
+    }
+
+    /** Copies the whole dataset onto the heap as a TestDataset */
+    public TestDataset toTestDataset() {
+        TestDataset out = new TestDataset();
+        out.numExamples = numExamples;
+        out.features = features.toHeap();
+        out.labels = labels.toHeap();
+        return out;
+    }
+
+    /**
+     * Recomputes the fingerprint of the mapped values.
+     *
+     * @return true if it matches the header's contentHash
+     */
+    public boolean verify() {
+        Hasher featureHash = new Hasher();
+        Hasher labelHash = new Hasher();
+        float[] row = new float[Math.max(inputSize, outputSize)];
+        for (int i = 0; i < numExamples; i++) {
+            features.getRow(i, row, 0);
+            featureHash.update(row, 0, inputSize);
+            labels.getRow(i, row, 0);
+            labelHash.update(row, 0, outputSize);
+        }
+        return combine(featureHash, labelHash, numExamples) == contentHash;
+    }
+
+    /** Unmaps the file; the matrices must not be used afterwards */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    // ============================
+    // Writing
+    // ============================
+
+    /** Writes an in-memory training set; returns its contentHash */
+    public static long write(TrainDataset dataset, int numClasses, Path file) throws IOException {
+        return write(dataset.features.rowRange(0, dataset.numExamples),
+                dataset.labels.rowRange(0, dataset.numExamples), numClasses, file);
+    }
+
+    /** Writes an in-memory test set; returns its contentHash */
+    public static long write(TestDataset dataset, int numClasses, Path file) throws IOException {
+        return write(dataset.features.rowRange(0, dataset.numExamples),
+                dataset.labels.rowRange(0, dataset.numExamples), numClasses, file);
+    }
+
+    /**
+     * Writes features and labels (same number of rows) as a dataset file.
+     *
+     * @param numClasses number of classes, or 0 for a numeric target
+     * @return contentHash of the written file
+     */
+    public static long write(Matrix features, Matrix labels, int numClasses, Path file) throws IOException {
+        try (Writer writer = new Writer(file, features.cols, labels.cols, numClasses)) {
+            writer.append(features, labels);
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Streaming writer: rows are appended batch by batch, so the dataset
+     * never has to be in memory. Features go straight to a uniquely named
+     * temporary file beside the target and labels to a second one; finish()
+     * appends the labels, writes the header and renames the result into
+     * place, so a reader never sees a half-written file.
+     */
+    static final class Writer implements Closeable {
+        private final Path target;
+        private final Path featuresTmp;
+        private final Path labelsTmp;
+        private final FileChannel featureChannel;
+        private final FileChannel labelChannel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private final Hasher featureHash = new Hasher();
+        private final Hasher labelHash = new Hasher();
+        private final int inputSize;
+        private final int outputSize;
+        private final int numClasses;
+        private final long sourceFingerprint;
+        private long rows;
+        private boolean finished;
+
+        Writer(Path target, int inputSize, int outputSize, int numClasses) throws IOException {
+            this(target, inputSize, outputSize, numClasses, 0L);
+        }
+
+        /**
+         * @param sourceFingerprint stored in the header (see BinaryDataset)
+         */
+        Writer(Path target, int inputSize, int outputSize, int numClasses, long sourceFingerprint) throws IOException {
+            this.target = target;
+            this.sourceFingerprint = sourceFingerprint;
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            this.numClasses = numClasses;
+
+            // Unique temporary files next to the target, so concurrent writers of
+            // the same target never share one and the final move stays on one
+            // filesystem. CREATE_NEW keeps the default permissions (umask), so the
+            // published file is as readable to other jobs as any other new file.
+            Path dir = target.toAbsolutePath().getParent();
+            String name = target.getFileName().toString();
+            Path featuresPath;
+            Path labelsPath;
+            FileChannel featuresOut;
+            FileChannel labelsOut;
+            while (true) {
+                String unique = Long.toHexString(ThreadLocalRandom.current().nextLong());
+                featuresPath = dir.resolve(name + "." + unique + ".tmp");
+                labelsPath = dir.resolve(name + "." + unique + ".labels.tmp");
+                try {
+                    featuresOut = FileChannel.open(featuresPath, StandardOpenOption.CREATE_NEW,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+                } catch (FileAlreadyExistsException ex) {
+                    continue;
+                }
+                try {
+                    labelsOut = FileChannel.open(labelsPath, StandardOpenOption.CREATE_NEW,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+                } catch (IOException | RuntimeException ex) {
+                    featuresOut.close();
+                    Files.deleteIfExists(featuresPath);
+                    if (ex instanceof FileAlreadyExistsException) {
+                        continue;
+                    }
+                    throw ex;
+                }
+                break;
+            }
+            this.featuresTmp = featuresPath;
+            this.labelsTmp = labelsPath;
+            this.featureChannel = featuresOut;
+            this.labelChannel = labelsOut;
+            featureChannel.position(HEADER_BYTES);
+        }
+
+        /** Appends the rows of a batch (features and labels have the same number of rows) */
+        void append(Matrix features, Matrix labels) throws IOException {
+            if (features.cols != inputSize || labels.cols != outputSize || features.rows != labels.rows) {
+                throw new IllegalArgumentException("Batch shape does not match the dataset");
+            }
+            writeRows(features, featureChannel, featureHash);
+            writeRows(labels, labelChannel, labelHash);
+            rows += features.rows;
+        }
+
+        private void writeRows(Matrix m, FileChannel channel, Hasher hash) throws IOException {
+            for (int i = 0; i < m.rows; i++) {
+                int offset = m.index(i, 0);
+                hash.update(m.data, offset, m.cols);
+                for (int j = 0; j < m.cols; j++) {
+                    if (!buffer.hasRemaining()) {
+                        flush(channel);
+                    }
+                    buffer.putFloat(m.data[offset + j]);
+                }
+            }
+            flush(channel);
+        }
+
+        private void flush(FileChannel channel) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Completes the file and moves it to the target path.
+         *
+         * @return contentHash
+         */
+        long finish() throws IOException {
+            // Step 1: labels block after the features, both 64-byte aligned
+            long labelsOffset = align(featureChannel.position());
+            long labelBytes = labelChannel.size();
+            featureChannel.position(labelsOffset);
+            for (long done = 0; done < labelBytes; ) {
+                done += labelChannel.transferTo(done, labelBytes - done, featureChannel);
+            }
+
+            // Step 2: header
+            long contentHash = combine(featureHash, labelHash, rows);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(DTYPE_FLOAT32)
+                    .putInt(inputSize).putInt(outputSize).putInt(numClasses)
+                    .putLong(rows).putLong(HEADER_BYTES).putLong(labelsOffset)
+                    .putLong(contentHash).putLong(sourceFingerprint);
+            header.flip();
+            featureChannel.write(header, 0);
+            featureChannel.force(true);
+
+            // Step 3: move into place
+            featureChannel.close();
+            labelChannel.close();
+            try {
+                Files.move(featuresTmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(featuresTmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.deleteIfExists(labelsTmp);
+            finished = true;
+            return contentHash;
+        }
+
+        /** Closes the channels; without finish() the temporary files are removed */
+        @Override
+        public void close() throws IOException {
+            featureChannel.close();
+            labelChannel.close();
+            if (!finished) {
+                Files.deleteIfExists(featuresTmp);
+                Files.deleteIfExists(labelsTmp);
+            }
+        }
+    }
+
+    private static long align(long position) {
+        return (position + HEADER_BYTES - 1) / HEADER_BYTES * HEADER_BYTES;
+    }
+
+    // ============================
+    // Content hash
+    // ============================
+
+    /**
+     * 64-bit running hash over float bit patterns (multiply-rotate mixing,
+     * one float at a time so the result does not depend on batch sizes).
+     */
+    private static final class Hasher {
+        private long h = 0x9E3779B97F4A7C15L;
+
+        void update(float[] values, int offset, int n) {
+            long state = h;
+            for (int i = 0; i < n; i++) {
+                long bits = Float.floatToRawIntBits(values[offset + i]) & 0xFFFFFFFFL;
+                state = Long.rotateLeft(state ^ (bits * 0xC2B2AE3D27D4EB4FL), 31) * 0x9E3779B97F4A7C15L;
+            }
+            h = state;
+        }
+    }
+
+    /** Final hash of both blocks and the row count */
+    private static long combine(Hasher features, Hasher labels, long rows) {
+        long h = features.h ^ Long.rotateLeft(labels.h, 32) ^ (rows * 0xFF51AFD7ED558CCDL);
+        // murmur3 finalizer
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,154 @@
+package NeuralNetCPUv;
+
+import java.util.Arrays;
+
+/**
+ * Compressed Sparse Row (CSR) matrix.
+ *
+ * Stores only the non-zero entries of each row:
+ *  - rowPtr[i] .. rowPtr[i + 1] is the range of entries belonging to row i,
+ *  - colIdx[p] is the column of entry p,
+ *  - values[p] is its value.
+ *
+ * Meant for feature tables that are mostly zeros (one-hot or hashed
+ * categorical features), where a dense row would waste both memory and
+ * multiply-adds.
+ */
+public class CsrMatrix {
+
+    /** Number of rows */
+    public final int rows;
+
+    /** Number of columns (width of the equivalent dense matrix) */
+    public final int cols;
+
+    /** Row start positions, length rows + 1 */
+    public final int[] rowPtr;
+
+    /** Column index of every stored entry, length nnz */
+    public final int[] colIdx;
+
+    /** Value of every stored entry, length nnz */
+    public final float[] values;
+
+    /**
+     * Wraps existing CSR arrays (no copy).
+     *
+     * @param rows   number of rows
+     * @param cols   number of columns
+     * @param rowPtr row start positions (length rows + 1)
+     * @param colIdx column indices (sorted within each row)
+     * @param values stored values
+     */
+    public CsrMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, float[] values) {
+        if (rowPtr.length != rows + 1) {
+            throw new IllegalArgumentException("rowPtr must have rows + 1 entries");
+        }
+        if (colIdx.length < rowPtr[rows] || values.length < rowPtr[rows]) {
+            throw new IllegalArgumentException("colIdx / values shorter than rowPtr[rows]");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+    }
+
+    /**
+     * Builds a CSR matrix from a dense one, keeping only non-zero values.
+     *
+     * @param dense dense matrix
+     * @return CSR copy of dense
+     */
+    public static CsrMatrix fromDense(Matrix dense) {
+        // Step 1: count non-zeros so the arrays are allocated once
+        int nnz = 0;
+        for (int i = 0; i < dense.rows; i++) {
+            int base = dense.index(i, 0);
+            for (int j = 0; j < dense.cols; j++) {
+                if (dense.data[base + j] != 0.0f) {
+                    nnz++;
+                }
+            }
+        }
+
+        // Step 2: fill the CSR arrays row by row
+        int[] rowPtr = new int[dense.rows + 1];
+        int[] colIdx = new int[nnz];
+        float[] values = new float[nnz];
+        int p = 0;
+        for (int i = 0; i < dense.rows; i++) {
+            rowPtr[i] = p;
+            int base = dense.index(i, 0);
+            for (int j = 0; j < dense.cols; j++) {
+                float v = dense.data[base + j];
+                if (v != 0.0f) {
+                    colIdx[p] = j;
+                    values[p] = v;
+                    p++;
+                }
+            }
+        }
+        rowPtr[dense.rows] = p;
+
+        return new CsrMatrix(dense.rows, dense.cols, rowPtr, colIdx, values);
+    }
+
+    /** Total number of stored entries */
+    public int nnz() {
+        return rowPtr[rows];
+    }
+
+    /** Number of stored entries in row i */
+    public int rowNnz(int i) {
+        return rowPtr[i + 1] - rowPtr[i];
+    }
+
+    /** Fraction of zero entries (0 = dense, 1 = empty) */
+    public float sparsity() {
+        long total = (long) rows * cols;
+        return total == 0 ? 0.0f : 1.0f - (float) nnz() / total;
+    }
+
+    /** Read element (i, j); O(log nnz(row)) */
+    public float get(int i, int j) {
+        int p = Arrays.binarySearch(colIdx, rowPtr[i], rowPtr[i + 1], j);
+        return p >= 0 ? values[p] : 0.0f;
+    }
+
+    /**
+     * Writes row i into a dense array (all other entries are cleared).
+     *
+     * @param i   row index
+     * @param out destination of length >= cols
+     */
+    public void getRow(int i, float[] out) {
+        Arrays.fill(out, 0, cols, 0.0f);
+        for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+            out[colIdx[p]] = values[p];
+        }
+    }
+
+    /**
+     * Sparse matrix-vector product y = A x (one sparse dot product per row).
+     *
+     * @param x    dense input, cols values starting at xOff
+     * @param xOff offset of x
+     * @param y    dense output, rows values starting at yOff (overwritten)
+     * @param yOff offset of y
+     */
+    public void multiply(float[] x, int xOff, float[] y, int yOff) {
+        Kernels.get().spmv(rows, rowPtr, colIdx, values, x, xOff, y, yOff);
+    }
+
+    /** Converts to a dense matrix */
+    public Matrix toDense() {
+        Matrix out = new Matrix(rows, cols);
+        for (int i = 0; i < rows; i++) {
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+                out.data[i * cols + colIdx[p]] = values[p];
+            }
+        }
+        return out;
+    }
+}
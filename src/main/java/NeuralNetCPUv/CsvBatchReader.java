@@ -0,0 +1,255 @@
+package NeuralNetCPUv;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming CSV reader that yields mini-batches.
+ *
+ * Reads a file from the filesystem line by line and parses only the
+ * columns named by a CsvSchema into one reusable batch buffer, so memory
+ * stays at batchSize rows no matter how large the file is:
+ *
+ *   try (CsvBatchReader reader = new CsvBatchReader(path, schema, 256)) {
+ *       while (reader.hasNext()) {
+ *           TrainDataset batch = reader.next();
+ *           network.trainBatch(batch.features, batch.labels);
+ *       }
+ *   }
+ *
+ * Every batch returned by next() shares the reader's buffers and is only
+ * valid until the following call. Rows come in file order (a streaming
+ * reader cannot shuffle globally; shuffle the file once if the order is
+ * not random). Blank lines are skipped; quoted fields may contain the
+ * delimiter but not line breaks.
+ */
+public class CsvBatchReader implements Iterator<TrainDataset>, Closeable {
+
+    /** File being read */
+    public final Path file;
+
+    /** Column layout */
+    public final CsvSchema schema;
+
+    /** Maximum rows per batch */
+    public final int batchSize;
+
+    private final BufferedReader reader;
+    private final Matrix features;          // batchSize x inputSize, reused
+    private final Matrix labels;            // batchSize x outputSize, reused
+    private final int[] fieldStart;         // per column up to schema.lastColumn
+    private final int[] fieldEnd;
+    private final TrainDataset batch = new TrainDataset();
+
+    private int pendingRows = -1;           // rows of the batch filled by hasNext(), -1 = none
+    private long lineNumber;
+    private long rowsRead;
+    private long skippedRows;
+    private boolean endOfFile;
+
+    /**
+     * Opens a file for streaming.
+     *
+     * @param file      CSV file
+     * @param schema    column layout
+     * @param batchSize rows per batch (the last batch may be smaller)
+     */
+    public CsvBatchReader(Path file, CsvSchema schema, int batchSize) throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.file = file;
+        this.schema = schema;
+        this.batchSize = batchSize;
+        this.reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), 1 << 16);
+        this.features = new Matrix(batchSize, schema.inputSize());
+        this.labels = new Matrix(batchSize, schema.outputSize());
+        this.fieldStart = new int[schema.lastColumn + 1];
+        this.fieldEnd = new int[schema.lastColumn + 1];
+
+        if (schema.hasHeader) {
+            reader.readLine();
+            lineNumber++;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (pendingRows < 0) {
+            try {
+                pendingRows = fill();
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Error reading " + file, ex);
+            }
+        }
+        return pendingRows > 0;
+    }
+
+    /**
+     * Next batch of up to batchSize rows.
+     *
+     * @return batch view of the reader's buffers, valid until the next call
+     */
+    @Override
+    public TrainDataset next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        batch.numExamples = pendingRows;
+        batch.features = features.rowRange(0, pendingRows);
+        batch.labels = labels.rowRange(0, pendingRows);
+        pendingRows = -1;
+        return batch;
+    }
+
+    /** Rows returned so far */
+    public long rowsRead() {
+        return rowsRead;
+    }
+
+    /** Rows skipped as invalid (only with CsvSchema.withSkipInvalidRows) */
+    public long skippedRows() {
+        return skippedRows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Parses lines into the batch buffers until the batch is full or the file ends.
+     *
+     * @return number of rows in the batch
+     */
+    private int fill() throws IOException {
+        int rows = 0;
+        while (rows < batchSize && !endOfFile) {
+            String line = reader.readLine();
+            if (line == null) {
+                endOfFile = true;
+                break;
+            }
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                parseRow(line, rows);
+                rows++;
+            } catch (IllegalArgumentException ex) {
+                if (!schema.skipInvalidRows) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + ": " + ex.getMessage(), ex);
+                }
+                skippedRows++;
+            }
+        }
+        rowsRead += rows;
+        return rows;
+    }
+
+    /**
+     * Parses one line into row r of the batch buffers.
+     *
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    private void parseRow(String line, int r) {
+        // Step 1: locate the fields up to the last column the schema needs
+        int columns = splitFields(line);
+        if (columns <= schema.lastColumn) {
+            throw new IllegalArgumentException("expected at least " + (schema.lastColumn + 1)
+                    + " columns, found " + columns);
+        }
+
+        // Step 2: features
+        int fOff = features.index(r, 0);
+        int[] featureColumns = schema.featureColumns;
+        for (int i = 0; i < featureColumns.length; i++) {
+            features.data[fOff + i] = parseNumber(line, featureColumns[i]);
+        }
+
+        // Step 3: label, one-hot or numeric
+        int lOff = labels.index(r, 0);
+        if (schema.isNumericTarget()) {
+            labels.data[lOff] = parseNumber(line, schema.labelColumn);
+        } else {
+            String text = field(line, schema.labelColumn);
+            int k = schema.classIndex(text);
+            if (k < 0) {
+                throw new IllegalArgumentException("unknown class '" + text + "'");
+            }
+            for (int j = 0; j < labels.cols; j++) {
+                labels.data[lOff + j] = 0.0f;
+            }
+            labels.data[lOff + k] = 1.0f;
+        }
+    }
+
+    /**
+     * Records the start and end of every field up to schema.lastColumn.
+     * A field starting with a double quote runs to the matching closing
+     * quote ("" inside it is an escaped quote).
+     *
+     * @return number of fields found (capped at lastColumn + 1)
+     */
+    private int splitFields(String line) {
+        char delimiter = schema.delimiter;
+        int n = line.length();
+        int pos = 0;
+        int column = 0;
+        while (column <= schema.lastColumn) {
+            int start = pos;
+            if (pos < n && line.charAt(pos) == '"') {
+                pos++;
+                while (pos < n) {
+                    if (line.charAt(pos) == '"') {
+                        if (pos + 1 < n && line.charAt(pos + 1) == '"') {
+                            pos += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    pos++;
+                }
+                if (pos >= n) {
+                    throw new IllegalArgumentException("unterminated quoted field");
+                }
+                pos++;
+            }
+            while (pos < n && line.charAt(pos) != delimiter) {
+                pos++;
+            }
+            fieldStart[column] = start;
+            fieldEnd[column] = pos;
+            column++;
+            if (pos >= n) {
+                break;
+            }
+            pos++;
+        }
+        return column;
+    }
+
+    /** Text of a field, trimmed and unquoted */
+    private String field(String line, int column) {
+        return CsvSchema.unquote(line.substring(fieldStart[column], fieldEnd[column]).trim());
+    }
+
+    private float parseNumber(String line, int column) {
+        String text = field(line, column);
+        try {
+            return Float.parseFloat(text);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("column " + column + ": not a number '" + text + "'");
+        }
+    }
+}
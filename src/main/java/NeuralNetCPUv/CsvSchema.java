@@ -0,0 +1,226 @@
+package NeuralNetCPUv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Column layout of a CSV dataset: which columns are features, which one
+ * is the label, and how the label is encoded.
+ *
+ *  - Classification: the label column holds a class name from a fixed
+ *    vocabulary and becomes a one-hot row of classes.length values.
+ *  - Regression: the label column holds a number and becomes a single
+ *    label value (numeric target).
+ *
+ * Columns are zero-based; columns that are neither features nor the label
+ * are ignored. Schemas are immutable; the with... methods return copies.
+ */
+public class CsvSchema {
+
+    /** Zero-based feature columns, in the order they appear in a feature row */
+    public final int[] featureColumns;
+
+    /** Zero-based label column */
+    public final int labelColumn;
+
+    /** Class vocabulary (label text -> one-hot position), or null for a numeric target */
+    public final String[] classes;
+
+    /** Field separator */
+    public final char delimiter;
+
+    /** True if the first line is a header and must be skipped */
+    public final boolean hasHeader;
+
+    /** Skip (and count) rows that cannot be parsed instead of failing */
+    public final boolean skipInvalidRows;
+
+    /** Class name -> index */
+    private final Map<String, Integer> classIndex;
+
+    /** Highest column the reader needs to look at */
+    final int lastColumn;
+
+    private CsvSchema(int[] featureColumns, int labelColumn, String[] classes,
+                      char delimiter, boolean hasHeader, boolean skipInvalidRows) {
+        if (featureColumns.length == 0) {
+            throw new IllegalArgumentException("Schema needs at least one feature column");
+        }
+        int last = labelColumn;
+        for (int c : featureColumns) {
+            if (c < 0 || c == labelColumn) {
+                throw new IllegalArgumentException("Invalid feature column " + c);
+            }
+            last = Math.max(last, c);
+        }
+        if (labelColumn < 0) {
+            throw new IllegalArgumentException("Invalid label column " + labelColumn);
+        }
+        this.featureColumns = featureColumns.clone();
+        this.labelColumn = labelColumn;
+        this.classes = classes != null ? classes.clone() : null;
+        this.delimiter = delimiter;
+        this.hasHeader = hasHeader;
+        this.skipInvalidRows = skipInvalidRows;
+        this.lastColumn = last;
+
+        this.classIndex = new HashMap<>();
+        if (classes != null) {
+            for (int i = 0; i < classes.length; i++) {
+                if (classIndex.put(classes[i], i) != null) {
+                    throw new IllegalArgumentException("Duplicate class " + classes[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Classification schema (comma-separated, with header).
+     *
+     * @param featureColumns zero-based feature columns
+     * @param labelColumn    zero-based label column
+     * @param classes        class vocabulary; the label text must match one of them exactly (after trimming)
+     */
+    public static CsvSchema classification(int[] featureColumns, int labelColumn, String... classes) {
+        if (classes.length == 0) {
+            throw new IllegalArgumentException("Classification needs at least one class");
+        }
+        return new CsvSchema(featureColumns, labelColumn, classes, ',', true, false);
+    }
+
+    /**
+     * Regression schema with a numeric target (comma-separated, with header).
+     */
+    public static CsvSchema regression(int[] featureColumns, int labelColumn) {
+        return new CsvSchema(featureColumns, labelColumn, null, ',', true, false);
+    }
+
+    /** The Iris layout used by the demo (4 features, species label) */
+    public static CsvSchema iris() {
+        return classification(new int[]{0, 1, 2, 3}, 4, "setosa", "versicolor", "virginica");
+    }
+
+    /** Copy with another field separator */
+    public CsvSchema withDelimiter(char delimiter) {
+        return new CsvSchema(featureColumns, labelColumn, classes, delimiter, hasHeader, skipInvalidRows);
+    }
+
+    /** Copy with or without a header line */
+    public CsvSchema withHeader(boolean hasHeader) {
+        return new CsvSchema(featureColumns, labelColumn, classes, delimiter, hasHeader, skipInvalidRows);
+    }
+
+    /** Copy that skips unparseable rows instead of failing */
+    public CsvSchema withSkipInvalidRows(boolean skipInvalidRows) {
+        return new CsvSchema(featureColumns, labelColumn, classes, delimiter, hasHeader, skipInvalidRows);
+    }
+
+    /** Number of feature values per row */
+    public int inputSize() {
+        return featureColumns.length;
+    }
+
+    /** Number of label values per row (classes, or 1 for a numeric target) */
+    public int outputSize() {
+        return classes != null ? classes.length : 1;
+    }
+
+    /** True for a numeric (regression) target */
+    public boolean isNumericTarget() {
+        return classes == null;
+    }
+
+    /**
+     * 64-bit fingerprint of everything that decides the parsed values:
+     * feature and label columns, class vocabulary (in order), delimiter,
+     * header and skip flags. Used to tell which schema a converted binary
+     * file was made with; not a cryptographic hash.
+     */
+    public long fingerprint() {
+        long h = 0x9E3779B97F4A7C15L;
+        h = h * 31 + featureColumns.length;
+        for (int c : featureColumns) {
+            h = h * 31 + c;
+        }
+        h = h * 31 + labelColumn;
+        if (classes == null) {
+            h = h * 31 - 1;
+        } else {
+            h = h * 31 + classes.length;
+            for (String name : classes) {
+                h = h * 31 + name.length();
+                for (int i = 0; i < name.length(); i++) {
+                    h = h * 31 + name.charAt(i);
+                }
+            }
+        }
+        h = h * 31 + delimiter;
+        h = h * 31 + (hasHeader ? 1 : 0);
+        h = h * 31 + (skipInvalidRows ? 1 : 0);
+        // murmur3 finalizer
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * One-hot position of a class name.
+     *
+     * @return class index, or -1 if the name is not in the vocabulary
+     */
+    public int classIndex(String name) {
+        Integer index = classIndex.get(name);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Looks up zero-based column positions by name in a file's header line.
+     *
+     * @param file      CSV file with a header
+     * @param delimiter field separator
+     * @param names     column names
+     * @return column index of every name, in the same order
+     */
+    public static int[] columns(Path file, char delimiter, String... names) throws IOException {
+        String header;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            header = reader.readLine();
+        }
+        if (header == null) {
+            throw new IOException("Empty file: " + file);
+        }
+        String[] fields = header.split(Pattern.quote(String.valueOf(delimiter)), -1);
+        int[] result = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            result[i] = -1;
+            for (int c = 0; c < fields.length; c++) {
+                if (unquote(fields[c].trim()).equals(names[i])) {
+                    result[i] = c;
+                    break;
+                }
+            }
+            if (result[i] < 0) {
+                throw new IllegalArgumentException("Column '" + names[i] + "' not in header " + Arrays.toString(fields));
+            }
+        }
+        return result;
+    }
+
+    /** Removes surrounding double quotes and un-doubles inner ones */
+    static String unquote(String field) {
+        if (field.length() >= 2 && field.charAt(0) == '"' && field.charAt(field.length() - 1) == '"') {
+            return field.substring(1, field.length() - 1).replace("\"\"", "\"");
+        }
+        return field;
+    }
+}
@@ -0,0 +1,392 @@
+package NeuralNetCPUv;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Background data-loading pipeline that prepares mini-batches ahead of the
+ * training thread.
+ *
+ * Worker threads follow a Sampler's order, gather the rows of the next
+ * batches into contiguous reusable buffers, optionally run a Transform
+ * (normalization, augmentation) on them, and publish them in a bounded
+ * ring of batch slots. The training thread only takes finished batches:
+ *
+ *   try (DataLoader loader = new DataLoader(dataset, sampler, 64, epochs, new DataLoader.Config())) {
+ *       network.train(loader);
+ *   }
+ *
+ * Ring protocol (batch k of the run lives in slot k % slots):
+ *  - the worker owning batch k waits until the slot is released for k,
+ *    fills it and marks it filled with k;
+ *  - next() releases the previous batch's slot for k - 1 + slots and waits
+ *    until slot k holds batch k.
+ * Batches therefore arrive in sampler order no matter how many workers
+ * run, at most slots - 1 batches are prepared ahead, and no buffer is
+ * allocated after construction (with 2 slots: classic double buffering).
+ *
+ * Every batch returned by next() shares a ring slot and is only valid
+ * until the following call. Worker i draws transform randomness from
+ * seed + i + 1, so a run is reproducible for a fixed seed, worker count
+ * and sampler.
+ */
+public class DataLoader implements Iterator<DataLoader.Batch>, AutoCloseable {
+
+    /** Maximum rows per batch */
+    public final int batchSize;
+
+    /** Passes over the sampler's order */
+    public final int epochs;
+
+    /** Batches per epoch (the last one may be smaller) */
+    public final int batchesPerEpoch;
+
+    /**
+     * Loader settings.
+     */
+    public static class Config {
+        public int workers = 1;               // background threads preparing batches
+        public int slots = 2;                 // ring size: one batch in training, the rest prepared ahead
+        public Transform transform = null;    // applied to every batch by the workers
+        public long seed = 1;                 // worker i draws transform randomness from seed + i + 1
+    }
+
+    /**
+     * Per-batch preprocessing run on a worker thread, e.g. normalization or
+     * augmentation. Must not keep references to the matrices and must be
+     * safe to call from several workers at once.
+     */
+    public interface Transform {
+
+        /**
+         * @param features batch features (rows x inputSize view, modified in place)
+         * @param labels   batch labels (rows x outputSize view, modified in place)
+         * @param random   the calling worker's generator
+         */
+        void apply(Matrix features, Matrix labels, Random random);
+
+        /** This transform followed by another */
+        default Transform andThen(Transform next) {
+            return (features, labels, random) -> {
+                apply(features, labels, random);
+                next.apply(features, labels, random);
+            };
+        }
+
+        /** (x - mean) / std per feature column */
+        static Transform standardize(float[] mean, float[] std) {
+            float[] invStd = new float[std.length];
+            for (int j = 0; j < std.length; j++) {
+                invStd[j] = std[j] > 0f ? 1f / std[j] : 1f;
+            }
+            return (features, labels, random) -> {
+                for (int r = 0; r < features.rows; r++) {
+                    int p = features.index(r, 0);
+                    for (int j = 0; j < features.cols; j++) {
+                        features.data[p + j] = (features.data[p + j] - mean[j]) * invStd[j];
+                    }
+                }
+            };
+        }
+
+        /** Adds N(0, sigma²) noise to every feature (data augmentation) */
+        static Transform gaussianNoise(float sigma) {
+            return (features, labels, random) -> {
+                for (int r = 0; r < features.rows; r++) {
+                    int p = features.index(r, 0);
+                    for (int j = 0; j < features.cols; j++) {
+                        features.data[p + j] += sigma * (float) random.nextGaussian();
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * One prepared mini-batch, valid until the next call to next().
+     */
+    public static class Batch {
+        public Matrix features;               // rows x inputSize
+        public Matrix labels;                 // rows x outputSize
+        public int rows;
+        public int epoch;                     // 0-based
+        public int index;                     // batch number within the epoch
+        public boolean lastOfEpoch;
+    }
+
+    /**
+     * Ring slot: full-size buffers plus the batch view handed out.
+     */
+    private static final class Slot {
+        private final Matrix features;
+        private final Matrix labels;
+        private final Batch batch = new Batch();
+        private long allowed;                 // batch number this slot may be filled with next
+        private long filled = -1;             // batch number the slot currently holds
+
+        private Slot(int rows, int inputSize, int outputSize) {
+            this.features = new Matrix(rows, inputSize);
+            this.labels = new Matrix(rows, outputSize);
+        }
+    }
+
+    private final TrainDataset dataset;       // exactly one of dataset / binary is set
+    private final BinaryDataset binary;
+    private final Sampler sampler;
+    private final Transform transform;
+    private final long totalBatches;
+
+    private final Slot[] slots;
+    private final Thread[] threads;
+    private final Object lock = new Object();
+
+    /** Sampler orders of the epochs in flight; epoch e uses orders[e % orders.length] */
+    private final int[][] orders;
+    private int drawnEpochs;
+
+    private long delivered;
+    private long stallNanos;
+    private boolean closed;
+    private Throwable failure;
+
+    /**
+     * Random order, one worker, double buffering.
+     */
+    public DataLoader(TrainDataset dataset, int batchSize, int epochs) {
+        this(dataset, Sampler.random(dataset.numExamples), batchSize, epochs, new Config());
+    }
+
+    /**
+     * Loader over an in-memory dataset.
+     *
+     * @param dataset   training data (only read)
+     * @param sampler   row order of every epoch (used only by the loader from now on)
+     * @param batchSize rows per batch
+     * @param epochs    number of epochs to deliver
+     * @param config    workers, ring size, transform, seed
+     */
+    public DataLoader(TrainDataset dataset, Sampler sampler, int batchSize, int epochs, Config config) {
+        this(dataset, null, dataset.features.cols, dataset.labels.cols, sampler, batchSize, epochs, config);
+    }
+
+    /**
+     * Loader over a memory-mapped dataset; workers copy rows straight from
+     * the mapping. Close the loader before the dataset.
+     */
+    public DataLoader(BinaryDataset dataset, Sampler sampler, int batchSize, int epochs, Config config) {
+        this(null, dataset, dataset.inputSize, dataset.outputSize, sampler, batchSize, epochs, config);
+    }
+
+    private DataLoader(TrainDataset dataset, BinaryDataset binary, int inputSize, int outputSize,
+                       Sampler sampler, int batchSize, int epochs, Config config) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        if (epochs < 0 || config.workers < 1 || config.slots < 2) {
+            throw new IllegalArgumentException("Need epochs >= 0, workers >= 1 and slots >= 2");
+        }
+        this.dataset = dataset;
+        this.binary = binary;
+        this.sampler = sampler;
+        this.transform = config.transform;
+        this.batchSize = batchSize;
+        this.epochs = epochs;
+
+        int n = sampler.size();
+        this.batchesPerEpoch = (n + batchSize - 1) / batchSize;
+        this.totalBatches = (long) batchesPerEpoch * epochs;
+
+        // A worker per slot at most, plus one slot held by the training thread
+        int slotCount = Math.max(config.slots, config.workers + 1);
+        int rows = Math.max(1, Math.min(batchSize, n));
+        this.slots = new Slot[slotCount];
+        for (int s = 0; s < slotCount; s++) {
+            slots[s] = new Slot(rows, inputSize, outputSize);
+            slots[s].allowed = s;
+        }
+
+        // Batches in flight span at most slotCount consecutive batch numbers
+        int liveEpochs = batchesPerEpoch == 0 ? 1 : (slotCount - 1) / batchesPerEpoch + 2;
+        this.orders = new int[liveEpochs][n];
+
+        int workers = (int) Math.min(config.workers, Math.max(totalBatches, 1));
+        this.threads = new Thread[workers];
+        for (int w = 0; w < workers; w++) {
+            int first = w;
+            Random random = new Random(config.seed + w + 1);
+            threads[w] = new Thread(() -> work(first, workers, random), "data-loader-" + w);
+            threads[w].setDaemon(true);
+            threads[w].start();
+        }
+    }
+
+    // ============================
+    // Training thread
+    // ============================
+
+    @Override
+    public boolean hasNext() {
+        return delivered < totalBatches;
+    }
+
+    /**
+     * Releases the previous batch and returns the next one, waiting only
+     * if the workers have not finished it yet.
+     */
+    @Override
+    public Batch next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        long k = delivered;
+        Slot slot = slots[(int) (k % slots.length)];
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Data loader is closed");
+            }
+            releasePrevious();
+            if (slot.filled != k && failure == null) {
+                long start = System.nanoTime();
+                try {
+                    while (slot.filled != k && failure == null) {
+                        lock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for a batch", e);
+                } finally {
+                    stallNanos += System.nanoTime() - start;
+                }
+            }
+            if (failure != null) {
+                throw new RuntimeException("Data loader worker failed", failure);
+            }
+        }
+        delivered = k + 1;
+        return slot.batch;
+    }
+
+    /** Batches returned by next() so far */
+    public long batchesDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Time the training thread spent waiting for batches. Close to zero
+     * when the workers keep up with compute.
+     */
+    public double stallSeconds() {
+        synchronized (lock) {
+            return stallNanos / 1e9;
+        }
+    }
+
+    /** Stops the workers and waits for them; buffers are no longer filled afterwards */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Hands the slot of the last delivered batch back to the workers (lock held) */
+    private void releasePrevious() {
+        if (delivered > 0) {
+            long previous = delivered - 1;
+            slots[(int) (previous % slots.length)].allowed = previous + slots.length;
+            lock.notifyAll();
+        }
+    }
+
+    // ============================
+    // Workers
+    // ============================
+
+    /** Worker loop: batches first, first + stride, first + 2 * stride, ... */
+    private void work(int first, int stride, Random random) {
+        try {
+            for (long k = first; k < totalBatches; k += stride) {
+                Slot slot = slots[(int) (k % slots.length)];
+
+                // Step 1: wait until the training thread has released the slot for batch k
+                int[] order;
+                synchronized (lock) {
+                    while (slot.allowed != k && !closed) {
+                        lock.wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    order = orderOf((int) (k / batchesPerEpoch));
+                }
+
+                // Step 2: gather, transform and publish
+                fill(slot, k, order, random);
+                synchronized (lock) {
+                    slot.filled = k;
+                    lock.notifyAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            synchronized (lock) {
+                failure = t;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /** Order of an epoch, drawing epochs from the sampler in sequence as needed (lock held) */
+    private int[] orderOf(int epoch) {
+        while (drawnEpochs <= epoch) {
+            int[] next = sampler.nextEpoch();
+            System.arraycopy(next, 0, orders[drawnEpochs % orders.length], 0, next.length);
+            drawnEpochs++;
+        }
+        return orders[epoch % orders.length];
+    }
+
+    /** Copies the rows of batch k into a slot and runs the transform */
+    private void fill(Slot slot, long k, int[] order, Random random) {
+        int epoch = (int) (k / batchesPerEpoch);
+        int index = (int) (k % batchesPerEpoch);
+        int from = index * batchSize;
+        int m = Math.min(batchSize, order.length - from);
+
+        if (binary != null) {
+            binary.copyRows(order, from, m, slot.features, slot.labels);
+        } else {
+            Matrix.gatherRowsInto(dataset.features, order, from, m, slot.features);
+            Matrix.gatherRowsInto(dataset.labels, order, from, m, slot.labels);
+        }
+
+        Batch batch = slot.batch;
+        batch.features = m == slot.features.rows ? slot.features : slot.features.rowRange(0, m);
+        batch.labels = m == slot.labels.rows ? slot.labels : slot.labels.rowRange(0, m);
+        batch.rows = m;
+        batch.epoch = epoch;
+        batch.index = index;
+        batch.lastOfEpoch = index == batchesPerEpoch - 1;
+
+        if (transform != null) {
+            transform.apply(batch.features, batch.labels, random);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package NeuralNetCPUv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Synchronous data-parallel mini-batch training with deterministic results.
+ *
+ * Every mini-batch is cut into one contiguous shard per worker thread.
+ * Each worker runs the batch forward and backward pass of its shard with
+ * the stateless Layer.forwardBatchInto / backwardBatchInto into its own
+ * activation buffers and its own gradient buffers, scaled by 1 / batchSize
+ * so the shard gradients add up to the batch average. The shard gradients
+ * are then combined with a pairwise tree reduction
+ *
+ *   level 1: g0 += g1, g2 += g3, g4 += g5, ...
+ *   level 2: g0 += g2, g4 += g6, ...
+ *   level 3: g0 += g4, ...
+ *
+ * where the additions of one level run in parallel, and finally one
+ * optimizer step updates the shared parameters.
+ *
+ * The shard boundaries, the pairing of the reduction and the order of
+ * every floating-point sum depend only on the batch size and the thread
+ * count, never on thread timing, and the sample order comes from a seeded
+ * generator. Two runs with the same seed, thread count, initial weights
+ * and optimizer therefore produce bit-identical weights. (A different
+ * thread count changes the summation order and so the last bits.)
+ *
+ * Worker kernels run single-threaded (Parallel.setSequentialForCurrentThread),
+ * the parallelism comes from the shards.
+ */
+public class DataParallelTrainer {
+
+    /** Network being trained */
+    public final NeuralNetwork network;
+
+    /** Update rule applied once per mini-batch */
+    public final Optimizer optimizer;
+
+    /** Number of worker threads (= shards per mini-batch) */
+    public final int threads;
+
+    /** Random generator for the epoch shuffle */
+    private final Random random;
+
+    /** One workspace per worker thread */
+    private final Replica[] replicas;
+
+    /** Print one line per epoch */
+    private boolean verbose = true;
+
+    /**
+     * Creates a trainer.
+     *
+     * @param network   network to train
+     * @param optimizer update rule (belongs to this network from now on)
+     * @param threads   number of worker threads (e.g. number of cores)
+     * @param seed      seed of the epoch shuffles
+     */
+    public DataParallelTrainer(NeuralNetwork network, Optimizer optimizer, int threads, long seed) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        this.network = network;
+        this.optimizer = optimizer;
+        this.threads = threads;
+        this.random = new Random(seed);
+        this.replicas = new Replica[threads];
+        for (int t = 0; t < threads; t++) {
+            replicas[t] = new Replica(network.layers);
+        }
+    }
+
+    /**
+     * Creates a trainer with plain SGD.
+     */
+    public DataParallelTrainer(NeuralNetwork network, float learningRate, int threads, long seed) {
+        this(network, Optimizer.sgd(learningRate), threads, seed);
+    }
+
+    /** Enables or disables the per-epoch log line */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Trains for a number of epochs in a random order drawn from the seeded
+     * generator.
+     *
+     * @param dataset   training data (rows are gathered into a batch buffer, never reordered)
+     * @param epochs    number of passes over the dataset
+     * @param batchSize number of samples per optimizer step
+     * @return statistics of every epoch
+     */
+    public EpochStats[] train(TrainDataset dataset, int epochs, int batchSize) {
+        return train(dataset, epochs, batchSize, Sampler.random(dataset.numExamples, random));
+    }
+
+    /**
+     * Trains for a number of epochs, visiting rows in the order given by a
+     * sampler (e.g. Sampler.stratified for class-balanced batches).
+     *
+     * @param dataset   training data (rows are gathered into a batch buffer, never reordered)
+     * @param epochs    number of passes over the dataset
+     * @param batchSize number of samples per optimizer step
+     * @param sampler   row order of every epoch
+     * @return statistics of every epoch
+     */
+    public EpochStats[] train(TrainDataset dataset, int epochs, int batchSize, Sampler sampler) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        int n = sampler.size();
+
+        int batchRows = Math.min(batchSize, Math.max(n, 1));
+        Matrix batchX = new Matrix(batchRows, dataset.features.cols);
+        Matrix batchY = new Matrix(batchRows, dataset.labels.cols);
+        int shardRows = (batchRows + threads - 1) / threads;
+        for (Replica replica : replicas) {
+            replica.ensureCapacity(shardRows);
+        }
+        for (Layer layer : network.layers) {
+            layer.ensureGradients();
+        }
+
+        EpochStats[] stats = new EpochStats[epochs];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int e = 0; e < epochs; e++) {
+                long start = System.nanoTime();
+                int[] order = sampler.nextEpoch();
+
+                double totalLoss = 0.0;
+                for (int b = 0; b < n; b += batchSize) {
+                    int m = Math.min(batchSize, n - b);
+
+                    // Step 1: gather the batch rows in sampler order
+                    Matrix.gatherRowsInto(dataset.features, order, b, m, batchX);
+                    Matrix.gatherRowsInto(dataset.labels, order, b, m, batchY);
+
+                    // Step 2: forward/backward of every shard, then reduce and step
+                    totalLoss += trainBatch(pool, batchX.rowRange(0, m), batchY.rowRange(0, m));
+                }
+
+                EpochStats s = new EpochStats();
+                s.epoch = e + 1;
+                s.loss = (float) (totalLoss / n);
+                s.seconds = (System.nanoTime() - start) / 1e9;
+                s.samplesPerSecond = n / s.seconds;
+                stats[e] = s;
+                if (verbose) {
+                    s.print();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Training interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Training worker failed", ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return stats;
+    }
+
+    /**
+     * One synchronous step on a mini-batch.
+     *
+     * @return summed loss of the batch (before the update)
+     */
+    private double trainBatch(ExecutorService pool, Matrix X, Matrix Y)
+            throws InterruptedException, ExecutionException {
+        int m = X.rows;
+        float scale = 1.0f / m;
+
+        // Step 1: one shard per worker; losses are summed in shard order
+        List<Callable<Double>> shards = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            int from = (int) ((long) m * t / threads);
+            int to = (int) ((long) m * (t + 1) / threads);
+            Replica replica = replicas[t];
+            Matrix shardX = X.rowRange(from, to - from);
+            Matrix shardY = Y.rowRange(from, to - from);
+            shards.add(() -> replica.computeGradients(shardX, shardY, scale));
+        }
+        double loss = 0.0;
+        for (Future<Double> result : pool.invokeAll(shards)) {
+            loss += result.get();
+        }
+
+        // Step 2: fixed-order tree reduction into replica 0
+        for (int stride = 1; stride < threads; stride *= 2) {
+            List<Callable<Void>> pairs = new ArrayList<>();
+            for (int t = 0; t + stride < threads; t += 2 * stride) {
+                Replica target = replicas[t];
+                Replica source = replicas[t + stride];
+                pairs.add(() -> {
+                    target.addGradients(source);
+                    return null;
+                });
+            }
+            for (Future<Void> result : pool.invokeAll(pairs)) {
+                result.get();
+            }
+        }
+
+        // Step 3: hand the batch gradient to the layers and take one step
+        Replica root = replicas[0];
+        Layer[] layers = network.layers;
+        for (int l = 0; l < layers.length; l++) {
+            float[] weightGrad = root.weightGrads[l].data;
+            System.arraycopy(weightGrad, 0, layers[l].weightGrad.data, 0, weightGrad.length);
+            System.arraycopy(root.biasGrads[l], 0, layers[l].biasGrad, 0, root.biasGrads[l].length);
+        }
+        optimizer.step(layers);
+        return loss;
+    }
+
+    // ============================
+    // Replica
+    // ============================
+
+    /**
+     * Private activation and gradient buffers of one worker thread.
+     */
+    private static final class Replica {
+        private final Layer[] layers;
+        private final BatchWorkspace workspace;
+        private final Matrix[] weightGrads;  // gradient of each layer's weights
+        private final float[][] biasGrads;   // gradient of each layer's biases
+
+        Replica(Layer[] layers) {
+            this.layers = layers;
+            this.workspace = new BatchWorkspace(layers);
+            this.weightGrads = new Matrix[layers.length];
+            this.biasGrads = new float[layers.length][];
+            for (int l = 0; l < layers.length; l++) {
+                weightGrads[l] = new Matrix(layers[l].inputSize, layers[l].outputSize);
+                biasGrads[l] = new float[layers[l].outputSize];
+            }
+        }
+
+        void ensureCapacity(int rows) {
+            workspace.ensureCapacity(rows);
+        }
+
+        /**
+         * Forward and backward pass of one shard; overwrites this replica's
+         * gradient buffers with scale * (shard gradient sum).
+         *
+         * @return summed loss of the shard
+         */
+        double computeGradients(Matrix X, Matrix Y, float scale) {
+            Parallel.setSequentialForCurrentThread(true);
+            try {
+                return workspace.computeGradients(X, Y, scale, false, weightGrads, biasGrads);
+            } finally {
+                Parallel.setSequentialForCurrentThread(false);
+            }
+        }
+
+        /** this.gradients += other.gradients */
+        void addGradients(Replica other) {
+            Kernels kernels = Kernels.get();
+            for (int l = 0; l < layers.length; l++) {
+                float[] w = weightGrads[l].data;
+                kernels.add(w, 0, other.weightGrads[l].data, 0, w, 0, w.length);
+                float[] b = biasGrads[l];
+                kernels.add(b, 0, other.biasGrads[l], 0, b, 0, b.length);
+            }
+        }
+    }
+}
@@ -4,6 +4,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -13,6 +15,7 @@ import java.util.List;
  * - Reading CSV files from resources
  * - Shuffling datasets
  * - Splitting data into training and testing sets
+ * - Converting CSV files to the binary dataset format
  */
 public class DataUtils {
 
@@ -56,36 +59,32 @@ public class DataUtils {
     }
 
     /**
-     * Shuffles dataset (features and labels together).
+     * Shuffles dataset (features and labels together) by physically
+     * reordering the rows. Training loops do not need this; they follow a
+     * Sampler's index order instead.
      *
      * @param features Matrix containing feature values
      * @param labels   Matrix containing label values
      */
     public static void shuffleDataset(Matrix features, Matrix labels) {
-        int numSamples = features.data.length;
-
-        // Step 1: Create a list of indices 0..n-1
-        List<Integer> indices = new ArrayList<>(numSamples);
-        for (int i = 0; i < numSamples; i++) {
-            indices.add(i);
-        }
-
-        // Step 2: Shuffle indices randomly
-        Collections.shuffle(indices);
-
-        // Step 3: Create new shuffled matrices
-        float[][] shuffledFeatures = new float[numSamples][features.cols];
-        float[][] shuffledLabels = new float[numSamples][labels.cols];
-
-        for (int i = 0; i < numSamples; i++) {
-            int oldIndex = indices.get(i);
-            shuffledFeatures[i] = features.data[oldIndex].clone();
-            shuffledLabels[i] = labels.data[oldIndex].clone();
-        }
-
-        // Step 4: Replace old data with shuffled data
-        features.data = shuffledFeatures;
-        labels.data = shuffledLabels;
+        int numSamples = features.rows;
+
+        // Step 1: Random permutation of the row indices
+        int[] order = Sampler.random(numSamples).nextEpoch();
+
+        // Step 2: Gather rows into new matrices in that order
+        Matrix shuffledFeatures = new Matrix(numSamples, features.cols);
+        Matrix shuffledLabels = new Matrix(numSamples, labels.cols);
+        Matrix.gatherRowsInto(features, order, 0, numSamples, shuffledFeatures);
+        Matrix.gatherRowsInto(labels, order, 0, numSamples, shuffledLabels);
+
+        // Step 3: Replace old data with shuffled data
+        features.data = shuffledFeatures.data;
+        features.offset = 0;
+        features.stride = features.cols;
+        labels.data = shuffledLabels.data;
+        labels.offset = 0;
+        labels.stride = labels.cols;
     }
 
     /**
@@ -177,17 +176,77 @@ public class DataUtils {
         // Step 7: Fill training dataset
         for (int i = 0; i < numTrain; i++) {
             int idx = indices.get(i);
-            train.features.data[i] = featuresList.get(idx).clone();
-            train.labels.data[i] = labelsList.get(idx).clone();
+            train.features.setRow(i, featuresList.get(idx));
+            train.labels.setRow(i, labelsList.get(idx));
         }
 
         // Step 8: Fill testing dataset
         for (int i = 0; i < numTest; i++) {
             int idx = indices.get(numTrain + i);
-            test.features.data[i] = featuresList.get(idx).clone();
-            test.labels.data[i] = labelsList.get(idx).clone();
+            test.features.setRow(i, featuresList.get(idx));
+            test.labels.setRow(i, labelsList.get(idx));
+        }
+    }
+
+    /**
+     * One-time conversion of a CSV file into the binary dataset format
+     * (see BinaryDataset). The CSV is streamed with CsvBatchReader, so it
+     * may be larger than the heap.
+     *
+     * @param csv    source CSV file
+     * @param schema column layout of the CSV
+     * @param out    binary file to write (replaced if it exists)
+     * @return contentHash of the written file
+     */
+    public static long convertCsvToBinary(Path csv, CsvSchema schema, Path out) throws IOException {
+        int numClasses = schema.isNumericTarget() ? 0 : schema.outputSize();
+        long source = sourceFingerprint(csv, schema);
+        try (CsvBatchReader reader = new CsvBatchReader(csv, schema, 4096);
+             BinaryDataset.Writer writer = new BinaryDataset.Writer(out, schema.inputSize(),
+                     schema.outputSize(), numClasses, source)) {
+            while (reader.hasNext()) {
+                TrainDataset batch = reader.next();
+                writer.append(batch.features, batch.labels);
+            }
+            return writer.finish();
         }
     }
+
+    /**
+     * Maps the binary form of a CSV file, converting it first unless the
+     * binary file was made from this CSV (same size and modification time)
+     * with this schema (same fingerprint). Later runs skip parsing and
+     * start in milliseconds.
+     *
+     * @param csv    source CSV file
+     * @param schema column layout of the CSV
+     * @param binary converted file (cache)
+     * @return mapped dataset; close it when done
+     */
+    public static BinaryDataset loadBinary(Path csv, CsvSchema schema, Path binary) throws IOException {
+        if (Files.exists(binary)) {
+            try {
+                BinaryDataset dataset = BinaryDataset.open(binary);
+                if (dataset.sourceFingerprint == sourceFingerprint(csv, schema)) {
+                    return dataset;
+                }
+                dataset.close();
+            } catch (IOException ex) {
+                // unreadable or from another format version: convert again
+            }
+        }
+        convertCsvToBinary(csv, schema, binary);
+        return BinaryDataset.open(binary);
+    }
+
+    /** Fingerprint of a CSV conversion: schema plus the file's size and modification time */
+    private static long sourceFingerprint(Path csv, CsvSchema schema) throws IOException {
+        long h = schema.fingerprint();
+        h = Long.rotateLeft(h ^ Files.size(csv) * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B97F4A7C15L;
+        h = Long.rotateLeft(h ^ Files.getLastModifiedTime(csv).toMillis() * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B97F4A7C15L;
+        // 0 means "unknown source" in the file header
+        return h != 0 ? h : 1;
+    }
 }
 
 
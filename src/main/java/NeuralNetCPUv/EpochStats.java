@@ -0,0 +1,17 @@
+package NeuralNetCPUv;
+
+/**
+ * Statistics of one training epoch, as returned by the parallel trainers.
+ */
+public class EpochStats {
+    public int epoch;
+    public float loss;              // average cross-entropy over the epoch
+    public double seconds;          // wall-clock time of the epoch
+    public double samplesPerSecond;
+
+    /** Print the statistics in a readable format */
+    public void print() {
+        System.out.printf("Epoch %d: Loss = %.4f, %.0f samples/s (%.3f s)%n",
+                epoch, loss, samplesPerSecond, seconds);
+    }
+}
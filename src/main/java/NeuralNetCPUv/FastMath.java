@@ -0,0 +1,346 @@
+package NeuralNetCPUv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fast float approximations of exp, sigmoid and tanh, plus a fused softmax.
+ *
+ * Activations uses Math.exp in double precision (tanh even calls it four
+ * times). When fast math is enabled, the built-in Activation.SIGMOID and
+ * Activation.TANH and Activations.softmaxInto switch to the versions below,
+ * which run on the Kernels backend (vectorized by SimdKernels).
+ *
+ * exp(x): range reduction x = n * ln2 + r with |r| <= ln2 / 2, a degree-6
+ * polynomial for e^r (Cephes expf coefficients), and 2^n built directly in
+ * the float exponent bits. Inputs are clamped to [EXP_MIN, EXP_MAX], so
+ * there is no overflow, no denormals and no NaN for finite inputs.
+ *
+ * Maximum errors against the exact double versions, measured with
+ * measureErrors() over the whole float range (both backends) and enforced
+ * by ErrorReport.check() / main (the MAX_* constants):
+ *  - exp:     relative error <= 2e-7 on [EXP_MIN, EXP_MAX]
+ *  - sigmoid: relative error <= 2e-7 for x >= -80, absolute error <= 1e-7 everywhere
+ *  - tanh:    relative error <= 2e-7 everywhere
+ *  - softmax: relative error <= 3e-6 per probability (mostly float summation,
+ *             the exact Activations.softmax rounds the same way)
+ *
+ * Fast math is off by default. Enable it with -Dneuralnet.fastmath=true or
+ * FastMath.setEnabled(true).
+ */
+public class FastMath {
+
+    /** System property that enables fast math at startup */
+    public static final String PROPERTY = "neuralnet.fastmath";
+
+    /** Smallest exp input (e^EXP_MIN is just above the smallest normal float) */
+    public static final float EXP_MIN = -87.0f;
+
+    /** Largest exp input (e^EXP_MAX is below Float.MAX_VALUE) */
+    public static final float EXP_MAX = 88.0f;
+
+    /** Above this |x|, tanh(x) rounds to +-1 in float */
+    static final float TANH_SATURATION = 9.0f;
+
+    /** Below this |x|, tanh uses its odd polynomial instead of exp */
+    static final float TANH_SMALL = 0.625f;
+
+    // Documented error bounds (see the class comment)
+    public static final double MAX_EXP_RELATIVE_ERROR = 2e-7;
+    public static final double MAX_SIGMOID_RELATIVE_ERROR = 2e-7;
+    public static final double MAX_SIGMOID_ABSOLUTE_ERROR = 1e-7;
+    public static final double MAX_TANH_RELATIVE_ERROR = 2e-7;
+    public static final double MAX_SOFTMAX_RELATIVE_ERROR = 3e-6;
+
+    // Range reduction constants (ln2 split in two for extra precision)
+    static final float LOG2E = 1.44269504088896341f;
+    static final float LN2_HI = 0.693359375f;
+    static final float LN2_LO = -2.12194440e-4f;
+
+    /** 1.5 * 2^23: adding it rounds a float to the nearest integer */
+    static final float ROUND_MAGIC = 12582912.0f;
+
+    // e^r polynomial (Cephes expf)
+    static final float EXP_P0 = 1.9875691500e-4f;
+    static final float EXP_P1 = 1.3981999507e-3f;
+    static final float EXP_P2 = 8.3334519073e-3f;
+    static final float EXP_P3 = 4.1665795894e-2f;
+    static final float EXP_P4 = 1.6666665459e-1f;
+    static final float EXP_P5 = 5.0000001201e-1f;
+
+    // tanh(x) / x - 1 polynomial in x^2 for |x| < TANH_SMALL (Cephes tanhf)
+    static final float TANH_P0 = -5.70498872745e-3f;
+    static final float TANH_P1 = 2.06390887954e-2f;
+    static final float TANH_P2 = -5.37397155531e-2f;
+    static final float TANH_P3 = 1.33314422036e-1f;
+    static final float TANH_P4 = -3.33332819422e-1f;
+
+    private static volatile boolean enabled = Boolean.getBoolean(PROPERTY);
+
+    /** Enables or disables fast math globally */
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /** True when activations and softmax use the fast versions */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // ============================
+    // Scalar versions
+    // ============================
+
+    /**
+     * Approximate e^x (see class comment for the error bound).
+     */
+    public static float exp(float x) {
+        // Step 1: clamp, then n = round(x / ln2)
+        x = Math.max(EXP_MIN, Math.min(EXP_MAX, x));
+        float fn = (x * LOG2E + ROUND_MAGIC) - ROUND_MAGIC;
+
+        // Step 2: r = x - n * ln2, |r| <= ln2 / 2
+        float r = x - fn * LN2_HI - fn * LN2_LO;
+
+        // Step 3: e^r = 1 + r + r^2 * P(r)
+        float p = EXP_P0;
+        p = p * r + EXP_P1;
+        p = p * r + EXP_P2;
+        p = p * r + EXP_P3;
+        p = p * r + EXP_P4;
+        p = p * r + EXP_P5;
+        float er = p * r * r + r + 1.0f;
+
+        // Step 4: multiply by 2^n, built in the exponent bits
+        return er * Float.intBitsToFloat(((int) fn + 127) << 23);
+    }
+
+    /**
+     * Approximate 1 / (1 + e^(-x)).
+     */
+    public static float sigmoid(float x) {
+        return 1.0f / (1.0f + exp(-x));
+    }
+
+    /**
+     * Approximate tanh(x).
+     * Small inputs use an odd polynomial (no cancellation near 0),
+     * larger ones 1 - 2 / (e^(2|x|) + 1) with the sign restored.
+     */
+    public static float tanh(float x) {
+        float ax = Math.abs(x);
+        if (ax < TANH_SMALL) {
+            float z = x * x;
+            float p = TANH_P0;
+            p = p * z + TANH_P1;
+            p = p * z + TANH_P2;
+            p = p * z + TANH_P3;
+            p = p * z + TANH_P4;
+            return p * z * x + x;
+        }
+        if (ax > TANH_SATURATION) {
+            return Math.copySign(1.0f, x);
+        }
+        float t = 1.0f - 2.0f / (exp(2.0f * ax) + 1.0f);
+        return Math.copySign(t, x);
+    }
+
+    // ============================
+    // Fused softmax
+    // ============================
+
+    /**
+     * Softmax of z[offset .. offset + n) computed in place:
+     * max, exp, sum and normalize without any temporary array.
+     * exp and the final scaling run on the Kernels backend.
+     *
+     * @param z      array holding the raw scores, overwritten with probabilities
+     * @param offset index of the first score
+     * @param n      number of scores
+     */
+    public static void softmaxInPlace(float[] z, int offset, int n) {
+        Kernels kernels = Kernels.get();
+
+        // Step 1: max for numerical stability
+        float max = z[offset];
+        for (int i = 1; i < n; i++) {
+            max = Math.max(max, z[offset + i]);
+        }
+
+        // Step 2: z = exp(z - max), summed on the way
+        float sum = kernels.expShifted(z, offset, -max, z, offset, n);
+
+        // Step 3: normalize
+        kernels.scale(z, offset, 1.0f / sum, z, offset, n);
+    }
+
+    // ============================
+    // Error measurement
+    // ============================
+
+    /**
+     * Largest errors of the fast versions against the exact ones.
+     */
+    public static class ErrorReport {
+        public int samples;
+        public double expMaxRelative;
+        public double sigmoidMaxRelative;      // for x >= -80
+        public double sigmoidMaxAbsolute;      // over all inputs
+        public double tanhMaxRelative;
+        public double softmaxMaxRelative;
+
+        /** Print the report in a readable format */
+        public void print() {
+            System.out.printf("Fast math error report (%d samples, %s):%n", samples, Kernels.get().name());
+            System.out.printf("  exp     max rel error: %.3e%n", expMaxRelative);
+            System.out.printf("  sigmoid max rel error: %.3e  (max abs %.3e)%n",
+                    sigmoidMaxRelative, sigmoidMaxAbsolute);
+            System.out.printf("  tanh    max rel error: %.3e%n", tanhMaxRelative);
+            System.out.printf("  softmax max rel error: %.3e%n", softmaxMaxRelative);
+        }
+
+        /**
+         * Compares the measured errors with the documented bounds.
+         *
+         * @throws IllegalStateException naming every bound that is exceeded
+         */
+        public void check() {
+            StringBuilder violations = new StringBuilder();
+            exceeds(violations, "exp relative", expMaxRelative, MAX_EXP_RELATIVE_ERROR);
+            exceeds(violations, "sigmoid relative", sigmoidMaxRelative, MAX_SIGMOID_RELATIVE_ERROR);
+            exceeds(violations, "sigmoid absolute", sigmoidMaxAbsolute, MAX_SIGMOID_ABSOLUTE_ERROR);
+            exceeds(violations, "tanh relative", tanhMaxRelative, MAX_TANH_RELATIVE_ERROR);
+            exceeds(violations, "softmax relative", softmaxMaxRelative, MAX_SOFTMAX_RELATIVE_ERROR);
+            if (violations.length() > 0) {
+                throw new IllegalStateException("Fast math error bounds exceeded:" + violations);
+            }
+        }
+
+        private static void exceeds(StringBuilder violations, String name, double error, double bound) {
+            // !(error <= bound) also catches NaN
+            if (!(error <= bound)) {
+                violations.append(String.format(" %s error %.3e > %.1e;", name, error, bound));
+            }
+        }
+    }
+
+    /**
+     * Compares the fast and exact versions on random floats spread over the
+     * whole float range (random bit patterns) plus a dense uniform sweep of
+     * the range where the functions are not saturated. The bulk Kernels
+     * versions are measured, so the active backend is what gets checked.
+     *
+     * @param samples number of inputs per function
+     * @param seed    random seed
+     * @return largest errors found
+     */
+    public static ErrorReport measureErrors(int samples, long seed) {
+        Random random = new Random(seed);
+        Kernels kernels = Kernels.get();
+        float[] x = new float[samples];
+        float[] fast = new float[samples];
+        ErrorReport report = new ErrorReport();
+        report.samples = samples;
+
+        // Half random bit patterns (all magnitudes), half uniform on [-100, 100]
+        for (int i = 0; i < samples; i++) {
+            float v;
+            if (i % 2 == 0) {
+                do {
+                    v = Float.intBitsToFloat(random.nextInt());
+                } while (Float.isNaN(v) || Float.isInfinite(v));
+            } else {
+                v = (random.nextFloat() * 2.0f - 1.0f) * 100.0f;
+            }
+            x[i] = v;
+        }
+
+        // exp (inside its clamp range)
+        float[] clamped = new float[samples];
+        for (int i = 0; i < samples; i++) {
+            clamped[i] = Math.max(EXP_MIN, Math.min(EXP_MAX, x[i]));
+        }
+        kernels.expShifted(clamped, 0, 0.0f, fast, 0, samples);
+        for (int i = 0; i < samples; i++) {
+            report.expMaxRelative = Math.max(report.expMaxRelative,
+                    relativeError(fast[i], Math.exp(clamped[i])));
+        }
+
+        // sigmoid
+        kernels.sigmoid(x, 0, fast, 0, samples);
+        for (int i = 0; i < samples; i++) {
+            double exact = 1.0 / (1.0 + Math.exp(-(double) x[i]));
+            report.sigmoidMaxAbsolute = Math.max(report.sigmoidMaxAbsolute, Math.abs(fast[i] - exact));
+            if (x[i] >= -80.0f) {
+                report.sigmoidMaxRelative = Math.max(report.sigmoidMaxRelative, relativeError(fast[i], exact));
+            }
+        }
+
+        // tanh
+        kernels.tanh(x, 0, fast, 0, samples);
+        for (int i = 0; i < samples; i++) {
+            report.tanhMaxRelative = Math.max(report.tanhMaxRelative,
+                    relativeError(fast[i], Math.tanh(x[i])));
+        }
+
+        // softmax over rows of 10 scores in [-20, 20]
+        int width = 10;
+        float[] row = new float[width];
+        for (int s = 0; s + width <= samples; s += width) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j < width; j++) {
+                row[j] = (random.nextFloat() * 2.0f - 1.0f) * 20.0f;
+                max = Math.max(max, row[j]);
+            }
+            double sum = 0.0;
+            double[] exact = new double[width];
+            for (int j = 0; j < width; j++) {
+                exact[j] = Math.exp(row[j] - max);
+                sum += exact[j];
+            }
+            softmaxInPlace(row, 0, width);
+            for (int j = 0; j < width; j++) {
+                report.softmaxMaxRelative = Math.max(report.softmaxMaxRelative,
+                        relativeError(row[j], exact[j] / sum));
+            }
+        }
+        return report;
+    }
+
+    private static double relativeError(float approx, double exact) {
+        if (exact == 0.0) {
+            return Math.abs(approx);
+        }
+        return Math.abs((approx - exact) / exact);
+    }
+
+    /**
+     * Measures the errors on the scalar backend and, when available, the
+     * SIMD backend, prints both reports and exits with status 1 if any
+     * documented bound is exceeded.
+     */
+    public static void main(String[] args) {
+        Kernels previous = Kernels.get();
+        List<Kernels.Backend> backends = new ArrayList<>(List.of(Kernels.Backend.SCALAR));
+        if (Kernels.simdAvailable()) {
+            backends.add(Kernels.Backend.SIMD);
+        }
+        boolean failed = false;
+        for (Kernels.Backend backend : backends) {
+            Kernels.use(backend);
+            ErrorReport report = measureErrors(1 << 22, 42L);
+            report.print();
+            try {
+                report.check();
+            } catch (IllegalStateException ex) {
+                System.out.println("  FAILED: " + ex.getMessage());
+                failed = true;
+            }
+        }
+        Kernels.use(previous.isSimd() ? Kernels.Backend.SIMD : Kernels.Backend.SCALAR);
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
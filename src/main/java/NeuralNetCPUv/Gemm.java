@@ -0,0 +1,447 @@
+package NeuralNetCPUv;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Cache-blocked general matrix multiply (GEMM).
+ *
+ * Computes C = alpha * op(A) * op(B) + beta * C, where op(X) is either X
+ * or X^T. Transposition is handled while copying ("packing") blocks of
+ * A and B into small contiguous buffers, so callers never have to build
+ * a transposed matrix with Matrix.transpose.
+ *
+ * Blocking scheme (Goto / BLIS style):
+ *  - B is cut into KC x NC blocks that stay in L2/L3 cache,
+ *  - A is cut into MC x KC blocks that stay in L2 cache,
+ *  - both blocks are packed into panels of NR columns / MR rows,
+ *  - a micro-kernel computes one MR x NR tile of C in local variables
+ *    (registers), reading the two panels strictly sequentially. The
+ *    micro-kernel comes from the Kernels backend, so the SIMD backend
+ *    keeps one vector accumulator per row of the tile.
+ *
+ * Very small products skip the packing and use a plain loop, since the
+ * copying would cost more than it saves. Large products are split into
+ * 2D tiles of C that run in parallel on the Parallel pool; each tile is
+ * an independent blocked GEMM, so no synchronization is needed.
+ */
+public class Gemm {
+
+    // ============================
+    // Blocking parameters
+    // ============================
+
+    /** Rows of C computed by one micro-kernel call (multiple of 4) */
+    static final int MR = 8;
+
+    /** Columns of C computed by one micro-kernel call (multiple of 8) */
+    static final int NR = 16;
+
+    /** Rows of A packed per block (A block ~ MC x KC floats) */
+    static final int MC = 128;
+
+    /** Shared dimension per block */
+    static final int KC = 256;
+
+    /** Columns of B packed per block (B block ~ KC x NC floats) */
+    static final int NC = 2048;
+
+    /** Below this many multiply-adds the unpacked loop is used */
+    static final long SMALL_WORK = 32L * 32 * 32;
+
+    /** Packing buffers, reused per thread to avoid allocating on every call */
+    private static final ThreadLocal<float[][]> PACK_BUFFERS =
+            ThreadLocal.withInitial(() -> new float[][]{new float[0], new float[0]});
+
+    // ============================
+    // Public entry points
+    // ============================
+
+    /**
+     * C = A * B (new matrix).
+     */
+    public static Matrix multiply(Matrix A, Matrix B) {
+        Matrix C = new Matrix(A.rows, B.cols);
+        gemm(false, false, 1.0f, A, B, 0.0f, C);
+        return C;
+    }
+
+    /**
+     * C = A^T * B (new matrix), without materializing A^T.
+     */
+    public static Matrix multiplyTransA(Matrix A, Matrix B) {
+        Matrix C = new Matrix(A.cols, B.cols);
+        gemm(true, false, 1.0f, A, B, 0.0f, C);
+        return C;
+    }
+
+    /**
+     * C = A * B^T (new matrix), without materializing B^T.
+     */
+    public static Matrix multiplyTransB(Matrix A, Matrix B) {
+        Matrix C = new Matrix(A.rows, B.rows);
+        gemm(false, true, 1.0f, A, B, 0.0f, C);
+        return C;
+    }
+
+    /**
+     * General form: C = alpha * op(A) * op(B) + beta * C.
+     *
+     * @param transA use A^T instead of A
+     * @param transB use B^T instead of B
+     * @param alpha  scale applied to the product
+     * @param A      left operand
+     * @param B      right operand
+     * @param beta   scale applied to the existing contents of C (0 = overwrite)
+     * @param C      destination, must be m x n and must not alias A or B
+     */
+    public static void gemm(boolean transA, boolean transB, float alpha,
+                            Matrix A, Matrix B, float beta, Matrix C) {
+        int m = transA ? A.cols : A.rows;
+        int k = transA ? A.rows : A.cols;
+        int kB = transB ? B.cols : B.rows;
+        int n = transB ? B.rows : B.cols;
+
+        if (k != kB) {
+            throw new IllegalArgumentException("Inner dimensions do not match: " + k + " vs " + kB);
+        }
+        if (C.rows != m || C.cols != n) {
+            throw new IllegalArgumentException("Output must be " + m + " x " + n
+                    + " but is " + C.rows + " x " + C.cols);
+        }
+
+        // Step 1: apply beta to C once, so every block below can simply accumulate
+        scaleC(C, beta);
+        if (m == 0 || n == 0 || k == 0 || alpha == 0.0f) {
+            return;
+        }
+
+        // Step 2: tiny products are faster without packing
+        if ((long) m * n * k <= SMALL_WORK) {
+            smallGemm(transA, transB, alpha, A, B, C, m, n, k);
+            return;
+        }
+
+        // Step 3: large products are tiled across cores
+        if (Parallel.worthSplitting((long) m * n * k, Parallel.getGemmThreshold())) {
+            long grain = Math.max(SMALL_WORK, (long) m * n * k / Parallel.targetTasks());
+            Parallel.getPool().invoke(new TileTask(transA, transB, alpha, A, B, C, 0, m, 0, n, k, grain));
+            return;
+        }
+
+        blockedGemm(transA, transB, alpha, A, B, C, 0, m, 0, n, k);
+    }
+
+    // ============================
+    // Parallel tiling
+    // ============================
+
+    /**
+     * Recursively halves the larger side of a C tile until its work drops
+     * below the grain size, then runs the blocked kernel on it.
+     * Splits are aligned to MR / NR so micro-tiles are never cut.
+     */
+    private static class TileTask extends RecursiveAction {
+        private final boolean transA, transB;
+        private final float alpha;
+        private final Matrix A, B, C;
+        private final int rowStart, rowEnd, colStart, colEnd, k;
+        private final long grain;
+
+        TileTask(boolean transA, boolean transB, float alpha, Matrix A, Matrix B, Matrix C,
+                 int rowStart, int rowEnd, int colStart, int colEnd, int k, long grain) {
+            this.transA = transA;
+            this.transB = transB;
+            this.alpha = alpha;
+            this.A = A;
+            this.B = B;
+            this.C = C;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.colStart = colStart;
+            this.colEnd = colEnd;
+            this.k = k;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = rowEnd - rowStart;
+            int cols = colEnd - colStart;
+            long work = (long) rows * cols * k;
+
+            if (work > grain && rows >= cols && rows >= 2 * MR) {
+                int mid = rowStart + roundUp(rows / 2, MR);
+                invokeAll(new TileTask(transA, transB, alpha, A, B, C, rowStart, mid, colStart, colEnd, k, grain),
+                          new TileTask(transA, transB, alpha, A, B, C, mid, rowEnd, colStart, colEnd, k, grain));
+            } else if (work > grain && cols >= 2 * NR) {
+                int mid = colStart + roundUp(cols / 2, NR);
+                invokeAll(new TileTask(transA, transB, alpha, A, B, C, rowStart, rowEnd, colStart, mid, k, grain),
+                          new TileTask(transA, transB, alpha, A, B, C, rowStart, rowEnd, mid, colEnd, k, grain));
+            } else {
+                blockedGemm(transA, transB, alpha, A, B, C, rowStart, rowEnd, colStart, colEnd, k);
+            }
+        }
+    }
+
+    // ============================
+    // Blocked driver
+    // ============================
+
+    /**
+     * Runs the blocked algorithm for the tile [rowStart, rowEnd) x [colStart, colEnd) of C.
+     * C must already hold beta * C.
+     */
+    static void blockedGemm(boolean transA, boolean transB, float alpha,
+                            Matrix A, Matrix B, Matrix C,
+                            int rowStart, int rowEnd, int colStart, int colEnd, int k) {
+        float[][] buffers = PACK_BUFFERS.get();
+        int maxKc = Math.min(KC, k);
+        int maxNc = roundUp(Math.min(NC, colEnd - colStart), NR);
+        int maxMc = roundUp(Math.min(MC, rowEnd - rowStart), MR);
+
+        if (buffers[0].length < maxMc * maxKc) {
+            buffers[0] = new float[maxMc * maxKc];
+        }
+        if (buffers[1].length < maxKc * maxNc) {
+            buffers[1] = new float[maxKc * maxNc];
+        }
+        float[] packedA = buffers[0];
+        float[] packedB = buffers[1];
+        float[] edge = new float[MR * NR];
+        Kernels kernels = Kernels.get();
+
+        for (int jc = colStart; jc < colEnd; jc += NC) {
+            int nc = Math.min(NC, colEnd - jc);
+
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+
+                // Pack a KC x NC block of op(B) into NR-wide panels
+                packB(transB, B, pc, kc, jc, nc, packedB);
+
+                for (int ic = rowStart; ic < rowEnd; ic += MC) {
+                    int mc = Math.min(MC, rowEnd - ic);
+
+                    // Pack an MC x KC block of op(A) into MR-tall panels (alpha folded in)
+                    packA(transA, A, ic, mc, pc, kc, alpha, packedA);
+
+                    // Sweep micro-tiles across the block
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        int nr = Math.min(NR, nc - jr);
+                        int bOff = (jr / NR) * kc * NR;
+
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            int aOff = (ir / MR) * kc * MR;
+                            int cOff = C.index(ic + ir, jc + jr);
+
+                            if (mr == MR && nr == NR) {
+                                kernels.gemmMicroKernel(kc, packedA, aOff, packedB, bOff, C.data, cOff, C.stride);
+                            } else {
+                                edgeKernel(kc, packedA, aOff, packedB, bOff, edge,
+                                        C.data, cOff, C.stride, mr, nr);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // ============================
+    // Packing
+    // ============================
+
+    /**
+     * Copies op(A)[ic .. ic+mc, pc .. pc+kc] into panels of MR rows.
+     * Layout: panel-major, then k, then the MR rows of the panel.
+     * Rows past the edge are zero-padded.
+     */
+    private static void packA(boolean transA, Matrix A, int ic, int mc, int pc, int kc,
+                              float alpha, float[] packed) {
+        float[] a = A.data;
+        int idx = 0;
+
+        for (int ir = 0; ir < mc; ir += MR) {
+            int mr = Math.min(MR, mc - ir);
+            for (int p = 0; p < kc; p++) {
+                for (int r = 0; r < MR; r++) {
+                    if (r < mr) {
+                        int i = ic + ir + r;
+                        int col = pc + p;
+                        float v = transA ? a[A.index(col, i)] : a[A.index(i, col)];
+                        packed[idx++] = alpha * v;
+                    } else {
+                        packed[idx++] = 0.0f;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies op(B)[pc .. pc+kc, jc .. jc+nc] into panels of NR columns.
+     * Layout: panel-major, then k, then the NR columns of the panel.
+     * Columns past the edge are zero-padded.
+     */
+    private static void packB(boolean transB, Matrix B, int pc, int kc, int jc, int nc, float[] packed) {
+        float[] b = B.data;
+        int idx = 0;
+
+        for (int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+            for (int p = 0; p < kc; p++) {
+                int row = pc + p;
+                if (!transB && nr == NR) {
+                    // Fast path: NR consecutive values of one row of B
+                    System.arraycopy(b, B.index(row, jc + jr), packed, idx, NR);
+                    idx += NR;
+                    continue;
+                }
+                for (int c = 0; c < NR; c++) {
+                    if (c < nr) {
+                        int j = jc + jr + c;
+                        packed[idx++] = transB ? b[B.index(j, row)] : b[B.index(row, j)];
+                    } else {
+                        packed[idx++] = 0.0f;
+                    }
+                }
+            }
+        }
+    }
+
+    // ============================
+    // Micro-kernels
+    // ============================
+
+    /**
+     * Scalar MR x NR micro-kernel: C[0..MR, 0..NR] += Apanel * Bpanel,
+     * computed as 4 x 8 sub-tiles (32 scalar sums fit in registers).
+     * Used by the scalar backend; SimdKernels has a vector version.
+     */
+    static void microKernel(int kc, float[] a, int aOff, float[] b, int bOff,
+                            float[] c, int cOff, int ldc) {
+        for (int r = 0; r < MR; r += 4) {
+            for (int j = 0; j < NR; j += 8) {
+                microKernel4x8(kc, a, aOff + r, b, bOff + j, c, cOff + r * ldc + j, ldc);
+            }
+        }
+    }
+
+    /**
+     * Register-blocked 4 x 8 sub-tile of the packed panels.
+     * The 32 partial sums live in local variables for the whole k loop,
+     * so C is read and written exactly once per tile.
+     */
+    private static void microKernel4x8(int kc, float[] a, int aOff, float[] b, int bOff,
+                                    float[] c, int cOff, int ldc) {
+        float c00 = 0, c01 = 0, c02 = 0, c03 = 0, c04 = 0, c05 = 0, c06 = 0, c07 = 0;
+        float c10 = 0, c11 = 0, c12 = 0, c13 = 0, c14 = 0, c15 = 0, c16 = 0, c17 = 0;
+        float c20 = 0, c21 = 0, c22 = 0, c23 = 0, c24 = 0, c25 = 0, c26 = 0, c27 = 0;
+        float c30 = 0, c31 = 0, c32 = 0, c33 = 0, c34 = 0, c35 = 0, c36 = 0, c37 = 0;
+
+        for (int p = 0; p < kc; p++) {
+            float a0 = a[aOff], a1 = a[aOff + 1], a2 = a[aOff + 2], a3 = a[aOff + 3];
+            float b0 = b[bOff], b1 = b[bOff + 1], b2 = b[bOff + 2], b3 = b[bOff + 3];
+            float b4 = b[bOff + 4], b5 = b[bOff + 5], b6 = b[bOff + 6], b7 = b[bOff + 7];
+
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c04 += a0 * b4; c05 += a0 * b5; c06 += a0 * b6; c07 += a0 * b7;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c14 += a1 * b4; c15 += a1 * b5; c16 += a1 * b6; c17 += a1 * b7;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c24 += a2 * b4; c25 += a2 * b5; c26 += a2 * b6; c27 += a2 * b7;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+            c34 += a3 * b4; c35 += a3 * b5; c36 += a3 * b6; c37 += a3 * b7;
+
+            aOff += MR;
+            bOff += NR;
+        }
+
+        int r0 = cOff, r1 = cOff + ldc, r2 = cOff + 2 * ldc, r3 = cOff + 3 * ldc;
+        c[r0] += c00; c[r0 + 1] += c01; c[r0 + 2] += c02; c[r0 + 3] += c03;
+        c[r0 + 4] += c04; c[r0 + 5] += c05; c[r0 + 6] += c06; c[r0 + 7] += c07;
+        c[r1] += c10; c[r1 + 1] += c11; c[r1 + 2] += c12; c[r1 + 3] += c13;
+        c[r1 + 4] += c14; c[r1 + 5] += c15; c[r1 + 6] += c16; c[r1 + 7] += c17;
+        c[r2] += c20; c[r2 + 1] += c21; c[r2 + 2] += c22; c[r2 + 3] += c23;
+        c[r2 + 4] += c24; c[r2 + 5] += c25; c[r2 + 6] += c26; c[r2 + 7] += c27;
+        c[r3] += c30; c[r3 + 1] += c31; c[r3 + 2] += c32; c[r3 + 3] += c33;
+        c[r3 + 4] += c34; c[r3 + 5] += c35; c[r3 + 6] += c36; c[r3 + 7] += c37;
+    }
+
+    /**
+     * Partial tile at the bottom / right edge of C: computes the full
+     * (zero-padded) MR x NR tile into a scratch buffer and adds back only
+     * the mr x nr part that exists in C.
+     */
+    private static void edgeKernel(int kc, float[] a, int aOff, float[] b, int bOff, float[] tile,
+                                   float[] c, int cOff, int ldc, int mr, int nr) {
+        Arrays.fill(tile, 0.0f);
+        for (int p = 0; p < kc; p++) {
+            for (int r = 0; r < MR; r++) {
+                float ar = a[aOff + r];
+                int t = r * NR;
+                for (int j = 0; j < NR; j++) {
+                    tile[t + j] += ar * b[bOff + j];
+                }
+            }
+            aOff += MR;
+            bOff += NR;
+        }
+
+        for (int r = 0; r < mr; r++) {
+            int row = cOff + r * ldc;
+            for (int j = 0; j < nr; j++) {
+                c[row + j] += tile[r * NR + j];
+            }
+        }
+    }
+
+    // ============================
+    // Helpers
+    // ============================
+
+    /**
+     * Unpacked i-k-j loop for small products.
+     */
+    private static void smallGemm(boolean transA, boolean transB, float alpha,
+                                  Matrix A, Matrix B, Matrix C, int m, int n, int k) {
+        for (int i = 0; i < m; i++) {
+            int cRow = C.index(i, 0);
+            for (int p = 0; p < k; p++) {
+                float aip = alpha * (transA ? A.get(p, i) : A.get(i, p));
+                if (aip == 0.0f) {
+                    continue;
+                }
+                if (!transB) {
+                    int bRow = B.index(p, 0);
+                    for (int j = 0; j < n; j++) {
+                        C.data[cRow + j] += aip * B.data[bRow + j];
+                    }
+                } else {
+                    for (int j = 0; j < n; j++) {
+                        C.data[cRow + j] += aip * B.get(j, p);
+                    }
+                }
+            }
+        }
+    }
+
+    /** C = beta * C (beta == 0 clears C, so stale NaNs never leak through) */
+    static void scaleC(Matrix C, float beta) {
+        if (beta == 1.0f) {
+            return;
+        }
+        for (int i = 0; i < C.rows; i++) {
+            int row = C.index(i, 0);
+            for (int j = 0; j < C.cols; j++) {
+                C.data[row + j] = beta == 0.0f ? 0.0f : C.data[row + j] * beta;
+            }
+        }
+    }
+
+    private static int roundUp(int value, int multiple) {
+        return ((value + multiple - 1) / multiple) * multiple;
+    }
+}
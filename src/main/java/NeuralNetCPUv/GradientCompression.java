@@ -0,0 +1,197 @@
+package NeuralNetCPUv;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Wire encodings for gradients pushed to a ParameterServer.
+ *
+ * encode() consumes what it sends: the transmitted part is subtracted from
+ * the gradient buffer, so whatever is left (the FP16 rounding error, or the
+ * entries TOP_K did not send) stays in the buffer and is added to the next
+ * push ("error feedback"). Nothing is lost, it only arrives later.
+ *
+ * Every message starts with an int count, followed by
+ *  - NONE:  count float32 values                       (4 bytes / parameter)
+ *  - FP16:  count IEEE half values                     (2 bytes / parameter)
+ *  - TOP_K: count int indices, then count float values (8 bytes / sent entry)
+ */
+public enum GradientCompression {
+
+    /** Raw float32 */
+    NONE,
+
+    /** IEEE 754 half precision */
+    FP16,
+
+    /** Only the k largest-magnitude entries as (index, value) pairs */
+    TOP_K;
+
+    /**
+     * Upper bound of the encoded size in bytes.
+     *
+     * @param n number of gradient values
+     * @param k entries sent by TOP_K
+     */
+    public int maxEncodedBytes(int n, int k) {
+        switch (this) {
+            case FP16:
+                return 4 + 2 * n;
+            case TOP_K:
+                return 4 + 8 * Math.min(k, n);
+            default:
+                return 4 + 4 * n;
+        }
+    }
+
+    /**
+     * Writes gradient[0 .. n) to the buffer and subtracts the sent values.
+     *
+     * @param gradient gradient values, left holding the unsent residual
+     * @param n        number of values
+     * @param k        entries sent by TOP_K (ignored otherwise)
+     * @param scratch  at least n floats of scratch space (TOP_K only, may be null otherwise)
+     * @param out      destination, positioned where the message starts
+     */
+    public void encode(float[] gradient, int n, int k, float[] scratch, ByteBuffer out) {
+        switch (this) {
+            case NONE:
+                out.putInt(n);
+                out.asFloatBuffer().put(gradient, 0, n);
+                out.position(out.position() + 4 * n);
+                Arrays.fill(gradient, 0, n, 0.0f);
+                break;
+
+            case FP16:
+                out.putInt(n);
+                for (int i = 0; i < n; i++) {
+                    short half = Float.floatToFloat16(gradient[i]);
+                    out.putShort(half);
+                    gradient[i] -= Float.float16ToFloat(half);
+                }
+                break;
+
+            case TOP_K:
+                encodeTopK(gradient, n, Math.min(k, n), scratch, out);
+                break;
+        }
+    }
+
+    /**
+     * Reads a message written by encode() into gradient[0 .. n).
+     * Entries a TOP_K message does not contain are set to 0.
+     */
+    public void decode(ByteBuffer in, float[] gradient, int n) {
+        int count = in.getInt();
+        switch (this) {
+            case NONE:
+                checkCount(count, n);
+                in.asFloatBuffer().get(gradient, 0, n);
+                in.position(in.position() + 4 * n);
+                break;
+
+            case FP16:
+                checkCount(count, n);
+                for (int i = 0; i < n; i++) {
+                    gradient[i] = Float.float16ToFloat(in.getShort());
+                }
+                break;
+
+            case TOP_K:
+                Arrays.fill(gradient, 0, n, 0.0f);
+                int indices = in.position();
+                int values = indices + 4 * count;
+                for (int e = 0; e < count; e++) {
+                    int i = in.getInt(indices + 4 * e);
+                    if (i < 0 || i >= n) {
+                        throw new IllegalArgumentException("Gradient index " + i + " out of range 0.." + n);
+                    }
+                    gradient[i] = in.getFloat(values + 4 * e);
+                }
+                in.position(values + 4 * count);
+                break;
+        }
+    }
+
+    private static void checkCount(int count, int n) {
+        if (count != n) {
+            throw new IllegalArgumentException("Gradient has " + count + " values, expected " + n);
+        }
+    }
+
+    // ============================
+    // Top-k selection
+    // ============================
+
+    /**
+     * Sends exactly k entries: all with |g| above the k-th largest magnitude,
+     * then entries equal to it until k are reached.
+     */
+    private static void encodeTopK(float[] gradient, int n, int k, float[] scratch, ByteBuffer out) {
+        out.putInt(k);
+        if (k == 0) {
+            return;
+        }
+
+        // Step 1: k-th largest magnitude (quickselect on a copy)
+        for (int i = 0; i < n; i++) {
+            scratch[i] = Math.abs(gradient[i]);
+        }
+        float threshold = select(scratch, n, n - k);
+
+        // Step 2: indices (strictly larger first, then ties), values after all indices
+        int indices = out.position();
+        int values = indices + 4 * k;
+        int sent = 0;
+        for (int i = 0; i < n && sent < k; i++) {
+            if (Math.abs(gradient[i]) > threshold) {
+                out.putInt(indices + 4 * sent, i);
+                out.putFloat(values + 4 * sent, gradient[i]);
+                gradient[i] = 0.0f;
+                sent++;
+            }
+        }
+        for (int i = 0; i < n && sent < k; i++) {
+            if (Math.abs(gradient[i]) == threshold) {
+                out.putInt(indices + 4 * sent, i);
+                out.putFloat(values + 4 * sent, gradient[i]);
+                gradient[i] = 0.0f;
+                sent++;
+            }
+        }
+        out.position(values + 4 * k);
+    }
+
+    /**
+     * Value that would be at position rank if a[0 .. n) were sorted
+     * ascending (Hoare quickselect, reorders a).
+     */
+    private static float select(float[] a, int n, int rank) {
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            float pivot = a[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    float t = a[i];
+                    a[i] = a[j];
+                    a[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (rank <= j) {
+                hi = j;
+            } else if (rank >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+        return a[rank];
+    }
+}
@@ -0,0 +1,224 @@
+package NeuralNetCPUv;
+
+/**
+ * Inference-only copy of a NeuralNetwork whose weights and biases are
+ * stored as 16-bit values (FP16 or BF16) in short[] arrays.
+ *
+ * Serving large dense layers is limited by memory bandwidth: every
+ * forward pass streams the whole weight matrix. Halving the bytes per
+ * weight roughly halves that traffic. Weights are widened to float32
+ * inside the GEMV kernel (Kernels.axpyHalf) and all sums are kept in
+ * float32, so only the stored parameters lose precision.
+ *
+ * Create one with NeuralNetwork.toHalfPrecision(format) and check the
+ * accuracy impact with compare(...). Forward buffers are reused, so an
+ * instance must not be shared between threads.
+ */
+public class HalfPrecisionNetwork {
+
+    /** Storage format of the parameters (FP16 or BF16) */
+    public final Precision format;
+
+    /** Inputs per layer */
+    public final int[] inputSizes;
+
+    /** Outputs per layer */
+    public final int[] outputSizes;
+
+    /** Row-major (inputSize x outputSize) weights per layer */
+    public final short[][] weights;
+
+    /** Biases per layer */
+    public final short[][] biases;
+
+    /** Activation function per layer */
+    private final Activation[] activations;
+
+    /** Output buffer per layer and the softmax output */
+    private final float[][] outputs;
+    private final float[] probabilities;
+
+    /**
+     * Narrows the parameters of a trained network.
+     *
+     * @param source network to copy (left unchanged)
+     * @param format FP16 or BF16
+     */
+    public HalfPrecisionNetwork(NeuralNetwork source, Precision format) {
+        if (format == Precision.FP32) {
+            throw new IllegalArgumentException("Use the original network for FP32");
+        }
+        int n = source.layers.length;
+        this.format = format;
+        this.inputSizes = new int[n];
+        this.outputSizes = new int[n];
+        this.weights = new short[n][];
+        this.biases = new short[n][];
+        this.activations = new Activation[n];
+        this.outputs = new float[n][];
+
+        for (int l = 0; l < n; l++) {
+            Layer layer = source.layers[l];
+            inputSizes[l] = layer.inputSize;
+            outputSizes[l] = layer.outputSize;
+            outputs[l] = new float[layer.outputSize];
+            activations[l] = layer.activation;
+
+            // Copy row by row so views with any stride are handled
+            short[] w = new short[layer.inputSize * layer.outputSize];
+            for (int i = 0; i < layer.inputSize; i++) {
+                int src = layer.weights.index(i, 0);
+                for (int j = 0; j < layer.outputSize; j++) {
+                    w[i * layer.outputSize + j] = format.encode(layer.weights.data[src + j]);
+                }
+            }
+            weights[l] = w;
+            biases[l] = format.encode(layer.biases, 0, layer.outputSize);
+        }
+        this.probabilities = new float[outputSizes[n - 1]];
+    }
+
+    /**
+     * Forward pass returning class probabilities (softmax output). The
+     * returned array is reused by the next call.
+     */
+    public float[] forward(float[] input) {
+        return forward(input, 0);
+    }
+
+    /**
+     * Forward pass for an input stored at an offset inside a larger array.
+     */
+    public float[] forward(float[] input, int inputOffset) {
+        Kernels kernels = Kernels.get();
+        float[] x = input;
+        int xOff = inputOffset;
+
+        for (int l = 0; l < weights.length; l++) {
+            int in = inputSizes[l];
+            int out = outputSizes[l];
+            short[] w = weights[l];
+
+            // Step 1: z = b (widened)
+            float[] z = outputs[l];
+            for (int j = 0; j < out; j++) {
+                z[j] = format.decode(biases[l][j]);
+            }
+
+            // Step 2: z += W^T x, one widening axpy per weight row
+            for (int i = 0; i < in; i++) {
+                float v = x[xOff + i];
+                if (v != 0.0f) {
+                    kernels.axpyHalf(v, w, i * out, format, z, 0, out);
+                }
+            }
+
+            // Step 3: activation
+            activations[l].apply(z, z, out);
+
+            x = z;
+            xOff = 0;
+        }
+
+        Activations.softmaxInto(x, 0, probabilities, 0, probabilities.length);
+        return probabilities;
+    }
+
+    /**
+     * Classification accuracy on a test dataset.
+     */
+    public float evaluate(TestDataset test) {
+        int correct = 0;
+        for (int i = 0; i < test.numExamples; i++) {
+            float[] pred = forward(test.features.data, test.features.index(i, 0));
+            int label = NeuralNetwork.argMax(test.labels.data, test.labels.index(i, 0), test.labels.cols);
+            if (NeuralNetwork.argMax(pred) == label) {
+                correct++;
+            }
+        }
+        return (float) correct / test.numExamples;
+    }
+
+    /** Bytes used by the stored parameters */
+    public long parameterBytes() {
+        long count = 0;
+        for (int l = 0; l < weights.length; l++) {
+            count += weights[l].length + biases[l].length;
+        }
+        return count * format.bytesPerValue;
+    }
+
+    /** Bytes the same parameters take as float32 */
+    public static long parameterBytes(NeuralNetwork network) {
+        long count = 0;
+        for (Layer layer : network.layers) {
+            count += (long) layer.inputSize * layer.outputSize + layer.outputSize;
+        }
+        return count * Precision.FP32.bytesPerValue;
+    }
+
+    // ============================
+    // Accuracy comparison
+    // ============================
+
+    /**
+     * Side-by-side comparison of a float32 network and its 16-bit copy.
+     */
+    public static class Report {
+        public Precision format;
+        public float fp32Accuracy;
+        public float halfAccuracy;
+        public float predictionAgreement;   // fraction of samples with the same argmax
+        public float maxProbabilityError;   // largest |p_fp32 - p_half| over all outputs
+        public long fp32Bytes;
+        public long halfBytes;
+
+        /** Print the report in a readable format */
+        public void print() {
+            System.out.printf("Precision report (%s):%n", format);
+            System.out.printf("  FP32 accuracy:        %.2f%%%n", fp32Accuracy * 100);
+            System.out.printf("  %s accuracy:        %.2f%%  (delta %+.2f pts)%n",
+                    format, halfAccuracy * 100, (halfAccuracy - fp32Accuracy) * 100);
+            System.out.printf("  Prediction agreement: %.2f%%%n", predictionAgreement * 100);
+            System.out.printf("  Max probability diff: %.6f%n", maxProbabilityError);
+            System.out.printf("  Parameter bytes:      %d -> %d (%.1f%%)%n",
+                    fp32Bytes, halfBytes, 100.0 * halfBytes / fp32Bytes);
+        }
+    }
+
+    /**
+     * Builds a 16-bit copy of the network and compares it with the
+     * original on a test dataset.
+     *
+     * @param network trained float32 network
+     * @param test    dataset used for the comparison
+     * @param format  FP16 or BF16
+     * @return accuracy / agreement / size report
+     */
+    public static Report compare(NeuralNetwork network, TestDataset test, Precision format) {
+        HalfPrecisionNetwork half = new HalfPrecisionNetwork(network, format);
+        Report report = new Report();
+        report.format = format;
+        report.fp32Accuracy = NeuralNetwork.evaluate(test, network);
+        report.halfAccuracy = half.evaluate(test);
+        report.fp32Bytes = parameterBytes(network);
+        report.halfBytes = half.parameterBytes();
+
+        int agree = 0;
+        float maxDiff = 0.0f;
+        for (int i = 0; i < test.numExamples; i++) {
+            int offset = test.features.index(i, 0);
+            float[] p32 = network.predict(test.features.data, offset);
+            float[] p16 = half.forward(test.features.data, offset);
+            if (NeuralNetwork.argMax(p32) == NeuralNetwork.argMax(p16)) {
+                agree++;
+            }
+            for (int j = 0; j < p32.length; j++) {
+                maxDiff = Math.max(maxDiff, Math.abs(p32[j] - p16[j]));
+            }
+        }
+        report.predictionAgreement = test.numExamples == 0 ? 1.0f : (float) agree / test.numExamples;
+        report.maxProbabilityError = maxDiff;
+        return report;
+    }
+}
@@ -0,0 +1,238 @@
+package NeuralNetCPUv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Lock-free asynchronous parallel SGD ("Hogwild!").
+ *
+ * Every epoch the sample order is shuffled and cut into one disjoint chunk
+ * per worker thread. Each worker shuffles its chunk again with its own
+ * random generator, then runs plain SGD steps that write straight into the
+ * shared Layer.weights / biases without any locking. Updates of different
+ * workers can overlap and occasionally overwrite each other; when the
+ * updates are sparse (sparse or wide inputs, where ger skips zero inputs)
+ * collisions are rare and the lost work is negligible.
+ *
+ * Each worker keeps its own activation workspace (z, outputs, gradients
+ * per layer) and never touches the layers' cached forward state, so the
+ * only shared data are the parameters. Worker kernels run single-threaded
+ * (Parallel.setSequentialForCurrentThread), the parallelism comes from the
+ * workers themselves.
+ *
+ * Results are not reproducible run to run even with a fixed seed, since
+ * the interleaving of updates depends on thread timing.
+ */
+public class HogwildTrainer {
+
+    /** Network being trained (its parameters are shared by all workers) */
+    public final NeuralNetwork network;
+
+    /** SGD step size */
+    public final float learningRate;
+
+    /** Number of worker threads */
+    public final int threads;
+
+    /** Random generator for the epoch-level shuffle */
+    private final Random random;
+
+    /** One workspace per worker thread */
+    private final Worker[] workers;
+
+    /** Print one line per epoch */
+    private boolean verbose = true;
+
+    /**
+     * Creates a trainer.
+     *
+     * @param network      network to train
+     * @param learningRate SGD step size
+     * @param threads      number of worker threads (e.g. number of cores)
+     * @param seed         seed of the shuffles; worker i uses seed + i + 1
+     */
+    public HogwildTrainer(NeuralNetwork network, float learningRate, int threads, long seed) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        this.network = network;
+        this.learningRate = learningRate;
+        this.threads = threads;
+        this.random = new Random(seed);
+        this.workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Worker(network.layers, new Random(seed + t + 1));
+        }
+    }
+
+    /**
+     * Creates a trainer with one worker per available processor.
+     */
+    public HogwildTrainer(NeuralNetwork network, float learningRate) {
+        this(network, learningRate, Runtime.getRuntime().availableProcessors(), System.nanoTime());
+    }
+
+    /** Enables or disables the per-epoch log line */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Trains for a number of epochs.
+     *
+     * @param dataset training data (rows are read in place, never reordered)
+     * @param epochs  number of passes over the dataset
+     * @return statistics of every epoch
+     */
+    public EpochStats[] train(TrainDataset dataset, int epochs) {
+        int n = dataset.numExamples;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+
+        EpochStats[] stats = new EpochStats[epochs];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int e = 0; e < epochs; e++) {
+                long start = System.nanoTime();
+
+                // Step 1: global shuffle, then one disjoint chunk per worker
+                RandomUtil.shuffle(order, random);
+                List<Future<Double>> results = new ArrayList<>(threads);
+                for (int t = 0; t < threads; t++) {
+                    int from = (int) ((long) n * t / threads);
+                    int to = (int) ((long) n * (t + 1) / threads);
+                    Worker worker = workers[t];
+                    results.add(pool.submit(() -> worker.run(dataset, order, from, to, learningRate)));
+                }
+
+                // Step 2: wait for all workers and collect the loss
+                double totalLoss = 0.0;
+                for (Future<Double> result : results) {
+                    totalLoss += result.get();
+                }
+
+                EpochStats s = new EpochStats();
+                s.epoch = e + 1;
+                s.loss = (float) (totalLoss / n);
+                s.seconds = (System.nanoTime() - start) / 1e9;
+                s.samplesPerSecond = n / s.seconds;
+                stats[e] = s;
+                if (verbose) {
+                    s.print();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Training interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Training worker failed", ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return stats;
+    }
+
+    // ============================
+    // Worker
+    // ============================
+
+    /**
+     * Private activation workspace of one worker thread.
+     */
+    private static final class Worker {
+        private final Layer[] layers;
+        private final Random random;
+        private final float[][] z;        // pre-activation per layer
+        private final float[][] outputs;  // activation per layer
+        private final float[][] grads;    // gradient w.r.t. each layer's input (layer 0 unused)
+        private final float[] delta;      // softmax - target of the output layer
+        private int[] chunk = new int[0];
+
+        Worker(Layer[] layers, Random random) {
+            this.layers = layers;
+            this.random = random;
+            this.z = new float[layers.length][];
+            this.outputs = new float[layers.length][];
+            this.grads = new float[layers.length][];
+            for (int l = 0; l < layers.length; l++) {
+                z[l] = new float[layers[l].outputSize];
+                outputs[l] = new float[layers[l].outputSize];
+                grads[l] = l > 0 ? new float[layers[l].inputSize] : null;
+            }
+            this.delta = new float[layers[layers.length - 1].outputSize];
+        }
+
+        /**
+         * Trains on order[from .. to) in this worker's own random order.
+         *
+         * @return summed loss of the samples
+         */
+        double run(TrainDataset dataset, int[] order, int from, int to, float learningRate) {
+            Parallel.setSequentialForCurrentThread(true);
+            try {
+                // Private copy of the chunk, shuffled with this worker's generator
+                int count = to - from;
+                if (chunk.length != count) {
+                    chunk = new int[count];
+                }
+                System.arraycopy(order, from, chunk, 0, count);
+                RandomUtil.shuffle(chunk, random);
+
+                double loss = 0.0;
+                for (int i : chunk) {
+                    loss += step(dataset.features.data, dataset.features.index(i, 0),
+                            dataset.labels.data, dataset.labels.index(i, 0), learningRate);
+                }
+                return loss;
+            } finally {
+                Parallel.setSequentialForCurrentThread(false);
+            }
+        }
+
+        /**
+         * One SGD step on one sample, writing directly into the shared parameters.
+         */
+        private float step(float[] input, int inputOffset, float[] target, int targetOffset, float learningRate) {
+            int last = layers.length - 1;
+
+            // Step 1: forward pass into the worker's buffers
+            float[] x = input;
+            int offset = inputOffset;
+            for (int l = 0; l <= last; l++) {
+                layers[l].forwardInto(x, offset, z[l], outputs[l]);
+                x = outputs[l];
+                offset = 0;
+            }
+
+            // Step 2: softmax, loss and delta = p - y
+            Activations.softmaxInto(outputs[last], 0, delta, 0, delta.length);
+            float loss = 0f;
+            for (int j = 0; j < delta.length; j++) {
+                float y = target[targetOffset + j];
+                loss -= y * Math.log(delta[j] + 1e-10f);
+                delta[j] -= y;
+            }
+
+            // Step 3: backward pass, updating the shared weights without locks
+            float[] dZ = delta;
+            for (int l = last; l >= 0; l--) {
+                float[] layerInput = l == 0 ? input : outputs[l - 1];
+                int layerOffset = l == 0 ? inputOffset : 0;
+                layers[l].backwardInto(layerInput, layerOffset, dZ, learningRate, grads[l]);
+
+                if (l > 0) {
+                    layers[l - 1].activation.multiplyDerivative(z[l - 1], grads[l], grads[l].length);
+                    dZ = grads[l];
+                }
+            }
+            return loss;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package NeuralNetCPUv;
+
+/**
+ * Per-caller workspace for running inference on a shared NeuralNetwork.
+ *
+ * NeuralNetwork.forward / predict keep their intermediate results inside
+ * the Layer objects (lastInput, lastZ, lastOutput), so two threads using
+ * the same network would overwrite each other's values. A session instead
+ * owns one output buffer per layer and only reads the layer parameters
+ * through Layer.forwardInto, which touches no layer state.
+ *
+ * Usage:
+ *  - one network instance shared by all threads (parameters are read-only
+ *    while serving; do not train it at the same time),
+ *  - one session per thread or per request handler, reused across calls
+ *    (no allocation per prediction, no locking).
+ *
+ * A session itself is not thread-safe: each concurrent caller, including
+ * each virtual thread, needs its own (sessions are small, one float[] per
+ * layer).
+ */
+public class InferenceSession {
+
+    /** Network the session reads from */
+    public final NeuralNetwork network;
+
+    /** Output of every layer for the current call */
+    private final float[][] layerOutputs;
+
+    /** Softmax of the last layer (returned by predict) */
+    private final float[] probabilities;
+
+    /**
+     * Creates a session with buffers sized for the network's layers.
+     *
+     * @param network shared network (not modified)
+     */
+    public InferenceSession(NeuralNetwork network) {
+        this.network = network;
+        Layer[] layers = network.layers;
+        this.layerOutputs = new float[layers.length][];
+        for (int l = 0; l < layers.length; l++) {
+            layerOutputs[l] = new float[layers[l].outputSize];
+        }
+        this.probabilities = new float[layers[layers.length - 1].outputSize];
+    }
+
+    /**
+     * Class probabilities for an input vector.
+     *
+     * @param input input vector of length inputSize
+     * @return probabilities (owned by the session, overwritten by the next call)
+     */
+    public float[] predict(float[] input) {
+        return predict(input, 0);
+    }
+
+    /**
+     * Class probabilities for an input stored at an offset inside a larger
+     * array (e.g. one row of a dataset's flat feature matrix).
+     *
+     * @param input       array holding the input vector
+     * @param inputOffset index of the first input element
+     * @return probabilities (owned by the session, overwritten by the next call)
+     */
+    public float[] predict(float[] input, int inputOffset) {
+        Layer[] layers = network.layers;
+
+        // Step 1: fused dense layers, each writing into this session's buffer
+        float[] x = input;
+        int offset = inputOffset;
+        for (int l = 0; l < layers.length; l++) {
+            layers[l].forwardInto(x, offset, null, layerOutputs[l]);
+            x = layerOutputs[l];
+            offset = 0;
+        }
+
+        // Step 2: softmax into the session's probability buffer
+        Activations.softmaxInto(x, 0, probabilities, 0, probabilities.length);
+        return probabilities;
+    }
+
+    /**
+     * Copies the probabilities into a caller-owned array.
+     *
+     * @param input       array holding the input vector
+     * @param inputOffset index of the first input element
+     * @param out         destination (length >= number of classes)
+     */
+    public void predictInto(float[] input, int inputOffset, float[] out) {
+        float[] p = predict(input, inputOffset);
+        System.arraycopy(p, 0, out, 0, p.length);
+    }
+
+    /**
+     * Index of the most likely class.
+     *
+     * @param input       array holding the input vector
+     * @param inputOffset index of the first input element
+     * @return predicted class
+     */
+    public int classify(float[] input, int inputOffset) {
+        return NeuralNetwork.argMax(predict(input, inputOffset));
+    }
+
+    /**
+     * Classification accuracy on a test dataset.
+     */
+    public float evaluate(TestDataset test) {
+        int correct = 0;
+        for (int i = 0; i < test.numExamples; i++) {
+            int label = NeuralNetwork.argMax(test.labels.data, test.labels.index(i, 0), test.labels.cols);
+            if (classify(test.features.data, test.features.index(i, 0)) == label) {
+                correct++;
+            }
+        }
+        return (float) correct / test.numExamples;
+    }
+}
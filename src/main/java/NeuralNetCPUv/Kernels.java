@@ -0,0 +1,413 @@
+package NeuralNetCPUv;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * Low-level float kernels shared by Vector, Matrix and Layer.
+ *
+ * Every kernel works on (array, offset, length) triples so it can run on
+ * plain vectors as well as on rows inside a flat Matrix without copying.
+ * A few kernels also accept off-heap MemorySegments (byte offsets,
+ * little-endian floats) for OffHeapMatrix.
+ *
+ * Two backends exist:
+ *  - ScalarKernels: plain Java loops (always available),
+ *  - SimdKernels:   explicit SIMD using the JDK Vector API
+ *                   (needs --add-modules jdk.incubator.vector at runtime).
+ *
+ * The backend is picked once at startup from the system property
+ * "neuralnet.kernels" (auto | scalar | simd, default auto) and can be
+ * switched at any time with use(Backend), e.g. to compare both.
+ */
+public abstract class Kernels {
+
+    /** Available kernel implementations */
+    public enum Backend {
+        /** SIMD when the Vector API is available, scalar otherwise */
+        AUTO,
+        /** Plain Java loops */
+        SCALAR,
+        /** JDK Vector API (jdk.incubator.vector) */
+        SIMD
+    }
+
+    /** System property used to choose the backend at startup */
+    public static final String BACKEND_PROPERTY = "neuralnet.kernels";
+
+    /** Float layout used for all off-heap data (fixed byte order so files are portable) */
+    public static final ValueLayout.OfFloat SEGMENT_FLOAT =
+            ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private static final Kernels SCALAR = new ScalarKernels();
+
+    /** Backend currently used by all callers */
+    private static volatile Kernels active = select(parseBackend(System.getProperty(BACKEND_PROPERTY, "auto")));
+
+    // ============================
+    // Backend selection
+    // ============================
+
+    /**
+     * Returns the active kernel backend.
+     */
+    public static Kernels get() {
+        return active;
+    }
+
+    /**
+     * Forces a backend.
+     *
+     * @param backend requested backend
+     * @throws IllegalStateException if SIMD is requested but the Vector API is unavailable
+     */
+    public static void use(Backend backend) {
+        Kernels k = select(backend);
+        if (backend == Backend.SIMD && !k.isSimd()) {
+            throw new IllegalStateException(
+                    "SIMD kernels unavailable; run with --add-modules jdk.incubator.vector");
+        }
+        active = k;
+    }
+
+    /**
+     * True when the SIMD backend can be loaded in this JVM.
+     */
+    public static boolean simdAvailable() {
+        return loadSimd() != null;
+    }
+
+    private static Kernels select(Backend backend) {
+        if (backend == Backend.SCALAR) {
+            return SCALAR;
+        }
+        Kernels simd = loadSimd();
+        return simd != null ? simd : SCALAR;
+    }
+
+    private static Backend parseBackend(String value) {
+        try {
+            return Backend.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Backend.AUTO;
+        }
+    }
+
+    /**
+     * Loads SimdKernels reflectively so that a missing jdk.incubator.vector
+     * module only disables SIMD instead of breaking class loading.
+     */
+    private static Kernels loadSimd() {
+        try {
+            return (Kernels) Class.forName("NeuralNetCPUv.SimdKernels")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (Throwable t) {
+            simdLoadFailure = t;
+            return null;
+        }
+    }
+
+    /** Why the last attempt to load SimdKernels failed (for the self-check) */
+    private static volatile Throwable simdLoadFailure;
+
+    // ============================
+    // Kernel surface
+    // ============================
+
+    /** Short name of the backend (for logging) */
+    public abstract String name();
+
+    /** True for the Vector API backend */
+    public abstract boolean isSimd();
+
+    /** sum(a[i] * b[i]) */
+    public abstract float dot(float[] a, int aOff, float[] b, int bOff, int n);
+
+    /** sum(a[i] * a[i]) */
+    public abstract float sumOfSquares(float[] a, int aOff, int n);
+
+    /** y[i] += alpha * x[i] */
+    public abstract void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n);
+
+    /** out[i] = a[i] + b[i] */
+    public abstract void add(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n);
+
+    /** out[i] = a[i] - b[i] */
+    public abstract void subtract(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n);
+
+    /** out[i] = a[i] * b[i] */
+    public abstract void multiply(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n);
+
+    /** out[i] = a[i] / b[i] */
+    public abstract void divide(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n);
+
+    /** out[i] = a[i] * scalar */
+    public abstract void scale(float[] a, int aOff, float scalar, float[] out, int outOff, int n);
+
+    /** sum(a[i] * b[i]) where a lives off-heap (aOff in bytes) */
+    public abstract float dot(MemorySegment a, long aOff, float[] b, int bOff, int n);
+
+    /** y[i] += alpha * x[i] where x lives off-heap (xOff in bytes) */
+    public abstract void axpy(float alpha, MemorySegment x, long xOff, float[] y, int yOff, int n);
+
+    /** y[i] += alpha * x[i] where x and y live off-heap (offsets in bytes) */
+    public abstract void axpy(float alpha, MemorySegment x, long xOff, MemorySegment y, long yOff, int n);
+
+    /**
+     * y[i] += alpha * widen(x[i]) where x holds 16-bit values in the given
+     * format (FP16 or BF16). Values are widened to float32 on the fly, so
+     * the accumulation happens in float32.
+     */
+    public void axpyHalf(float alpha, short[] x, int xOff, Precision format, float[] y, int yOff, int n) {
+        if (format == Precision.BF16) {
+            for (int i = 0; i < n; i++) {
+                y[yOff + i] += alpha * Float.intBitsToFloat((x[xOff + i] & 0xFFFF) << 16);
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                y[yOff + i] += alpha * Float.float16ToFloat(x[xOff + i]);
+            }
+        }
+    }
+
+    /**
+     * Integer dot product of two int8 vectors with int32 accumulation.
+     * Each product fits in 16 bits, so n up to 2^17 cannot overflow.
+     */
+    public int dotInt8(byte[] a, int aOff, byte[] b, int bOff, int n) {
+        int sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += a[aOff + i] * b[bOff + i];
+        }
+        return sum;
+    }
+
+    /**
+     * out[i] = FastMath.exp(a[i] + shift), returning the sum of the outputs
+     * (softmax uses shift = -max). a and out may be the same range.
+     */
+    public float expShifted(float[] a, int aOff, float shift, float[] out, int outOff, int n) {
+        float sum = 0.0f;
+        for (int i = 0; i < n; i++) {
+            float e = FastMath.exp(a[aOff + i] + shift);
+            out[outOff + i] = e;
+            sum += e;
+        }
+        return sum;
+    }
+
+    /** out[i] = FastMath.sigmoid(a[i]) */
+    public void sigmoid(float[] a, int aOff, float[] out, int outOff, int n) {
+        for (int i = 0; i < n; i++) {
+            out[outOff + i] = FastMath.sigmoid(a[aOff + i]);
+        }
+    }
+
+    /** out[i] = FastMath.tanh(a[i]) */
+    public void tanh(float[] a, int aOff, float[] out, int outOff, int n) {
+        for (int i = 0; i < n; i++) {
+            out[outOff + i] = FastMath.tanh(a[aOff + i]);
+        }
+    }
+
+    /**
+     * Sparse dot product sum_p values[p] * x[xOff + index[p]] over p in [from, to)
+     * (one CSR row times a dense vector).
+     */
+    public float sparseDot(float[] values, int[] index, int from, int to, float[] x, int xOff) {
+        // Four independent sums, so the loop is not bound by the add latency
+        float s0 = 0.0f, s1 = 0.0f, s2 = 0.0f, s3 = 0.0f;
+        int p = from;
+        for (; p + 4 <= to; p += 4) {
+            s0 += values[p] * x[xOff + index[p]];
+            s1 += values[p + 1] * x[xOff + index[p + 1]];
+            s2 += values[p + 2] * x[xOff + index[p + 2]];
+            s3 += values[p + 3] * x[xOff + index[p + 3]];
+        }
+        for (; p < to; p++) {
+            s0 += values[p] * x[xOff + index[p]];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Sparse matrix-vector product y[i] = sum_p values[p] * x[colIdx[p]] over
+     * the entries rowPtr[i] .. rowPtr[i + 1] of every row (CSR SpMV), one
+     * sparseDot per row. Large products are split over row blocks.
+     */
+    public void spmv(int rows, int[] rowPtr, int[] colIdx, float[] values,
+                     float[] x, int xOff, float[] y, int yOff) {
+        if (Parallel.worthSplitting(rowPtr[rows] - rowPtr[0], Parallel.getGemvThreshold())) {
+            int chunk = Math.max(16, rows / Parallel.targetTasks());
+            Parallel.forRange(0, rows, chunk, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    y[yOff + i] = sparseDot(values, colIdx, rowPtr[i], rowPtr[i + 1], x, xOff);
+                }
+            });
+            return;
+        }
+        for (int i = 0; i < rows; i++) {
+            y[yOff + i] = sparseDot(values, colIdx, rowPtr[i], rowPtr[i + 1], x, xOff);
+        }
+    }
+
+    /**
+     * GEMM micro-kernel: C[0..MR, 0..NR] += Apanel * Bpanel over kc steps,
+     * with Gemm's packed panel layout (Gemm.MR x Gemm.NR tile, C row-major
+     * at cOff with stride ldc).
+     */
+    public void gemmMicroKernel(int kc, float[] a, int aOff, float[] b, int bOff,
+                                float[] c, int cOff, int ldc) {
+        Gemm.microKernel(kc, a, aOff, b, bOff, c, cOff, ldc);
+    }
+
+    /**
+     * Matrix-vector product with the layer convention out = mat^T * vec:
+     * out[j] += sum_i mat[i, j] * vec[i], for a rows x cols matrix stored
+     * row-major at matOff with the given stride.
+     * Implemented as one axpy per row so it streams mat row by row.
+     * Large products are split over column blocks of out on the Parallel pool.
+     */
+    public void gemvTransposed(float[] mat, int matOff, int stride, int rows, int cols,
+                               float[] vec, int vecOff, float[] out, int outOff) {
+        if (Parallel.worthSplitting((long) rows * cols, Parallel.getGemvThreshold())) {
+            int chunk = Math.max(64, cols / Parallel.targetTasks());
+            Parallel.forRange(0, cols, chunk, (from, to) ->
+                    gemvTransposedRange(mat, matOff, stride, rows, from, to, vec, vecOff, out, outOff));
+            return;
+        }
+        gemvTransposedRange(mat, matOff, stride, rows, 0, cols, vec, vecOff, out, outOff);
+    }
+
+    /**
+     * gemvTransposed restricted to output columns [colFrom, colTo).
+     */
+    private void gemvTransposedRange(float[] mat, int matOff, int stride, int rows, int colFrom, int colTo,
+                                     float[] vec, int vecOff, float[] out, int outOff) {
+        int width = colTo - colFrom;
+        for (int i = 0; i < rows; i++) {
+            float v = vec[vecOff + i];
+            if (v != 0.0f) {
+                axpy(v, mat, matOff + i * stride + colFrom, out, outOff + colFrom, width);
+            }
+        }
+    }
+
+    /**
+     * Matrix-vector product out[i] = sum_j mat[i, j] * vec[j]
+     * (one dot product per row).
+     * Large products are split over row blocks on the Parallel pool.
+     */
+    public void gemv(float[] mat, int matOff, int stride, int rows, int cols,
+                     float[] vec, int vecOff, float[] out, int outOff) {
+        if (Parallel.worthSplitting((long) rows * cols, Parallel.getGemvThreshold())) {
+            int chunk = Math.max(16, rows / Parallel.targetTasks());
+            Parallel.forRange(0, rows, chunk, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    out[outOff + i] = dot(mat, matOff + i * stride, vec, vecOff, cols);
+                }
+            });
+            return;
+        }
+        for (int i = 0; i < rows; i++) {
+            out[outOff + i] = dot(mat, matOff + i * stride, vec, vecOff, cols);
+        }
+    }
+
+    /**
+     * Rank-1 update mat[i, j] += alpha * x[i] * y[j] (outer product),
+     * one axpy per row. Large updates are split over row blocks.
+     */
+    public void ger(float alpha, float[] x, int xOff, float[] y, int yOff,
+                    float[] mat, int matOff, int stride, int rows, int cols) {
+        if (Parallel.worthSplitting((long) rows * cols, Parallel.getGemvThreshold())) {
+            int chunk = Math.max(16, rows / Parallel.targetTasks());
+            Parallel.forRange(0, rows, chunk, (from, to) ->
+                    gerRange(alpha, x, xOff, y, yOff, mat, matOff, stride, from, to, cols));
+            return;
+        }
+        gerRange(alpha, x, xOff, y, yOff, mat, matOff, stride, 0, rows, cols);
+    }
+
+    private void gerRange(float alpha, float[] x, int xOff, float[] y, int yOff,
+                          float[] mat, int matOff, int stride, int rowFrom, int rowTo, int cols) {
+        for (int i = rowFrom; i < rowTo; i++) {
+            float s = alpha * x[xOff + i];
+            if (s != 0.0f) {
+                axpy(s, y, yOff, mat, matOff + i * stride, cols);
+            }
+        }
+    }
+
+    // ============================
+    // Self-check
+    // ============================
+
+    /**
+     * Checks that the SIMD backend loads and agrees with the scalar one on
+     * every vector width; exits with status 1 otherwise. Run it once per
+     * width of interest, e.g. with -XX:MaxVectorSize=16 for 128-bit SIMD
+     * (NEON / SSE) on a wider machine.
+     *
+     * Usage: java --add-modules jdk.incubator.vector [-XX:MaxVectorSize=16] NeuralNetCPUv.Kernels
+     */
+    public static void main(String[] args) {
+        Kernels simd = loadSimd();
+        if (simd == null) {
+            System.out.println("SIMD backend failed to load: " + simdLoadFailure);
+            System.exit(1);
+        }
+        System.out.println("Backend: " + simd.name());
+
+        java.util.Random random = new java.util.Random(42);
+        int failures = 0;
+        for (int n = 0; n <= 70; n++) {
+            float[] a = new float[n + 3];
+            float[] b = new float[n + 3];
+            byte[] qa = new byte[n + 3];
+            byte[] qb = new byte[n + 3];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = (float) random.nextGaussian();
+                b[i] = (float) random.nextGaussian();
+                qa[i] = (byte) (random.nextInt(255) - 127);
+                qb[i] = (byte) (random.nextInt(255) - 127);
+            }
+
+            // Offsets of 1 and 2 exercise unaligned starts and the masked tail
+            if (!close(SCALAR.dot(a, 1, b, 2, n), simd.dot(a, 1, b, 2, n))) {
+                failures++;
+                System.out.println("  dot differs at n=" + n);
+            }
+            if (SCALAR.dotInt8(qa, 1, qb, 2, n) != simd.dotInt8(qa, 1, qb, 2, n)) {
+                failures++;
+                System.out.println("  dotInt8 differs at n=" + n);
+            }
+            float[] y1 = b.clone();
+            float[] y2 = b.clone();
+            SCALAR.axpy(0.5f, a, 1, y1, 2, n);
+            simd.axpy(0.5f, a, 1, y2, 2, n);
+            for (Precision format : new Precision[]{Precision.FP16, Precision.BF16}) {
+                short[] h = format.encode(a, 0, a.length);
+                SCALAR.axpyHalf(0.25f, h, 1, format, y1, 2, n);
+                simd.axpyHalf(0.25f, h, 1, format, y2, 2, n);
+            }
+            for (int i = 0; i < y1.length; i++) {
+                if (!close(y1[i], y2[i])) {
+                    failures++;
+                    System.out.println("  axpy / axpyHalf differ at n=" + n);
+                    break;
+                }
+            }
+        }
+        System.out.println(failures == 0 ? "SIMD kernels match the scalar kernels" : failures + " mismatches");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean close(float expected, float actual) {
+        return Math.abs(expected - actual) <= 1e-4f * Math.max(1.0f, Math.abs(expected));
+    }
+}
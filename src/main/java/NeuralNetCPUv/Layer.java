@@ -1,5 +1,6 @@
 package NeuralNetCPUv;
 
+import java.util.Arrays;
 import java.util.Random;
 import java.util.function.Function;
 
@@ -17,14 +18,42 @@ public class Layer {
     public Matrix weights;  // weight matrix of shape (inputSize x outputSize)
     public float[] biases;  // bias vector of length outputSize
 
+    // === Gradients (used with an Optimizer, allocated on first use) ===
+    public Matrix weightGrad;  // dL/dW accumulated since the last optimizer step
+    public float[] biasGrad;   // dL/db accumulated since the last optimizer step
+
     // === Cached values for backpropagation ===
-    public float[] lastInput;   // input passed to this layer
-    public float[] lastZ;       // linear combination (Wx + b) before activation
-    public float[] lastOutput;  // output after applying activation
+    // lastZ / lastOutput are allocated once and overwritten by every forward call.
+    public float[] lastInput;    // input passed to this layer (own copy, or the caller's array)
+    public int lastInputOffset;  // index of the first input element inside lastInput
+    public float[] lastZ;        // linear combination (Wx + b) before activation
+    public float[] lastOutput;   // output after applying activation
+
+    // Reusable copy of the input for callers whose input buffer may change
+    private float[] inputCopy;
+
+    // Gradient w.r.t. the input returned by backwardFromDZ, reused every call
+    private float[] inputGrad;
+
+    /** Output columns handled per block by the fused forward kernel (fits in L1) */
+    static final int FORWARD_BLOCK = 4096;
+
+    // === Cached values for mini-batch backpropagation (one row per sample) ===
+    public Matrix lastBatchInput;   // X, the caller's matrix (not copied)
+    public Matrix lastBatchZ;       // Z = X W + b
+    public Matrix lastBatchOutput;  // A = activation(Z)
+
+    // Batch buffers, grown to the largest batch seen and viewed with rowRange
+    private Matrix batchZ;
+    private Matrix batchOutput;
+    private Matrix batchInputGrad;
 
-    // === Activation function and its derivative ===
-    public Function<Float, Float> activation;
-    public Function<Float, Float> activationDerivative;
+    // === Cached sparse input (set by forwardSparse, cleared by forward) ===
+    public CsrMatrix lastSparseInput;  // CSR matrix the last input row came from
+    public int lastSparseRow;          // row of lastSparseInput used as input
+
+    // === Activation function (value and derivative) ===
+    public Activation activation;
 
     // Random number generator for initialization
     private Random rand = new Random();
@@ -32,22 +61,17 @@ public class Layer {
     /**
      * Constructor for the Layer.
      *
-     * @param inputSize              number of inputs to this layer
-     * @param outputSize             number of neurons (outputs) in this layer
-     * @param activation             activation function (e.g., ReLU, sigmoid, etc.)
-     * @param activationDerivative   derivative of activation function
+     * @param inputSize   number of inputs to this layer
+     * @param outputSize  number of neurons (outputs) in this layer
+     * @param activation  activation function (e.g., Activation.RELU, Activation.SIGMOID)
      */
-    public Layer(int inputSize,
-                 int outputSize,
-                 Function<Float, Float> activation,
-                 Function<Float, Float> activationDerivative) {
+    public Layer(int inputSize, int outputSize, Activation activation) {
 
         this.inputSize = inputSize;
         this.outputSize = outputSize;
 
-        // Save activation functions
+        // Save activation function
         this.activation = activation;
-        this.activationDerivative = activationDerivative;
 
         // Initialize weights as a matrix (inputSize x outputSize)
         this.weights = new Matrix(inputSize, outputSize);
@@ -60,6 +84,29 @@ public class Layer {
         for (int i = 0; i < outputSize; i++) {
             this.biases[i] = 0.0f;
         }
+
+        // Forward buffers, reused by every call
+        this.lastZ = new float[outputSize];
+        this.lastOutput = new float[outputSize];
+        this.inputCopy = new float[inputSize];
+        this.inputGrad = new float[inputSize];
+    }
+
+    /**
+     * Constructor taking boxed activation functions.
+     * Prefer the Activation constructor: these are wrapped with
+     * Activation.of and box every value.
+     *
+     * @param inputSize              number of inputs to this layer
+     * @param outputSize             number of neurons (outputs) in this layer
+     * @param activation             activation function
+     * @param activationDerivative   derivative of activation function (null = 1)
+     */
+    public Layer(int inputSize,
+                 int outputSize,
+                 Function<Float, Float> activation,
+                 Function<Float, Float> activationDerivative) {
+        this(inputSize, outputSize, Activation.of(activation, activationDerivative));
     }
 
     /**
@@ -70,27 +117,106 @@ public class Layer {
      * @return output vector of length outputSize
      */
     public float[] forward(float[] input) {
-        // Store the input for backpropagation
-        this.lastInput = input.clone();
+        return forward(input, 0);
+    }
 
-        // Step 1: Multiply weights and input
-        float[] z = Matrix.multiplyVector(this.weights.data, input);
+    /**
+     * Forward propagation step for an input stored at an offset inside a
+     * larger array (e.g. one row of a dataset's flat feature matrix).
+     * The input is copied, so the caller may reuse its buffer right away.
+     *
+     * @param input       array holding the input vector
+     * @param inputOffset index of the first input element
+     * @return output vector of length outputSize (reused by the next call)
+     */
+    public float[] forward(float[] input, int inputOffset) {
+        return forward(input, inputOffset, false);
+    }
 
-        // Step 2: Add biases to each neuron
-        for (int j = 0; j < outputSize; j++) {
-            z[j] = z[j] + this.biases[j];
+    /**
+     * Forward propagation step used during training.
+     * Stores what backpropagation needs (input, z) and returns the output.
+     *
+     * @param input       array holding the input vector
+     * @param inputOffset index of the first input element
+     * @param inputStable true if the caller guarantees the input values stay
+     *                    unchanged until backward has run (e.g. a dataset row or
+     *                    the previous layer's lastOutput); the input is then
+     *                    referenced instead of copied
+     * @return output vector of length outputSize (reused by the next call)
+     */
+    public float[] forward(float[] input, int inputOffset, boolean inputStable) {
+        // Store the input for backpropagation
+        this.lastSparseInput = null;
+        if (inputStable) {
+            this.lastInput = input;
+            this.lastInputOffset = inputOffset;
+        } else {
+            System.arraycopy(input, inputOffset, this.inputCopy, 0, inputSize);
+            this.lastInput = this.inputCopy;
+            this.lastInputOffset = 0;
         }
 
-        // Store z for backpropagation
-        this.lastZ = z.clone();
+        forwardInto(input, inputOffset, this.lastZ, this.lastOutput);
+        return this.lastOutput;
+    }
 
-        // Step 3: Apply activation function element-wise
-        this.lastOutput = new float[outputSize];
-        for (int j = 0; j < outputSize; j++) {
-            this.lastOutput[j] = this.activation.apply(z[j]);
+    /**
+     * Fused dense kernel: out = activation(W^T x + b), computed in one sweep.
+     *
+     * Output columns are processed in blocks of FORWARD_BLOCK. For each block
+     * the accumulator is seeded with the biases, every weight row adds its
+     * scaled segment, and the activation is applied right away while the
+     * block is still in L1 cache. W is read exactly once and no temporary
+     * arrays are created. Large layers are split over column ranges on the
+     * Parallel pool. This method does not touch the layer's cached state,
+     * so it is safe to call with per-thread buffers.
+     *
+     * @param input       array holding the input vector
+     * @param inputOffset index of the first input element
+     * @param zOut        receives the pre-activation values, or null when not needed
+     *                    (inference)
+     * @param out         receives the activated output (length >= outputSize);
+     *                    must not overlap input
+     */
+    public void forwardInto(float[] input, int inputOffset, float[] zOut, float[] out) {
+        if (Parallel.worthSplitting((long) inputSize * outputSize, Parallel.getGemvThreshold())) {
+            int chunk = Math.max(64, outputSize / Parallel.targetTasks());
+            Parallel.forRange(0, outputSize, chunk, (from, to) ->
+                    forwardColumns(input, inputOffset, zOut, out, from, to));
+            return;
         }
+        forwardColumns(input, inputOffset, zOut, out, 0, outputSize);
+    }
 
-        return this.lastOutput;
+    /**
+     * forwardInto restricted to output columns [colFrom, colTo), one block at a time.
+     */
+    private void forwardColumns(float[] input, int inputOffset, float[] zOut, float[] out,
+                                int colFrom, int colTo) {
+        Kernels kernels = Kernels.get();
+        float[] w = this.weights.data;
+
+        for (int start = colFrom; start < colTo; start += FORWARD_BLOCK) {
+            int width = Math.min(FORWARD_BLOCK, colTo - start);
+
+            // Step 1: seed the accumulator with the biases
+            System.arraycopy(this.biases, start, out, start, width);
+
+            // Step 2: add x[i] * (row i of W) for every input
+            for (int i = 0; i < inputSize; i++) {
+                float v = input[inputOffset + i];
+                if (v != 0.0f) {
+                    kernels.axpy(v, w, this.weights.index(i, start), out, start, width);
+                }
+            }
+
+            // Step 3: keep z if requested, then apply the activation in place
+            if (zOut != null) {
+                System.arraycopy(out, start, zOut, start, width);
+            }
+            this.activation.apply(out, start, out, start, width);
+        }
     }
 
     /**
@@ -99,37 +225,347 @@ public class Layer {
      *
      * @param dZ           gradient of loss w.r.t. this layer’s pre-activation (z)
      * @param learningRate step size for weight updates
-     * @return gradient of loss w.r.t. previous layer’s activations (dA_prev)
+     * @return gradient of loss w.r.t. previous layer’s activations (dA_prev),
+     *         overwritten by the next call
      */
     public float[] backwardFromDZ(float[] dZ, float learningRate) {
-        // Initialize gradient to pass back to previous layer
-        float[] dAprev = new float[inputSize];
-
-        // Step 1: Compute dAprev = W * dZ
-        for (int i = 0; i < inputSize; i++) {
-            float sum = 0.0f;
-            for (int j = 0; j < outputSize; j++) {
-                sum = sum + (this.weights.data[i][j] * dZ[j]);
-            }
-            dAprev[i] = sum;
+        backwardInto(this.lastInput, this.lastInputOffset, dZ, learningRate, this.inputGrad);
+        return this.inputGrad;
+    }
+
+    /**
+     * SGD backward step with the input and the output buffer given by the
+     * caller instead of the layer's cached state (used by workers that
+     * keep their own activations, e.g. HogwildTrainer).
+     *
+     * @param input        input the forward pass used
+     * @param inputOffset  index of the first input element
+     * @param dZ           gradient of loss w.r.t. this layer's pre-activation (z)
+     * @param learningRate step size for weight updates
+     * @param dAprev       receives the gradient w.r.t. the input (length inputSize),
+     *                     or null when it is not needed (first layer)
+     */
+    public void backwardInto(float[] input, int inputOffset, float[] dZ, float learningRate, float[] dAprev) {
+        Kernels kernels = Kernels.get();
+        float[] w = this.weights.data;
+
+        // Step 1: Compute dAprev = W * dZ (one dot product per weight row)
+        if (dAprev != null) {
+            kernels.gemv(w, this.weights.offset, this.weights.stride, inputSize, outputSize,
+                    dZ, 0, dAprev, 0);
         }
 
         // Step 2: Update weights using gradient descent
-        for (int i = 0; i < inputSize; i++) {
-            for (int j = 0; j < outputSize; j++) {
-                float gradient = this.lastInput[i] * dZ[j];
-                this.weights.data[i][j] = this.weights.data[i][j] - (learningRate * gradient);
+        // W -= learningRate * (input outer dZ), one axpy per non-zero input
+        kernels.ger(-learningRate, input, inputOffset, dZ, 0,
+                w, this.weights.offset, this.weights.stride, inputSize, outputSize);
+
+        // Step 3: Update biases
+        kernels.axpy(-learningRate, dZ, 0, this.biases, 0, outputSize);
+    }
+
+    /**
+     * Forward propagation step for a sparse input row.
+     * Only the weight rows of non-zero inputs are touched, so the cost is
+     * nnz(row) * outputSize instead of inputSize * outputSize.
+     *
+     * @param input CSR matrix whose row is the input (cols == inputSize)
+     * @param row   row of input to use
+     * @return output vector of length outputSize
+     */
+    public float[] forwardSparse(CsrMatrix input, int row) {
+        if (input.cols != inputSize) {
+            throw new IllegalArgumentException("Sparse input has " + input.cols
+                    + " columns, layer expects " + inputSize);
+        }
+
+        // Remember where the input came from (the CSR arrays are not copied)
+        this.lastInput = null;
+        this.lastSparseInput = input;
+        this.lastSparseRow = row;
+
+        // Step 1: z = b + sum over non-zeros of value * (weight row of that input)
+        Kernels kernels = Kernels.get();
+        float[] z = this.lastZ;
+        System.arraycopy(this.biases, 0, z, 0, outputSize);
+        for (int p = input.rowPtr[row]; p < input.rowPtr[row + 1]; p++) {
+            kernels.axpy(input.values[p], this.weights.data, this.weights.index(input.colIdx[p], 0),
+                    z, 0, outputSize);
+        }
+
+        // Step 2: Apply activation function element-wise
+        this.activation.apply(z, this.lastOutput, outputSize);
+
+        return this.lastOutput;
+    }
+
+    /**
+     * Backward propagation step after forwardSparse.
+     * The weight gradient lastInput outer dZ is zero on every row whose
+     * input was zero, so only the rows of active inputs are updated.
+     * No gradient is returned: a sparse layer is always the input layer,
+     * and nothing consumes the gradient of the raw features.
+     *
+     * @param dZ           gradient of loss w.r.t. this layer's pre-activation (z)
+     * @param learningRate step size for weight updates
+     */
+    public void backwardSparse(float[] dZ, float learningRate) {
+        CsrMatrix input = this.lastSparseInput;
+        if (input == null) {
+            throw new IllegalStateException("backwardSparse called without a preceding forwardSparse");
+        }
+
+        Kernels kernels = Kernels.get();
+        int row = this.lastSparseRow;
+
+        // Step 1: Update the weight rows of the active inputs
+        for (int p = input.rowPtr[row]; p < input.rowPtr[row + 1]; p++) {
+            kernels.axpy(-learningRate * input.values[p], dZ, 0,
+                    this.weights.data, this.weights.index(input.colIdx[p], 0), outputSize);
+        }
+
+        // Step 2: Update biases
+        kernels.axpy(-learningRate, dZ, 0, this.biases, 0, outputSize);
+    }
+
+    // ============================
+    // Mini-batch propagation
+    // ============================
+
+    /**
+     * Forward propagation for a mini-batch, one sample per row of X.
+     * Computes Z = X W + b with one GEMM, then A = activation(Z).
+     * X must stay unchanged until backwardBatch has run.
+     *
+     * @param X batch of inputs (batchSize x inputSize)
+     * @return activations (batchSize x outputSize), reused by the next call
+     */
+    public Matrix forwardBatch(Matrix X) {
+        if (X.cols != inputSize) {
+            throw new IllegalArgumentException("Batch has " + X.cols
+                    + " columns, layer expects " + inputSize);
+        }
+        int m = X.rows;
+        ensureBatchCapacity(m);
+
+        this.lastBatchInput = X;
+        this.lastBatchZ = batchZ.rowRange(0, m);
+        this.lastBatchOutput = batchOutput.rowRange(0, m);
+        forwardBatchInto(X, this.lastBatchZ, this.lastBatchOutput);
+
+        return this.lastBatchOutput;
+    }
+
+    /**
+     * Stateless batch forward pass into caller-provided buffers: Z = X W + b,
+     * A = activation(Z). The layer's cached batch state is not touched, so
+     * several threads can run it concurrently on the same layer.
+     *
+     * @param X input batch (batchSize x inputSize)
+     * @param Z pre-activation output (batchSize x outputSize)
+     * @param A activation output (batchSize x outputSize)
+     */
+    public void forwardBatchInto(Matrix X, Matrix Z, Matrix A) {
+        int m = X.rows;
+
+        // Step 1: Z = X W
+        Gemm.gemm(false, false, 1.0f, X, this.weights, 0.0f, Z);
+
+        // Step 2: add the biases to every row
+        Kernels kernels = Kernels.get();
+        for (int r = 0; r < m; r++) {
+            kernels.add(Z.data, Z.index(r, 0), this.biases, 0, Z.data, Z.index(r, 0), outputSize);
+        }
+
+        // Step 3: activation, over the whole block when both are contiguous
+        if (Z.isContiguous() && A.isContiguous()) {
+            this.activation.apply(Z.data, Z.offset, A.data, A.offset, m * outputSize);
+        } else {
+            for (int r = 0; r < m; r++) {
+                this.activation.apply(Z.data, Z.index(r, 0), A.data, A.index(r, 0), outputSize);
             }
         }
+    }
 
-        // Step 3: Update biases
-        for (int j = 0; j < outputSize; j++) {
-            this.biases[j] = this.biases[j] - (learningRate * dZ[j]);
+    /**
+     * Backward propagation for the batch of the last forwardBatch call.
+     * The gradients are averaged over the batch and applied in one update:
+     *   W -= (learningRate / m) * X^T dZ
+     *   b -= (learningRate / m) * column sums of dZ
+     *
+     * @param dZ           gradient of loss w.r.t. Z (batchSize x outputSize)
+     * @param learningRate step size for weight updates
+     * @return gradient of loss w.r.t. X (batchSize x inputSize), reused by the next call
+     */
+    public Matrix backwardBatch(Matrix dZ, float learningRate) {
+        return backwardBatch(dZ, learningRate, true);
+    }
+
+    /**
+     * backwardBatch with the option to skip the input gradient
+     * (not needed for the first layer, saves one GEMM).
+     *
+     * @param dZ                gradient of loss w.r.t. Z (batchSize x outputSize)
+     * @param learningRate      step size for weight updates
+     * @param needInputGradient false to skip computing dX
+     * @return dX, or null if needInputGradient is false
+     */
+    public Matrix backwardBatch(Matrix dZ, float learningRate, boolean needInputGradient) {
+        Matrix X = this.lastBatchInput;
+        if (X == null) {
+            throw new IllegalStateException("backwardBatch called without a preceding forwardBatch");
+        }
+        int m = dZ.rows;
+        if (m != X.rows || dZ.cols != outputSize) {
+            throw new IllegalArgumentException("dZ must be " + X.rows + " x " + outputSize);
+        }
+        float scale = learningRate / m;
+
+        // Step 1: dX = dZ W^T (uses W before the update)
+        Matrix dX = null;
+        if (needInputGradient) {
+            dX = batchInputGrad.rowRange(0, m);
+            Gemm.gemm(false, true, 1.0f, dZ, this.weights, 0.0f, dX);
         }
 
-        // Step 4: Return gradient for previous layer
+        // Step 2: W -= (learningRate / m) * X^T dZ, accumulated directly into W
+        Gemm.gemm(true, false, -scale, X, dZ, 1.0f, this.weights);
+
+        // Step 3: b -= (learningRate / m) * sum of the rows of dZ
+        Kernels kernels = Kernels.get();
+        for (int r = 0; r < m; r++) {
+            kernels.axpy(-scale, dZ.data, dZ.index(r, 0), this.biases, 0, outputSize);
+        }
+
+        return dX;
+    }
+
+    /**
+     * Makes the batch buffers hold at least m rows.
+     */
+    private void ensureBatchCapacity(int m) {
+        if (batchZ == null || batchZ.rows < m) {
+            batchZ = new Matrix(m, outputSize);
+            batchOutput = new Matrix(m, outputSize);
+            batchInputGrad = new Matrix(m, inputSize);
+        }
+    }
+
+    // ============================
+    // Gradient accumulation (for an Optimizer)
+    // ============================
+
+    /**
+     * Allocates the gradient buffers if needed (zero-filled).
+     */
+    public void ensureGradients() {
+        if (weightGrad == null) {
+            weightGrad = new Matrix(inputSize, outputSize);
+            biasGrad = new float[outputSize];
+        }
+    }
+
+    /**
+     * Backward step that only accumulates gradients; the parameters are
+     * left for the optimizer:
+     *   weightGrad += lastInput outer dZ,  biasGrad += dZ
+     *
+     * @param dZ gradient of loss w.r.t. this layer's pre-activation (z)
+     * @return gradient of loss w.r.t. previous layer's activations,
+     *         overwritten by the next call
+     */
+    public float[] backwardGradients(float[] dZ) {
+        ensureGradients();
+        Kernels kernels = Kernels.get();
+        float[] dAprev = this.inputGrad;
+
+        // Step 1: dAprev = W * dZ
+        kernels.gemv(this.weights.data, this.weights.offset, this.weights.stride, inputSize, outputSize,
+                dZ, 0, dAprev, 0);
+
+        // Step 2: accumulate the weight and bias gradients
+        kernels.ger(1.0f, this.lastInput, this.lastInputOffset, dZ, 0,
+                this.weightGrad.data, 0, outputSize, inputSize, outputSize);
+        kernels.axpy(1.0f, dZ, 0, this.biasGrad, 0, outputSize);
+
         return dAprev;
     }
-}
 
+    /**
+     * Gradient accumulation after forwardSparse: only the rows of the
+     * active inputs receive a weight gradient.
+     *
+     * @param dZ gradient of loss w.r.t. this layer's pre-activation (z)
+     */
+    public void backwardSparseGradients(float[] dZ) {
+        CsrMatrix input = this.lastSparseInput;
+        if (input == null) {
+            throw new IllegalStateException("backwardSparseGradients called without a preceding forwardSparse");
+        }
+        ensureGradients();
+        Kernels kernels = Kernels.get();
+        int row = this.lastSparseRow;
+
+        for (int p = input.rowPtr[row]; p < input.rowPtr[row + 1]; p++) {
+            kernels.axpy(input.values[p], dZ, 0,
+                    this.weightGrad.data, input.colIdx[p] * outputSize, outputSize);
+        }
+        kernels.axpy(1.0f, dZ, 0, this.biasGrad, 0, outputSize);
+    }
+
+    /**
+     * Batch version of backwardGradients; gradients are averaged over the batch:
+     *   weightGrad += (1 / m) * X^T dZ,  biasGrad += (1 / m) * column sums of dZ
+     *
+     * @param dZ                gradient of loss w.r.t. Z (batchSize x outputSize)
+     * @param needInputGradient false to skip computing dX
+     * @return dX (batchSize x inputSize), or null if needInputGradient is false
+     */
+    public Matrix backwardBatchGradients(Matrix dZ, boolean needInputGradient) {
+        Matrix X = this.lastBatchInput;
+        if (X == null) {
+            throw new IllegalStateException("backwardBatchGradients called without a preceding forwardBatch");
+        }
+        ensureGradients();
+        int m = dZ.rows;
+        Matrix dX = needInputGradient ? batchInputGrad.rowRange(0, m) : null;
+        backwardBatchInto(X, dZ, 1.0f / m, true, this.weightGrad, this.biasGrad, dX);
+        return dX;
+    }
 
+    /**
+     * Stateless batch backward pass into caller-provided gradient buffers:
+     *   dX = dZ W^T
+     *   weightGrad = scale * X^T dZ   (+ weightGrad if accumulate)
+     *   biasGrad   = scale * column sums of dZ   (+ biasGrad if accumulate)
+     * Reads the parameters only, so several threads can run it concurrently
+     * on the same layer with their own buffers.
+     *
+     * @param X          input batch of the forward pass (batchSize x inputSize)
+     * @param dZ         gradient of loss w.r.t. Z (batchSize x outputSize)
+     * @param scale      factor applied to the parameter gradients (e.g. 1 / batchSize)
+     * @param accumulate add to the gradient buffers instead of overwriting them
+     * @param weightGrad weight gradient (inputSize x outputSize)
+     * @param biasGrad   bias gradient (outputSize)
+     * @param dX         gradient w.r.t. X (batchSize x inputSize), or null to skip it
+     */
+    public void backwardBatchInto(Matrix X, Matrix dZ, float scale, boolean accumulate,
+                                  Matrix weightGrad, float[] biasGrad, Matrix dX) {
+        int m = dZ.rows;
+
+        // Step 1: dX = dZ W^T
+        if (dX != null) {
+            Gemm.gemm(false, true, 1.0f, dZ, this.weights, 0.0f, dX);
+        }
+
+        // Step 2: parameter gradients
+        Gemm.gemm(true, false, scale, X, dZ, accumulate ? 1.0f : 0.0f, weightGrad);
+        if (!accumulate) {
+            Arrays.fill(biasGrad, 0, outputSize, 0.0f);
+        }
+        Kernels kernels = Kernels.get();
+        for (int r = 0; r < m; r++) {
+            kernels.axpy(scale, dZ.data, dZ.index(r, 0), biasGrad, 0, outputSize);
+        }
+    }
+}
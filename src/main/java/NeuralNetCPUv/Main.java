@@ -56,7 +56,7 @@ public class Main {
         System.out.printf("Test Accuracy: %.2f%%%n", testAcc * 100);
 
         // === Step 7: Run prediction on a sample input ===
-        float[] sample = train.features.data[0];   // take first training sample
+        float[] sample = train.features.getRow(0); // take first training sample
         float[] prediction = nn.forward(sample);   // forward pass to get probabilities
 
         System.out.print("Prediction for first training sample: ");
@@ -73,9 +73,10 @@ public class Main {
      * @param dataset training dataset
      */
     private static void normalize(TrainDataset dataset) {
+        Matrix f = dataset.features;
         for (int i = 0; i < dataset.numExamples; i++) {
-            for (int j = 0; j < dataset.features.data[0].length; j++) {
-                dataset.features.data[i][j] = dataset.features.data[i][j] / 8.0f;
+            for (int j = 0; j < f.cols; j++) {
+                f.set(i, j, f.get(i, j) / 8.0f);
             }
         }
     }
@@ -86,9 +87,10 @@ public class Main {
      * @param dataset testing dataset
      */
     private static void normalize(TestDataset dataset) {
+        Matrix f = dataset.features;
         for (int i = 0; i < dataset.numExamples; i++) {
-            for (int j = 0; j < dataset.features.data[0].length; j++) {
-                dataset.features.data[i][j] = dataset.features.data[i][j] / 8.0f;
+            for (int j = 0; j < f.cols; j++) {
+                f.set(i, j, f.get(i, j) / 8.0f);
             }
         }
     }
@@ -0,0 +1,743 @@
+package NeuralNetCPUv;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Parallel CSV parser that works on the raw bytes of a memory-mapped file.
+ *
+ * Unlike DataUtils / CsvBatchReader it creates no String per line or field:
+ * delimiters are found by scanning bytes, numbers are parsed straight from
+ * the bytes, and values are written directly into one preallocated
+ * TrainDataset.
+ *
+ * Steps:
+ *  1. Map the file (read-only, off-heap) and split it into line-aligned
+ *     chunks, a few per pool thread.
+ *  2. Count the rows of every chunk in parallel, so every chunk knows the
+ *     first row it owns and the dataset can be allocated at its final size.
+ *  3. Parse the chunks in parallel, each into its own rows.
+ *  4. If invalid rows were skipped, close the gaps between chunks.
+ *
+ * Each task copies its chunk block by block (BLOCK_BYTES) from the mapping
+ * into one reusable byte[] and scans that: byte-at-a-time reads of a shared
+ * MemorySegment are several times slower than reads of a heap array.
+ *
+ * Rows keep their file order. Files must be UTF-8 (or ASCII) with \n or
+ * \r\n line ends; quoted fields may contain the delimiter but not line
+ * breaks. Class names are compared byte for byte after trimming.
+ *
+ * Number parsing: decimals whose digits form a mantissa below 2^53 (exact
+ * as a double) and a power of ten within 10^+-22 are converted with one
+ * correctly rounded double operation, which gives the same float as
+ * Float.parseFloat except when the double lands exactly halfway between
+ * two floats; that case, subnormals and every other form (NaN, Infinity,
+ * hex, longer mantissas) fall back to Float.parseFloat.
+ */
+public class MappedCsvParser {
+
+    /** Chunks smaller than this are not split further */
+    private static final long MIN_CHUNK_BYTES = 1 << 20;
+
+    /** Bytes copied from the mapping at a time */
+    private static final int BLOCK_BYTES = 1 << 20;
+
+    /** Role of a column that is neither a feature nor the label */
+    private static final int IGNORED = -1;
+
+    /** Role of the label column */
+    private static final int LABEL = -2;
+
+    /** Exactly representable powers of ten */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    /** Column layout */
+    public final CsvSchema schema;
+
+    /** Role per column up to schema.lastColumn: feature index, LABEL or IGNORED */
+    private final int[] roles;
+
+    /** Class names as UTF-8 bytes */
+    private final byte[][] classBytes;
+
+    // Statistics of the last parse
+    private long bytesParsed;
+    private long rowsParsed;
+    private long skippedRows;
+    private double seconds;
+
+    public MappedCsvParser(CsvSchema schema) {
+        this.schema = schema;
+        this.roles = new int[schema.lastColumn + 1];
+        Arrays.fill(roles, IGNORED);
+        roles[schema.labelColumn] = LABEL;
+        for (int i = 0; i < schema.featureColumns.length; i++) {
+            int c = schema.featureColumns[i];
+            if (roles[c] != IGNORED) {
+                throw new IllegalArgumentException("Duplicate feature column " + c);
+            }
+            roles[c] = i;
+        }
+        if (schema.classes != null) {
+            classBytes = new byte[schema.classes.length][];
+            for (int k = 0; k < classBytes.length; k++) {
+                classBytes[k] = schema.classes[k].getBytes(StandardCharsets.UTF_8);
+            }
+        } else {
+            classBytes = null;
+        }
+    }
+
+    /**
+     * Parses a whole file with the given schema.
+     */
+    public static TrainDataset load(Path file, CsvSchema schema) throws IOException {
+        return new MappedCsvParser(schema).parse(file);
+    }
+
+    /**
+     * Parses a whole file into a new dataset.
+     *
+     * @param file CSV file
+     * @return dataset with one row per non-blank (valid) line, in file order
+     * @throws IllegalArgumentException for a malformed row, with file:line (unless schema.skipInvalidRows)
+     */
+    public TrainDataset parse(Path file) throws IOException {
+        long startTime = System.nanoTime();
+        try (Arena arena = Arena.ofShared();
+             FileChannel channel = FileChannel.open(file)) {
+            long size = channel.size();
+            MemorySegment seg = size == 0 ? MemorySegment.NULL
+                    : channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+
+            // Step 1: skip BOM and header, then split into line-aligned chunks
+            long dataStart = 0;
+            int headerLines = 0;
+            if (size >= 3 && byteAt(seg, 0) == (byte) 0xEF && byteAt(seg, 1) == (byte) 0xBB
+                    && byteAt(seg, 2) == (byte) 0xBF) {
+                dataStart = 3;
+            }
+            if (schema.hasHeader && dataStart < size) {
+                dataStart = nextLine(seg, dataStart, size);
+                headerLines = 1;
+            }
+            long[] bounds = chunkBounds(seg, dataStart, size);
+            int chunks = bounds.length - 1;
+
+            // Step 2: rows and lines per chunk -> first row and line number of every chunk
+            int[] chunkRows = new int[chunks];
+            long[] chunkLines = new long[chunks];
+            Parallel.forRange(0, chunks, 1, (from, to) -> {
+                for (int c = from; c < to; c++) {
+                    countLines(seg, bounds[c], bounds[c + 1], chunkRows, chunkLines, c);
+                }
+            });
+            int[] firstRow = new int[chunks + 1];
+            long[] firstLine = new long[chunks];
+            long line = headerLines + 1;
+            for (int c = 0; c < chunks; c++) {
+                long rows = (long) firstRow[c] + chunkRows[c];
+                if (rows > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException(file + ": more than " + Integer.MAX_VALUE + " rows");
+                }
+                firstRow[c + 1] = (int) rows;
+                firstLine[c] = line;
+                line += chunkLines[c];
+            }
+
+            // Step 3: parse every chunk into its own rows
+            TrainDataset data = new TrainDataset(firstRow[chunks], schema.inputSize(), schema.outputSize());
+            int[] validRows = new int[chunks];
+            Parallel.forRange(0, chunks, 1, (from, to) -> {
+                for (int c = from; c < to; c++) {
+                    validRows[c] = parseChunk(file, seg, bounds[c], bounds[c + 1],
+                            firstLine[c], data, firstRow[c]);
+                }
+            });
+
+            // Step 4: close the gaps left by skipped rows
+            int total = 0;
+            for (int c = 0; c < chunks; c++) {
+                if (total != firstRow[c] && validRows[c] > 0) {
+                    moveRows(data.features, firstRow[c], total, validRows[c]);
+                    moveRows(data.labels, firstRow[c], total, validRows[c]);
+                }
+                total += validRows[c];
+            }
+            TrainDataset result = data;
+            if (total < data.numExamples) {
+                result = new TrainDataset(total, schema.inputSize(), schema.outputSize());
+                System.arraycopy(data.features.data, 0, result.features.data, 0, total * schema.inputSize());
+                System.arraycopy(data.labels.data, 0, result.labels.data, 0, total * schema.outputSize());
+            }
+
+            bytesParsed = size;
+            rowsParsed = total;
+            skippedRows = firstRow[chunks] - total;
+            seconds = (System.nanoTime() - startTime) / 1e9;
+            return result;
+        }
+    }
+
+    /** Bytes of the last parsed file */
+    public long bytesParsed() {
+        return bytesParsed;
+    }
+
+    /** Rows produced by the last parse */
+    public long rowsParsed() {
+        return rowsParsed;
+    }
+
+    /** Rows skipped as invalid by the last parse (only with CsvSchema.withSkipInvalidRows) */
+    public long skippedRows() {
+        return skippedRows;
+    }
+
+    /** Wall-clock seconds of the last parse */
+    public double seconds() {
+        return seconds;
+    }
+
+    /** Throughput of the last parse in MB/s */
+    public double megabytesPerSecond() {
+        return seconds > 0 ? bytesParsed / 1e6 / seconds : 0.0;
+    }
+
+    // ============================
+    // Chunking
+    // ============================
+
+    /**
+     * Chunk boundaries [bounds[c], bounds[c + 1]), each starting at the
+     * beginning of a line.
+     */
+    private static long[] chunkBounds(MemorySegment seg, long start, long end) {
+        long bytes = end - start;
+        int chunks = (int) Math.max(1, Math.min(Parallel.targetTasks(), bytes / MIN_CHUNK_BYTES));
+        if (!Parallel.worthSplitting(bytes, MIN_CHUNK_BYTES)) {
+            chunks = 1;
+        }
+        long[] bounds = new long[chunks + 1];
+        bounds[0] = start;
+        for (int c = 1; c < chunks; c++) {
+            long p = Math.max(start + bytes * c / chunks, bounds[c - 1]);
+            bounds[c] = p == start ? start : nextLine(seg, p - 1, end);
+        }
+        bounds[chunks] = end;
+        return bounds;
+    }
+
+    /** Position just after the next '\n' at or after p (or end) */
+    private static long nextLine(MemorySegment seg, long p, long end) {
+        while (p < end && byteAt(seg, p) != '\n') {
+            p++;
+        }
+        return Math.min(p + 1, end);
+    }
+
+    private static byte byteAt(MemorySegment seg, long p) {
+        return seg.get(ValueLayout.JAVA_BYTE, p);
+    }
+
+    /**
+     * Counts the lines and the non-blank lines (rows) of [start, end).
+     */
+    private static void countLines(MemorySegment seg, long start, long end,
+                                   int[] chunkRows, long[] chunkLines, int c) {
+        byte[] buf = new byte[(int) Math.max(1, Math.min(BLOCK_BYTES, end - start))];
+        long lines = 0;
+        int rows = 0;
+        boolean content = false;
+        for (long p = start; p < end; ) {
+            int n = (int) Math.min(buf.length, end - p);
+            MemorySegment.copy(seg, ValueLayout.JAVA_BYTE, p, buf, 0, n);
+            p += n;
+            for (int i = 0; i < n; i++) {
+                byte b = buf[i];
+                if (b == '\n') {
+                    lines++;
+                    if (content) {
+                        rows++;
+                    }
+                    content = false;
+                } else if (b > ' ') {
+                    content = true;
+                }
+            }
+        }
+        if (content) {
+            lines++;
+            rows++;
+        }
+        chunkRows[c] = rows;
+        chunkLines[c] = lines;
+    }
+
+    private static void moveRows(Matrix m, int from, int to, int rows) {
+        System.arraycopy(m.data, m.index(from, 0), m.data, m.index(to, 0), rows * m.cols);
+    }
+
+    // ============================
+    // Row parsing
+    // ============================
+
+    /**
+     * Parses the lines of [start, end) into consecutive rows starting at row.
+     *
+     * @return number of valid rows written
+     */
+    private int parseChunk(Path file, MemorySegment seg, long start, long end,
+                           long lineNumber, TrainDataset data, int row) {
+        int first = row;
+        byte[] buf = new byte[(int) Math.max(64, Math.min(BLOCK_BYTES, end - start))];
+        int length = 0;          // valid bytes in buf
+        int pos = 0;             // start of the current line in buf
+        int scan = 0;            // next byte to inspect for '\n'
+        long next = start;       // next byte of the mapping to copy
+
+        while (true) {
+            // Step 1: find the end of the current line, refilling the buffer as needed
+            while (scan < length && buf[scan] != '\n') {
+                scan++;
+            }
+            if (scan == length) {
+                if (next < end) {
+                    int tail = length - pos;
+                    if (tail == buf.length) {
+                        buf = Arrays.copyOf(buf, buf.length * 2); // line longer than the buffer
+                    }
+                    System.arraycopy(buf, pos, buf, 0, tail);
+                    int n = (int) Math.min(buf.length - tail, end - next);
+                    MemorySegment.copy(seg, ValueLayout.JAVA_BYTE, next, buf, tail, n);
+                    next += n;
+                    length = tail + n;
+                    scan = tail;
+                    pos = 0;
+                    continue;
+                }
+                if (pos == length) {
+                    break;
+                }
+            }
+
+            // Step 2: parse the line without its \r
+            int lineEnd = scan;
+            if (lineEnd > pos && buf[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd > pos) {
+                try {
+                    parseRow(buf, pos, lineEnd, data, row);
+                    row++;
+                } catch (IllegalArgumentException ex) {
+                    // Blank lines always fail (there is at least one feature) and are skipped
+                    if (!isBlank(buf, pos, lineEnd) && !schema.skipInvalidRows) {
+                        throw new IllegalArgumentException(file + ":" + lineNumber + ": " + ex.getMessage(), ex);
+                    }
+                }
+            }
+            lineNumber++;
+            pos = ++scan;
+            if (pos > length) {
+                break;
+            }
+        }
+        return row - first;
+    }
+
+    private static boolean isBlank(byte[] buf, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buf[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses one line buf[p, end) into row r.
+     *
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    private void parseRow(byte[] buf, int p, int end, TrainDataset data, int r) {
+        byte delimiter = (byte) schema.delimiter;
+        float[] features = data.features.data;
+        int fOff = data.features.index(r, 0);
+        int lOff = data.labels.index(r, 0);
+
+        for (int column = 0; column < roles.length; column++) {
+            if (p > end) {
+                throw new IllegalArgumentException("expected at least " + roles.length
+                        + " columns, found " + column);
+            }
+
+            // Step 1: plain decimal features are parsed in the same pass that finds the delimiter
+            int role = roles[column];
+            if (role >= 0) {
+                long scanned = scanDecimal(buf, p, end, delimiter);
+                if (scanned >= 0) {
+                    features[fOff + role] = Float.intBitsToFloat((int) scanned);
+                    p = (int) (scanned >>> 32) + 1;
+                    continue;
+                }
+            }
+
+            // Step 2: field bounds [fieldStart, fieldEnd), without quotes
+            while (p < end && buf[p] == ' ') {
+                p++;
+            }
+            int fieldStart;
+            int fieldEnd;
+            boolean escaped = false;
+            if (p < end && buf[p] == '"') {
+                fieldStart = ++p;
+                while (true) {
+                    if (p >= end) {
+                        throw new IllegalArgumentException("unterminated quoted field");
+                    }
+                    if (buf[p] == '"') {
+                        if (p + 1 < end && buf[p + 1] == '"') {
+                            escaped = true;
+                            p += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    p++;
+                }
+                fieldEnd = p++;
+                while (p < end && buf[p] != delimiter) {
+                    p++;
+                }
+            } else {
+                fieldStart = p;
+                while (p < end && buf[p] != delimiter) {
+                    p++;
+                }
+                fieldEnd = p;
+            }
+            p++; // past the delimiter (or past end on the last field)
+
+            // Step 3: store the value according to the column's role
+            if (role >= 0) {
+                features[fOff + role] = parseFloat(buf, fieldStart, fieldEnd, column);
+            } else if (role == LABEL) {
+                if (classBytes == null) {
+                    data.labels.data[lOff] = parseFloat(buf, fieldStart, fieldEnd, column);
+                } else {
+                    int k = classIndex(buf, fieldStart, fieldEnd, escaped);
+                    Arrays.fill(data.labels.data, lOff, lOff + classBytes.length, 0.0f);
+                    data.labels.data[lOff + k] = 1.0f;
+                }
+            }
+        }
+    }
+
+    /** One-hot position of the class name in buf[start, end) */
+    private int classIndex(byte[] buf, int start, int end, boolean escaped) {
+        while (start < end && buf[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buf[end - 1] <= ' ') {
+            end--;
+        }
+        if (!escaped) {
+            for (int k = 0; k < classBytes.length; k++) {
+                if (Arrays.equals(buf, start, end, classBytes[k], 0, classBytes[k].length)) {
+                    return k;
+                }
+            }
+        }
+        String text = text(buf, start, end).replace("\"\"", "\"");
+        int k = schema.classIndex(text);
+        if (k < 0) {
+            throw new IllegalArgumentException("unknown class '" + text + "'");
+        }
+        return k;
+    }
+
+    /**
+     * Fast path for the common field form [-+]digits[.digits] directly
+     * followed by the delimiter or the end of the line.
+     *
+     * @return float bits in the low 32 bits and the position of the
+     *         delimiter (or end) in the high 32 bits, or -1 if the field has
+     *         another form or needs exact rounding by parseFloat
+     */
+    static long scanDecimal(byte[] buf, int p, int end, byte delimiter) {
+        boolean negative = false;
+        if (p < end && (buf[p] == '-' || buf[p] == '+')) {
+            negative = buf[p] == '-';
+            p++;
+        }
+        long mantissa = 0;
+        int start = p;
+        int d;
+        while (p < end && (d = buf[p] - '0') >= 0 && d <= 9) {
+            mantissa = mantissa * 10 + d;
+            p++;
+        }
+        int digits = p - start;
+        int exponent = 0;
+        if (p < end && buf[p] == '.') {
+            int fractionStart = ++p;
+            while (p < end && (d = buf[p] - '0') >= 0 && d <= 9) {
+                mantissa = mantissa * 10 + d;
+                p++;
+            }
+            exponent = fractionStart - p;
+            digits += p - fractionStart;
+        }
+        // The mantissa must be exact as a double (< 2^53) for one rounding step
+        if (digits == 0 || digits > 18 || mantissa >= 1L << 53 || exponent < -22
+                || (p < end && buf[p] != delimiter)) {
+            return -1;
+        }
+        double value = mantissa / POWERS_OF_TEN[-exponent];
+        boolean halfway = (Double.doubleToRawLongBits(value) & 0x1FFFFFFFL) == 0x10000000L;
+        if (halfway || (value < Float.MIN_NORMAL && mantissa != 0)) {
+            return -1;
+        }
+        float f = negative ? (float) -value : (float) value;
+        return ((long) p << 32) | (Float.floatToRawIntBits(f) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Parses the decimal number in buf[start, end) (surrounding whitespace allowed).
+     */
+    static float parseFloat(byte[] buf, int start, int end, int column) {
+        while (start < end && buf[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buf[end - 1] <= ' ') {
+            end--;
+        }
+
+        // Step 1: sign, mantissa digits, decimal exponent
+        int p = start;
+        boolean negative = false;
+        if (p < end && (buf[p] == '-' || buf[p] == '+')) {
+            negative = buf[p] == '-';
+            p++;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean fraction = false;
+        for (; p < end; p++) {
+            int d = buf[p] - '0';
+            if (d >= 0 && d <= 9) {
+                if (mantissa != 0 || d != 0) {
+                    mantissa = mantissa * 10 + d;
+                    significant++;
+                }
+                if (fraction) {
+                    exponent--;
+                }
+                digits++;
+            } else if (buf[p] == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (digits > 0 && p < end && (buf[p] | 0x20) == 'e') {
+            p++;
+            boolean negativeExponent = false;
+            if (p < end && (buf[p] == '-' || buf[p] == '+')) {
+                negativeExponent = buf[p] == '-';
+                p++;
+            }
+            int e = 0;
+            int exponentDigits = 0;
+            for (; p < end; p++) {
+                int d = buf[p] - '0';
+                if (d < 0 || d > 9) {
+                    break;
+                }
+                if (e < 100_000) {
+                    e = e * 10 + d;
+                }
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                digits = 0; // "1e" is malformed
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+
+        // Step 2: fast path, one correctly rounded double operation
+        if (digits > 0 && p == end && significant <= 18 && mantissa < 1L << 53) {
+            if (mantissa == 0) {
+                return negative ? -0.0f : 0.0f;
+            }
+            if (exponent >= -22 && exponent <= 22) {
+                double d = exponent >= 0
+                        ? mantissa * POWERS_OF_TEN[exponent]
+                        : mantissa / POWERS_OF_TEN[-exponent];
+                // A double exactly halfway between two floats may round differently
+                // than the exact decimal; subnormals round at a different bit
+                boolean halfway = (Double.doubleToRawLongBits(d) & 0x1FFFFFFFL) == 0x10000000L;
+                if (!halfway && d >= Float.MIN_NORMAL) {
+                    float f = (float) d;
+                    return negative ? -f : f;
+                }
+            }
+        }
+
+        // Step 3: everything else through the JDK parser
+        String text = text(buf, start, end);
+        try {
+            return Float.parseFloat(text);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("column " + column + ": not a number '" + text + "'");
+        }
+    }
+
+    private static String text(byte[] buf, int start, int end) {
+        return new String(buf, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // ============================
+    // Benchmark
+    // ============================
+
+    /**
+     * Compares the fast paths with Float.parseFloat on decimals of 9 to 19
+     * significant digits just below, at and above the midpoints between
+     * neighbouring floats, where double rounding would go wrong.
+     */
+    static void checkRounding() {
+        Random random = new Random(7);
+        List<String> inputs = new ArrayList<>(List.of("14.975339412689209", "2.95307457447052001"));
+        for (int i = 0; i < 2000; i++) {
+            float f = (float) (Math.pow(10, random.nextInt(8) - 3) * (1 + random.nextFloat()));
+            BigDecimal midpoint = new BigDecimal(f).add(new BigDecimal(Math.nextUp(f))).divide(BigDecimal.valueOf(2));
+            for (int digits = 9; digits <= 19; digits++) {
+                inputs.add(midpoint.round(new MathContext(digits, RoundingMode.DOWN)).toPlainString());
+                inputs.add(midpoint.round(new MathContext(digits, RoundingMode.UP)).toPlainString());
+            }
+            inputs.add(midpoint.toPlainString());
+        }
+
+        int mismatches = 0;
+        for (String input : inputs) {
+            byte[] bytes = input.getBytes(StandardCharsets.US_ASCII);
+            int expected = Float.floatToRawIntBits(Float.parseFloat(input));
+            long scanned = scanDecimal(bytes, 0, bytes.length, (byte) ',');
+            boolean scanOk = scanned == -1 || (int) scanned == expected;
+            boolean parseOk = Float.floatToRawIntBits(parseFloat(bytes, 0, bytes.length, 0)) == expected;
+            if (!scanOk || !parseOk) {
+                if (mismatches++ < 5) {
+                    System.out.println("  Misrounded: " + input);
+                }
+            }
+        }
+        System.out.printf("Rounding check: %d midpoint-adjacent decimals, %d mismatches%n", inputs.size(), mismatches);
+    }
+
+    /**
+     * Writes a synthetic classification file and compares the parse
+     * throughput with the line-based reader (readLine + split + parseFloat).
+     *
+     * Usage: MappedCsvParser [megabytes]
+     */
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        checkRounding();
+        int features = 32;
+        String[] classes = {"alpha", "beta", "gamma", "delta"};
+
+        // Step 1: synthetic data
+        Path file = Files.createTempFile("mapped-csv", ".csv");
+        Random random = new Random(42);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            for (int c = 0; c < features; c++) {
+                line.append('f').append(c).append(',');
+            }
+            out.write(line.append("label\n").toString());
+            long written = 0;
+            while (written < (long) megabytes * 1_000_000) {
+                line.setLength(0);
+                for (int c = 0; c < features; c++) {
+                    line.append(String.format("%.5f", random.nextGaussian())).append(',');
+                }
+                line.append(classes[random.nextInt(classes.length)]).append('\n');
+                out.write(line.toString());
+                written += line.length();
+            }
+        }
+
+        int[] featureColumns = new int[features];
+        for (int c = 0; c < features; c++) {
+            featureColumns[c] = c;
+        }
+        CsvSchema schema = CsvSchema.classification(featureColumns, features, classes);
+        try {
+            // Step 2: line-based baseline (single-threaded)
+            long start = System.nanoTime();
+            long rows = 0;
+            float sum = 0.0f;
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                reader.readLine();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] tokens = line.split(",");
+                    for (int c = 0; c < features; c++) {
+                        sum += Float.parseFloat(tokens[c]);
+                    }
+                    sum += schema.classIndex(tokens[features]);
+                    rows++;
+                }
+            }
+            double baseline = Files.size(file) / 1e6 / ((System.nanoTime() - start) / 1e9);
+
+            // Step 3: mapped parser, single-threaded then on the pool (after a warm-up)
+            MappedCsvParser parser = new MappedCsvParser(schema);
+            parser.parse(file);
+            Parallel.setSequentialForCurrentThread(true);
+            parser.parse(file);
+            double single = parser.megabytesPerSecond();
+            Parallel.setSequentialForCurrentThread(false);
+            TrainDataset data = parser.parse(file);
+            double parallel = parser.megabytesPerSecond();
+
+            System.out.printf("File: %.1f MB, %d rows x %d features (checksum %.1f)%n",
+                    Files.size(file) / 1e6, data.numExamples, features, sum);
+            System.out.printf("  readLine + split:        %8.1f MB/s%n", baseline);
+            System.out.printf("  mapped, 1 thread:        %8.1f MB/s%n", single);
+            System.out.printf("  mapped, %2d pool threads: %8.1f MB/s%n",
+                    Parallel.getPool().getParallelism(), parallel);
+            if (rows != data.numExamples) {
+                System.out.println("  Row count mismatch: " + rows);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package NeuralNetCPUv;
 
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -9,7 +10,12 @@ import java.util.Random;
  * Includes constructors, initialization methods, arithmetic operations,
  * elementwise operations, transposition, and printing.
  *
- * Designed for educational clarity (not optimized for speed).
+ * Storage layout:
+ * All elements live in a single row-major float[] ("data").
+ * Element (i, j) is found at data[offset + i * stride + j].
+ * A matrix that owns its array has offset = 0 and stride = cols;
+ * row and sub-matrix views share the parent's array and only differ
+ * in offset / stride, so slicing never copies any values.
  */
 public class Matrix {
 
@@ -19,8 +25,14 @@ public class Matrix {
     /** Number of columns in the matrix */
     public int cols;
 
-    /** 2D array holding matrix data */
-    public float[][] data;
+    /** Flat row-major array holding matrix data (may be shared with other views) */
+    public float[] data;
+
+    /** Index in data of element (0, 0) */
+    public int offset;
+
+    /** Distance in data between the start of two consecutive rows */
+    public int stride;
 
     /** Random number generator (used for initialization) */
     private static Random rand = new Random();
@@ -38,7 +50,27 @@ public class Matrix {
     public Matrix(int rows, int cols) {
         this.rows = rows;
         this.cols = cols;
-        this.data = new float[rows][cols]; // automatically filled with 0.0f
+        this.data = new float[rows * cols]; // automatically filled with 0.0f
+        this.offset = 0;
+        this.stride = cols;
+    }
+
+    /**
+     * Creates a matrix (or a view) over an existing flat array.
+     * No values are copied.
+     *
+     * @param data   backing array
+     * @param offset index of element (0, 0)
+     * @param rows   number of rows
+     * @param cols   number of columns
+     * @param stride distance between the start of consecutive rows
+     */
+    public Matrix(float[] data, int offset, int rows, int cols, int stride) {
+        this.data = data;
+        this.offset = offset;
+        this.rows = rows;
+        this.cols = cols;
+        this.stride = stride;
     }
 
     /**
@@ -49,6 +81,144 @@ public class Matrix {
         this.rows = 0;
         this.cols = 0;
         this.data = null;
+        this.offset = 0;
+        this.stride = 0;
+    }
+
+    /**
+     * Builds a contiguous matrix from a 2D array (values are copied).
+     *
+     * @param values rectangular 2D array
+     * @return new matrix holding the same values
+     */
+    public static Matrix fromArray(float[][] values) {
+        int rows = values.length;
+        int cols = rows == 0 ? 0 : values[0].length;
+        Matrix m = new Matrix(rows, cols);
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(values[i], 0, m.data, i * cols, cols);
+        }
+        return m;
+    }
+
+    // ============================
+    // Element and view access
+    // ============================
+
+    /** Position of element (i, j) inside data */
+    public int index(int i, int j) {
+        return offset + i * stride + j;
+    }
+
+    /** Read element (i, j) */
+    public float get(int i, int j) {
+        return data[offset + i * stride + j];
+    }
+
+    /** Write element (i, j) */
+    public void set(int i, int j, float value) {
+        data[offset + i * stride + j] = value;
+    }
+
+    /**
+     * True when rows are packed back to back (stride == cols),
+     * so the whole matrix is one unbroken run of rows * cols floats.
+     */
+    public boolean isContiguous() {
+        return stride == cols || rows <= 1;
+    }
+
+    /**
+     * Zero-copy view of a single row as a 1 x cols matrix.
+     *
+     * @param i row index
+     * @return view sharing this matrix's data
+     */
+    public Matrix row(int i) {
+        return new Matrix(data, offset + i * stride, 1, cols, stride);
+    }
+
+    /**
+     * Zero-copy view of a block of consecutive rows (e.g. a mini-batch).
+     *
+     * @param startRow first row of the view
+     * @param numRows  number of rows in the view
+     * @return view sharing this matrix's data
+     */
+    public Matrix rowRange(int startRow, int numRows) {
+        return new Matrix(data, offset + startRow * stride, numRows, cols, stride);
+    }
+
+    /**
+     * Zero-copy view of a rectangular block of this matrix.
+     *
+     * @param startRow first row of the block
+     * @param startCol first column of the block
+     * @param numRows  number of rows in the block
+     * @param numCols  number of columns in the block
+     * @return view sharing this matrix's data
+     */
+    public Matrix subMatrix(int startRow, int startCol, int numRows, int numCols) {
+        return new Matrix(data, offset + startRow * stride + startCol, numRows, numCols, stride);
+    }
+
+    /**
+     * Copies one row into a new array.
+     *
+     * @param i row index
+     * @return copy of row i
+     */
+    public float[] getRow(int i) {
+        float[] out = new float[cols];
+        System.arraycopy(data, offset + i * stride, out, 0, cols);
+        return out;
+    }
+
+    /**
+     * Copies one row into an existing array.
+     *
+     * @param i   row index
+     * @param out destination array (length >= cols)
+     */
+    public void getRow(int i, float[] out) {
+        System.arraycopy(data, offset + i * stride, out, 0, cols);
+    }
+
+    /**
+     * Overwrites one row with the given values.
+     *
+     * @param i      row index
+     * @param values source array (length >= cols)
+     */
+    public void setRow(int i, float[] values) {
+        System.arraycopy(values, 0, data, offset + i * stride, cols);
+    }
+
+    /**
+     * Swaps two rows in place.
+     */
+    public void swapRows(int i, int j) {
+        if (i == j) {
+            return;
+        }
+        int a = offset + i * stride;
+        int b = offset + j * stride;
+        for (int c = 0; c < cols; c++) {
+            float tmp = data[a + c];
+            data[a + c] = data[b + c];
+            data[b + c] = tmp;
+        }
+    }
+
+    /**
+     * Copies the values into a 2D array (mainly for debugging / interop).
+     */
+    public float[][] toArray() {
+        float[][] out = new float[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            getRow(i, out[i]);
+        }
+        return out;
     }
 
     // ============================
@@ -58,48 +228,61 @@ public class Matrix {
     /**
      * Performs standard matrix multiplication: C = A * B
      *
+     * Delegates to the cache-blocked kernel in Gemm.
+     *
      * @param A left-hand side matrix
      * @param B right-hand side matrix
      * @return result matrix (rows(A) x cols(B))
      */
-    public static float[][] multiply(float[][] A, float[][] B) {
-        int rows = A.length;        // rows of A
-        int cols = B[0].length;     // cols of B
-        int inner = B.length;       // shared dimension
-
-        float[][] result = new float[rows][cols];
+    public static Matrix multiply(Matrix A, Matrix B) {
+        return Gemm.multiply(A, B);
+    }
 
-        // Triple nested loop for standard matrix multiplication
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                for (int k = 0; k < inner; k++) {
-                    result[i][j] += A[i][k] * B[k][j];
-                }
-            }
-        }
+    /**
+     * Computes C = A^T * B without building A^T.
+     *
+     * @param A left-hand side matrix (used transposed)
+     * @param B right-hand side matrix
+     * @return result matrix (cols(A) x cols(B))
+     */
+    public static Matrix multiplyTransA(Matrix A, Matrix B) {
+        return Gemm.multiplyTransA(A, B);
+    }
 
-        return result;
+    /**
+     * Computes C = A * B^T without building B^T.
+     *
+     * @param A left-hand side matrix
+     * @param B right-hand side matrix (used transposed)
+     * @return result matrix (rows(A) x rows(B))
+     */
+    public static Matrix multiplyTransB(Matrix A, Matrix B) {
+        return Gemm.multiplyTransB(A, B);
     }
 
     /**
      * Multiplies a matrix with a vector: out = mat^T * vec
      *
-     * @param mat 2D array (matrix)
-     * @param vec 1D array (vector)
-     * @return resulting vector
+     * @param mat matrix (rows x cols)
+     * @param vec vector of length rows
+     * @return resulting vector of length cols
      */
-    public static float[] multiplyVector(float[][] mat, float[] vec) {
-        int rows = mat.length;
-        int cols = mat[0].length;
-
-        float[] out = new float[cols];
+    public static float[] multiplyVector(Matrix mat, float[] vec) {
+        return multiplyVector(mat, vec, 0);
+    }
 
-        // Compute weighted sum for each column
-        for (int j = 0; j < cols; j++) {
-            for (int i = 0; i < rows; i++) {
-                out[j] += mat[i][j] * vec[i];
-            }
-        }
+    /**
+     * Multiplies a matrix with a vector stored at an offset inside a larger
+     * array (e.g. one row of a dataset matrix): out = mat^T * vec[vecOffset ..]
+     *
+     * @param mat       matrix (rows x cols)
+     * @param vec       array holding the vector
+     * @param vecOffset index of the first vector element
+     * @return resulting vector of length cols
+     */
+    public static float[] multiplyVector(Matrix mat, float[] vec, int vecOffset) {
+        float[] out = new float[mat.cols];
+        gemvInto(mat, vec, vecOffset, out, 0);
         return out;
     }
 
@@ -109,84 +292,181 @@ public class Matrix {
      * @param mat input matrix
      * @return transposed matrix
      */
-    public static float[][] transpose(float[][] mat) {
-        int rows = mat.length;
-        int cols = mat[0].length;
+    public static Matrix transpose(Matrix mat) {
+        Matrix transposed = new Matrix(mat.cols, mat.rows);
+        transposeInto(mat, transposed);
+        return transposed;
+    }
 
-        float[][] transposed = new float[cols][rows];
+    /**
+     * Element-wise addition of two matrices.
+     */
+    public static Matrix add(Matrix A, Matrix B) {
+        Matrix out = new Matrix(A.rows, A.cols);
+        addInto(A, B, out);
+        return out;
+    }
+
+    /**
+     * Element-wise subtraction of two matrices.
+     */
+    public static Matrix subtract(Matrix A, Matrix B) {
+        Matrix out = new Matrix(A.rows, A.cols);
+        subtractInto(A, B, out);
+        return out;
+    }
+
+    /**
+     * Element-wise multiplication of two matrices (Hadamard product).
+     */
+    public static Matrix multiplyElem(Matrix A, Matrix B) {
+        Matrix out = new Matrix(A.rows, A.cols);
+        multiplyElemInto(A, B, out);
+        return out;
+    }
 
+    /**
+     * Multiplies all elements of a matrix by a scalar.
+     */
+    public static Matrix multiplyScalar(Matrix A, float scalar) {
+        Matrix out = new Matrix(A.rows, A.cols);
+        multiplyScalarInto(A, scalar, out);
+        return out;
+    }
+
+    // ============================
+    // Destination ("Into") and in-place operations
+    //
+    // These never allocate; the allocating operations above are thin
+    // wrappers around them. "out" must already have the result shape and
+    // may be a view (any offset / stride).
+    //
+    // Aliasing rules:
+    //  - Elementwise ops (addInto, subtractInto, multiplyElemInto,
+    //    multiplyScalarInto, axpy, copyInto) allow out to be exactly the
+    //    same matrix/view as an input, which makes them in-place.
+    //  - multiplyInto, transposeInto and gemvInto read inputs after
+    //    writing outputs, so out must not share storage with any input.
+    // ============================
+
+    /**
+     * C = A * B. C must not share storage with A or B.
+     */
+    public static void multiplyInto(Matrix A, Matrix B, Matrix C) {
+        Gemm.gemm(false, false, 1.0f, A, B, 0.0f, C);
+    }
+
+    /**
+     * out = mat^T * vec[vecOffset ..], written to out[outOffset .. outOffset + cols).
+     * out must not overlap vec.
+     *
+     * @param mat       matrix (rows x cols)
+     * @param vec       array holding the input vector (length rows from vecOffset)
+     * @param vecOffset index of the first input element
+     * @param out       array receiving the result (length cols from outOffset)
+     * @param outOffset index of the first output element
+     */
+    public static void gemvInto(Matrix mat, float[] vec, int vecOffset, float[] out, int outOffset) {
+        // Clear the destination, then accumulate row i of mat scaled by vec[i]
+        Arrays.fill(out, outOffset, outOffset + mat.cols, 0.0f);
+        Kernels.get().gemvTransposed(mat.data, mat.offset, mat.stride, mat.rows, mat.cols,
+                vec, vecOffset, out, outOffset);
+    }
+
+    /**
+     * out = mat^T * vec. out must not alias vec.
+     */
+    public static void gemvInto(Matrix mat, float[] vec, float[] out) {
+        gemvInto(mat, vec, 0, out, 0);
+    }
+
+    /**
+     * out = mat^T. out must be cols x rows and must not share storage with mat.
+     */
+    public static void transposeInto(Matrix mat, Matrix out) {
         // Swap rows and columns
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                transposed[j][i] = mat[i][j];
+        for (int i = 0; i < mat.rows; i++) {
+            int base = mat.index(i, 0);
+            for (int j = 0; j < mat.cols; j++) {
+                out.data[out.index(j, i)] = mat.data[base + j];
             }
         }
-
-        return transposed;
     }
 
     /**
-     * Element-wise addition of two matrices.
+     * out = A + B. out may alias A or B.
      */
-    public static float[][] add(float[][] A, float[][] B) {
-        int rows = A.length;
-        int cols = A[0].length;
-        float[][] out = new float[rows][cols];
+    public static void addInto(Matrix A, Matrix B, Matrix out) {
+        Kernels kernels = Kernels.get();
+        for (int i = 0; i < A.rows; i++) {
+            kernels.add(A.data, A.index(i, 0), B.data, B.index(i, 0), out.data, out.index(i, 0), A.cols);
+        }
+    }
 
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                out[i][j] = A[i][j] + B[i][j];
-            }
+    /**
+     * out = A - B. out may alias A or B.
+     */
+    public static void subtractInto(Matrix A, Matrix B, Matrix out) {
+        Kernels kernels = Kernels.get();
+        for (int i = 0; i < A.rows; i++) {
+            kernels.subtract(A.data, A.index(i, 0), B.data, B.index(i, 0), out.data, out.index(i, 0), A.cols);
         }
-        return out;
     }
 
     /**
-     * Element-wise subtraction of two matrices.
+     * out = A * B (elementwise). out may alias A or B.
      */
-    public static float[][] subtract(float[][] A, float[][] B) {
-        int rows = A.length;
-        int cols = A[0].length;
-        float[][] out = new float[rows][cols];
+    public static void multiplyElemInto(Matrix A, Matrix B, Matrix out) {
+        Kernels kernels = Kernels.get();
+        for (int i = 0; i < A.rows; i++) {
+            kernels.multiply(A.data, A.index(i, 0), B.data, B.index(i, 0), out.data, out.index(i, 0), A.cols);
+        }
+    }
 
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                out[i][j] = A[i][j] - B[i][j];
-            }
+    /**
+     * out = A * scalar. out may alias A.
+     */
+    public static void multiplyScalarInto(Matrix A, float scalar, Matrix out) {
+        Kernels kernels = Kernels.get();
+        for (int i = 0; i < A.rows; i++) {
+            kernels.scale(A.data, A.index(i, 0), scalar, out.data, out.index(i, 0), A.cols);
         }
-        return out;
     }
 
     /**
-     * Element-wise multiplication of two matrices (Hadamard product).
+     * A = A * scalar.
      */
-    public static float[][] multiplyElem(float[][] A, float[][] B) {
-        int rows = A.length;
-        int cols = A[0].length;
-        float[][] out = new float[rows][cols];
+    public static void scaleInPlace(Matrix A, float scalar) {
+        multiplyScalarInto(A, scalar, A);
+    }
 
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                out[i][j] = A[i][j] * B[i][j];
-            }
+    /**
+     * Y = Y + alpha * X (BLAS axpy on every row).
+     */
+    public static void axpy(float alpha, Matrix X, Matrix Y) {
+        Kernels kernels = Kernels.get();
+        for (int i = 0; i < X.rows; i++) {
+            kernels.axpy(alpha, X.data, X.index(i, 0), Y.data, Y.index(i, 0), X.cols);
         }
-        return out;
     }
 
     /**
-     * Multiplies all elements of a matrix by a scalar.
+     * out = A (values copied row by row; out keeps its own layout).
      */
-    public static float[][] multiplyScalar(float[][] A, float scalar) {
-        int rows = A.length;
-        int cols = A[0].length;
-        float[][] out = new float[rows][cols];
+    public static void copyInto(Matrix A, Matrix out) {
+        for (int i = 0; i < A.rows; i++) {
+            System.arraycopy(A.data, A.index(i, 0), out.data, out.index(i, 0), A.cols);
+        }
+    }
 
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                out[i][j] = A[i][j] * scalar;
-            }
+    /**
+     * Row i of out = row order[from + i] of A, for i < count (gathers a
+     * mini-batch in sampler order; A is only read).
+     */
+    public static void gatherRowsInto(Matrix A, int[] order, int from, int count, Matrix out) {
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(A.data, A.index(order[from + i], 0), out.data, out.index(i, 0), A.cols);
         }
-        return out;
     }
 
     // ============================
@@ -195,18 +475,20 @@ public class Matrix {
 
     /** Fill with zeros */
     public void zeros() {
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                data[i][j] = 0.0f;
-            }
-        }
+        fill(0.0f);
     }
 
     /** Fill with ones */
     public void ones() {
+        fill(1.0f);
+    }
+
+    /** Fill every element with the same value */
+    public void fill(float value) {
         for (int i = 0; i < rows; i++) {
+            int base = offset + i * stride;
             for (int j = 0; j < cols; j++) {
-                data[i][j] = 1.0f;
+                data[base + j] = value;
             }
         }
     }
@@ -214,8 +496,9 @@ public class Matrix {
     /** Fill with random values between -1 and +1 */
     public void randomizeUniform() {
         for (int i = 0; i < rows; i++) {
+            int base = offset + i * stride;
             for (int j = 0; j < cols; j++) {
-                data[i][j] = rand.nextFloat() * 2f - 1f; // range [-1, 1]
+                data[base + j] = rand.nextFloat() * 2f - 1f; // range [-1, 1]
             }
         }
     }
@@ -223,8 +506,9 @@ public class Matrix {
     /** Fill with normally distributed random values (mean=0, std=1) */
     public void randomizeNormal() {
         for (int i = 0; i < rows; i++) {
+            int base = offset + i * stride;
             for (int j = 0; j < cols; j++) {
-                data[i][j] = (float) rand.nextGaussian();
+                data[base + j] = (float) rand.nextGaussian();
             }
         }
     }
@@ -233,23 +517,19 @@ public class Matrix {
     // Utility methods
     // ============================
 
-    /** Deep copy of a matrix */
-    public static float[][] copy(float[][] A) {
-        int rows = A.length;
-        int cols = A[0].length;
-        float[][] out = new float[rows][cols];
-
-        for (int i = 0; i < rows; i++) {
-            System.arraycopy(A[i], 0, out[i], 0, cols);
-        }
+    /** Deep copy of a matrix (the copy is always contiguous) */
+    public static Matrix copy(Matrix A) {
+        Matrix out = new Matrix(A.rows, A.cols);
+        copyInto(A, out);
         return out;
     }
 
     /** Apply a function to each element of the matrix */
     public void applyFunction(Function func) {
         for (int i = 0; i < rows; i++) {
+            int base = offset + i * stride;
             for (int j = 0; j < cols; j++) {
-                data[i][j] = func.apply(data[i][j]);
+                data[base + j] = func.apply(data[base + j]);
             }
         }
     }
@@ -263,7 +543,7 @@ public class Matrix {
     public void print() {
         for (int i = 0; i < rows; i++) {
             for (int j = 0; j < cols; j++) {
-                System.out.printf("%8.4f ", data[i][j]);
+                System.out.printf("%8.4f ", get(i, j));
             }
             System.out.println();
         }
@@ -273,14 +553,13 @@ public class Matrix {
      * Multiply this matrix with a vector: out = this^T * vec
      */
     public float[] multiplyVec(float[] vec) {
-        float[] out = new float[cols];
-        for (int j = 0; j < cols; j++) {
-            for (int i = 0; i < rows; i++) {
-                out[j] += data[i][j] * vec[i];
-            }
-        }
-        return out;
+        return multiplyVector(this, vec, 0);
     }
-}
-
 
+    /**
+     * Multiply this matrix with a vector into an existing array: out = this^T * vec
+     */
+    public void multiplyVecInto(float[] vec, float[] out) {
+        gemvInto(this, vec, 0, out, 0);
+    }
+}
@@ -1,13 +1,23 @@
 package NeuralNetCPUv;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Random;
-import java.util.function.Function;
 
 public class NeuralNetwork {
 
     public Layer[] layers;
     private float learningRate;
 
+    // Softmax output of forwardBatch, grown to the largest batch seen
+    private Matrix batchProbs;
+
+    // Output gradient (softmax - target) of trainStep, reused every step
+    private float[] outputDelta;
+
+    // Update rule; null = built-in plain SGD applied during backprop
+    private Optimizer optimizer;
+
     public NeuralNetwork(int inputSize, int[] hiddenSizes, int outputSize, float learningRate) {
         this.learningRate = learningRate;
         int totalLayers = hiddenSizes.length + 1; // hidden + output
@@ -16,100 +26,437 @@ public class NeuralNetwork {
         int prevSize = inputSize;
         for (int i = 0; i < hiddenSizes.length; i++) {
             // ReLU hidden layers
-            layers[i] = new Layer(prevSize, hiddenSizes[i],
-                    x -> Math.max(0f, x),
-                    z -> z > 0f ? 1f : 0f);
+            layers[i] = new Layer(prevSize, hiddenSizes[i], Activation.RELU);
             prevSize = hiddenSizes[i];
         }
 
-        layers[totalLayers - 1] = new Layer(prevSize, outputSize,
-                x -> x,
-                null);
+        // Linear output layer (softmax is applied by forward)
+        layers[totalLayers - 1] = new Layer(prevSize, outputSize, Activation.LINEAR);
+        outputDelta = new float[outputSize];
     }
 
     public float[] forward(float[] input) {
-        float[] output = input;
+        return forward(input, 0);
+    }
+
+    public float[] forward(float[] input, int inputOffset) {
+        // Inputs are stable until backprop: the dataset row is not modified
+        // during a step, and each layer's output buffer is only rewritten by
+        // that layer's next forward call.
+        float[] output = layers[0].forward(input, inputOffset, true);
+        for (int l = 1; l < layers.length; l++) {
+            output = layers[l].forward(output, 0, true);
+        }
+
+        return Activations.softmax(output);
+    }
+
+    public float[] predict(float[] input) {
+        return predict(input, 0);
+    }
+
+    public float[] predict(float[] input, int inputOffset) {
+        // Inference only: no input reference or pre-activation is kept.
+        // Uses the layers' output buffers, so it is single-threaded; for
+        // concurrent callers use one InferenceSession each (newSession()).
+        float[] x = input;
+        int offset = inputOffset;
         for (Layer layer : layers) {
-            output = layer.forward(output);
+            layer.forwardInto(x, offset, null, layer.lastOutput);
+            x = layer.lastOutput;
+            offset = 0;
+        }
+
+        return Activations.softmax(x);
+    }
+
+    public float[] forwardSparse(CsrMatrix input, int row) {
+        float[] output = layers[0].forwardSparse(input, row);
+        for (int l = 1; l < layers.length; l++) {
+            output = layers[l].forward(output);
         }
 
         return Activations.softmax(output);
     }
 
     public void train(TrainDataset dataset, int epochs) {
+        train(dataset, epochs, 1, Sampler.random(dataset.numExamples));
+    }
+
+    public Matrix forwardBatch(Matrix X) {
+        Matrix output = layers[0].forwardBatch(X);
+        for (int l = 1; l < layers.length; l++) {
+            output = layers[l].forwardBatch(output);
+        }
+
+        int m = X.rows;
+        int classes = output.cols;
+        if (batchProbs == null || batchProbs.rows < m || batchProbs.cols != classes) {
+            batchProbs = new Matrix(m, classes);
+        }
+        Matrix probs = batchProbs.rowRange(0, m);
+        for (int r = 0; r < m; r++) {
+            Activations.softmaxInto(output.data, output.index(r, 0), probs.data, probs.index(r, 0), classes);
+        }
+        return probs;
+    }
+
+    public void train(TrainDataset dataset, int epochs, int batchSize) {
+        train(dataset, epochs, batchSize, Sampler.random(dataset.numExamples));
+    }
+
+    /**
+     * Training in the order produced by a sampler. The dataset is never
+     * reordered: single samples are read in place by offset, and mini-batch
+     * rows are gathered into reused batch buffers.
+     *
+     * @param batchSize samples per step (1 or less: per-sample SGD)
+     * @param sampler   row order of every epoch
+     */
+    public void train(TrainDataset dataset, int epochs, int batchSize, Sampler sampler) {
+        Matrix features = dataset.features;
+        Matrix labels = dataset.labels;
+        int n = sampler.size();
+        Matrix X = null;
+        Matrix Y = null;
+        if (batchSize > 1) {
+            int rows = Math.max(1, Math.min(batchSize, n));
+            X = new Matrix(rows, features.cols);
+            Y = new Matrix(rows, labels.cols);
+        }
+
+        for (int e = 0; e < epochs; e++) {
+            int[] order = sampler.nextEpoch();
+            float totalLoss = 0f;
+
+            if (batchSize <= 1) {
+                for (int i : order) {
+                    totalLoss += trainStep(features.data, features.index(i, 0), labels.data, labels.index(i, 0));
+                }
+            } else {
+                for (int start = 0; start < n; start += batchSize) {
+                    int m = Math.min(batchSize, n - start);
+                    Matrix.gatherRowsInto(features, order, start, m, X);
+                    Matrix.gatherRowsInto(labels, order, start, m, Y);
+                    totalLoss += trainBatch(X.rowRange(0, m), Y.rowRange(0, m));
+                }
+            }
+
+            if ((e + 1) % 10 == 0)
+                System.out.printf("Epoch %d: Loss = %.4f%n", e + 1, totalLoss / Math.max(n, 1));
+        }
+    }
+
+    /**
+     * Mini-batch training on batches prepared by a DataLoader's background
+     * workers, so gathering and preprocessing overlap with compute. Runs
+     * until the loader is exhausted; the caller closes it.
+     */
+    public void train(DataLoader loader) {
+        float totalLoss = 0f;
+        int rows = 0;
+        while (loader.hasNext()) {
+            DataLoader.Batch batch = loader.next();
+            totalLoss += trainBatch(batch.features, batch.labels);
+            rows += batch.rows;
+
+            if (batch.lastOfEpoch) {
+                if ((batch.epoch + 1) % 10 == 0)
+                    System.out.printf("Epoch %d: Loss = %.4f%n", batch.epoch + 1, totalLoss / rows);
+                totalLoss = 0f;
+                rows = 0;
+            }
+        }
+    }
+
+    /**
+     * Mini-batch training streamed from a CSV file, so the dataset never has
+     * to fit in memory. Rows are used in file order (no shuffling).
+     * The network trains with softmax cross-entropy, so the schema must be a
+     * classification schema.
+     */
+    public void train(Path csv, CsvSchema schema, int epochs, int batchSize) throws IOException {
+        if (schema.isNumericTarget()) {
+            throw new IllegalArgumentException("Numeric (regression) targets are not supported; "
+                    + "the network trains with softmax cross-entropy");
+        }
+        if (schema.inputSize() != layers[0].inputSize || schema.outputSize() != layers[layers.length - 1].outputSize) {
+            throw new IllegalArgumentException("Schema does not match the network");
+        }
         for (int e = 0; e < epochs; e++) {
-            RandomUtil.shuffle(dataset.features.data, dataset.labels.data);
             float totalLoss = 0f;
+            long rows;
+            try (CsvBatchReader reader = new CsvBatchReader(csv, schema, batchSize)) {
+                while (reader.hasNext()) {
+                    TrainDataset batch = reader.next();
+                    totalLoss += trainBatch(batch.features, batch.labels);
+                }
+                rows = reader.rowsRead();
+            }
 
-            for (int i = 0; i < dataset.numExamples; i++) {
-                float[] input = dataset.features.data[i];
-                float[] target = dataset.labels.data[i];
+            if ((e + 1) % 10 == 0)
+                System.out.printf("Epoch %d: Loss = %.4f%n", e + 1, totalLoss / Math.max(rows, 1));
+        }
+    }
 
-                float[] output = forward(input);
-                totalLoss += crossEntropyLoss(output, target);
-                trainSample(input, target);
+    /**
+     * Mini-batch training on a memory-mapped dataset. Each shuffled batch is
+     * copied straight from the mapping into a reused batch buffer.
+     */
+    public void train(BinaryDataset dataset, int epochs, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        if (dataset.inputSize != layers[0].inputSize || dataset.outputSize != layers[layers.length - 1].outputSize) {
+            throw new IllegalArgumentException("Dataset does not match the network");
+        }
+        int n = dataset.numExamples;
+        Sampler sampler = Sampler.random(n);
+        int rows = Math.max(1, Math.min(batchSize, n));
+        Matrix X = new Matrix(rows, dataset.inputSize);
+        Matrix Y = new Matrix(rows, dataset.outputSize);
+
+        for (int e = 0; e < epochs; e++) {
+            int[] order = sampler.nextEpoch();
+            float totalLoss = 0f;
+
+            for (int start = 0; start < n; start += batchSize) {
+                int m = Math.min(batchSize, n - start);
+                dataset.copyRows(order, start, m, X, Y);
+                totalLoss += trainBatch(X.rowRange(0, m), Y.rowRange(0, m));
             }
 
             if ((e + 1) % 10 == 0)
-                System.out.printf("Epoch %d: Loss = %.4f%n", e + 1, totalLoss / dataset.numExamples);
+                System.out.printf("Epoch %d: Loss = %.4f%n", e + 1, totalLoss / Math.max(n, 1));
         }
     }
 
+    /**
+     * One averaged gradient step on a mini-batch.
+     *
+     * @return summed cross-entropy loss over the batch (before the update)
+     */
+    public float trainBatch(Matrix X, Matrix Y) {
+        Matrix delta = forwardBatch(X);
+
+        // Loss, then delta = softmax - target in place
+        float loss = 0f;
+        for (int r = 0; r < delta.rows; r++) {
+            int p = delta.index(r, 0);
+            int t = Y.index(r, 0);
+            for (int j = 0; j < delta.cols; j++) {
+                float target = Y.data[t + j];
+                loss -= target * Math.log(delta.data[p + j] + 1e-10f);
+                delta.data[p + j] -= target;
+            }
+        }
+
+        backpropagateBatch(delta);
+        return loss;
+    }
+
     public void trainSample(float[] input, float[] target) {
-        float[] softmaxOut = forward(input);
-        float[] delta = new float[softmaxOut.length];
-        for (int i = 0; i < delta.length; i++) delta[i] = softmaxOut[i] - target[i];
+        trainSample(input, 0, target, 0);
+    }
+
+    public void trainSample(float[] input, int inputOffset, float[] target, int targetOffset) {
+        trainStep(input, inputOffset, target, targetOffset);
+    }
+
+    /**
+     * One SGD step: a single forward pass, cross-entropy loss and the fused
+     * softmax + cross-entropy gradient (p - y), then backpropagation.
+     *
+     * @return cross-entropy loss of the sample (before the update)
+     */
+    public float trainStep(float[] input, int inputOffset, float[] target, int targetOffset) {
+        float[] output = layers[0].forward(input, inputOffset, true);
+        for (int l = 1; l < layers.length; l++) {
+            output = layers[l].forward(output, 0, true);
+        }
+        return backpropagateFromLogits(output, target, targetOffset);
+    }
+
+    public void trainSparse(SparseDataset dataset, int epochs) {
+        Matrix labels = dataset.labels;
+        Sampler sampler = Sampler.random(dataset.numExamples);
+
+        for (int e = 0; e < epochs; e++) {
+            // CSR rows cannot be swapped cheaply, so only the visiting order changes
+            int[] order = sampler.nextEpoch();
+            float totalLoss = 0f;
+
+            for (int i : order) {
+                totalLoss += trainStepSparse(dataset.features, i, labels.data, labels.index(i, 0));
+            }
+
+            if ((e + 1) % 10 == 0)
+                System.out.printf("Epoch %d: Loss = %.4f%n", e + 1, totalLoss / dataset.numExamples);
+        }
+    }
 
+    public void trainSampleSparse(CsrMatrix input, int row, float[] target, int targetOffset) {
+        trainStepSparse(input, row, target, targetOffset);
+    }
+
+    /**
+     * trainStep for one row of a sparse input matrix.
+     *
+     * @return cross-entropy loss of the sample (before the update)
+     */
+    public float trainStepSparse(CsrMatrix input, int row, float[] target, int targetOffset) {
+        float[] output = layers[0].forwardSparse(input, row);
+        for (int l = 1; l < layers.length; l++) {
+            output = layers[l].forward(output, 0, true);
+        }
+        return backpropagateFromLogits(output, target, targetOffset);
+    }
+
+    private float backpropagateFromLogits(float[] logits, float[] target, int targetOffset) {
+        // Softmax into the delta buffer, then loss and delta = p - y in one loop
+        float[] delta = outputDelta;
+        Activations.softmaxInto(logits, 0, delta, 0, delta.length);
+        float loss = 0f;
+        for (int i = 0; i < delta.length; i++) {
+            float y = target[targetOffset + i];
+            loss -= y * Math.log(delta[i] + 1e-10f);
+            delta[i] -= y;
+        }
+
+        backpropagate(delta);
+        return loss;
+    }
+
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    private void backpropagate(float[] delta) {
+        if (optimizer != null) {
+            backpropagateGradients(delta);
+            optimizer.step(layers);
+            return;
+        }
 
         for (int l = layers.length - 1; l >= 0; l--) {
             Layer layer = layers[l];
+
+            // A sparse input layer only updates the weight rows of its active inputs
+            if (l == 0 && layer.lastSparseInput != null) {
+                layer.backwardSparse(delta, learningRate);
+                break;
+            }
+
             float[] dAprev = layer.backwardFromDZ(delta, learningRate);
 
             if (l > 0) {
                 Layer prevLayer = layers[l - 1];
-                float[] dZprev = new float[dAprev.length];
-                for (int i = 0; i < dZprev.length; i++) {
-                    float deriv = prevLayer.activationDerivative != null
-                            ? prevLayer.activationDerivative.apply(prevLayer.lastZ[i])
-                            : 1f;
-                    dZprev[i] = dAprev[i] * deriv;
-                }
-                delta = dZprev;
+                prevLayer.activation.multiplyDerivative(prevLayer.lastZ, dAprev, dAprev.length);
+                delta = dAprev;
+            }
+        }
+    }
+
+    private void backpropagateGradients(float[] delta) {
+        for (int l = layers.length - 1; l >= 0; l--) {
+            Layer layer = layers[l];
+
+            if (l == 0 && layer.lastSparseInput != null) {
+                layer.backwardSparseGradients(delta);
+                break;
+            }
+
+            float[] dAprev = layer.backwardGradients(delta);
+
+            if (l > 0) {
+                Layer prevLayer = layers[l - 1];
+                prevLayer.activation.multiplyDerivative(prevLayer.lastZ, dAprev, dAprev.length);
+                delta = dAprev;
             }
         }
     }
 
+    private void backpropagateBatch(Matrix delta) {
+        for (int l = layers.length - 1; l >= 0; l--) {
+            Matrix dAprev = optimizer != null
+                    ? layers[l].backwardBatchGradients(delta, l > 0)
+                    : layers[l].backwardBatch(delta, learningRate, l > 0);
+
+            if (l > 0) {
+                Layer prevLayer = layers[l - 1];
+                prevLayer.activation.multiplyDerivative(prevLayer.lastBatchZ.data, dAprev.data,
+                        dAprev.rows * dAprev.cols);
+                delta = dAprev;
+            }
+        }
+
+        if (optimizer != null) {
+            optimizer.step(layers);
+        }
+    }
+
+    public InferenceSession newSession() {
+        return new InferenceSession(this);
+    }
+
+    public HalfPrecisionNetwork toHalfPrecision(Precision format) {
+        return new HalfPrecisionNetwork(this, format);
+    }
+
     public void printStructure() {
         System.out.println("Neural Network Structure:");
         for (int i = 0; i < layers.length; i++) {
             Layer l = layers[i];
-            System.out.printf("Layer %d: inputs=%d, outputs=%d%n", i + 1, l.inputSize, l.outputSize);
+            System.out.printf("Layer %d: inputs=%d, outputs=%d, activation=%s%n",
+                    i + 1, l.inputSize, l.outputSize, l.activation.name());
         }
     }
 
     public static float crossEntropyLoss(float[] predicted, float[] target) {
+        return crossEntropyLoss(predicted, target, 0);
+    }
+
+    public static float crossEntropyLoss(float[] predicted, float[] target, int targetOffset) {
         float loss = 0f;
         for (int i = 0; i < predicted.length; i++)
-            loss -= target[i] * Math.log(predicted[i] + 1e-10f);
+            loss -= target[targetOffset + i] * Math.log(predicted[i] + 1e-10f);
         return loss;
     }
 
     public static float evaluate(TestDataset test, NeuralNetwork nn) {
         int correct = 0;
         for (int i = 0; i < test.numExamples; i++) {
-            float[] pred = nn.forward(test.features.data[i]);
-            if (argMax(pred) == argMax(test.labels.data[i]))
+            float[] pred = nn.predict(test.features.data, test.features.index(i, 0));
+            if (argMax(pred) == argMax(test.labels.data, test.labels.index(i, 0), test.labels.cols))
+                correct++;
+        }
+        return (float) correct / test.numExamples;
+    }
+
+    public static float evaluate(SparseDataset test, NeuralNetwork nn) {
+        int correct = 0;
+        for (int i = 0; i < test.numExamples; i++) {
+            float[] pred = nn.forwardSparse(test.features, i);
+            if (argMax(pred) == argMax(test.labels.data, test.labels.index(i, 0), test.labels.cols))
                 correct++;
         }
         return (float) correct / test.numExamples;
     }
 
     public static int argMax(float[] arr) {
+        return argMax(arr, 0, arr.length);
+    }
+
+    public static int argMax(float[] arr, int offset, int length) {
         int idx = 0;
-        float max = arr[0];
-        for (int i = 1; i < arr.length; i++) {
-            if (arr[i] > max) {
-                max = arr[i];
+        float max = arr[offset];
+        for (int i = 1; i < length; i++) {
+            if (arr[offset + i] > max) {
+                max = arr[offset + i];
                 idx = i;
             }
         }
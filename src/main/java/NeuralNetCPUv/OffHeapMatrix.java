@@ -0,0 +1,464 @@
+package NeuralNetCPUv;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static NeuralNetCPUv.Kernels.SEGMENT_FLOAT;
+
+/**
+ * OffHeapMatrix class
+ *
+ * A matrix whose values live outside the Java heap in a MemorySegment
+ * (Foreign Function & Memory API). Large weight tensors and feature
+ * tables stored this way do not count against -Xmx and are never scanned
+ * or moved by the garbage collector.
+ *
+ * Storage layout matches Matrix: row-major, element (i, j) at float index
+ * i * stride + j from the start of the segment. Values are always stored
+ * as little-endian floats, so a file written on one machine can be mapped
+ * on another.
+ *
+ * Lifetime:
+ * Memory comes from an Arena. Matrices created by allocateConfined /
+ * allocateShared own their arena and free it in close(); matrices created
+ * with a caller-supplied arena (allocate, map, fromHeap) are freed when
+ * that arena is closed. Views (row, rowRange, subMatrix) never own memory.
+ * Using a matrix after its arena is closed throws IllegalStateException.
+ * A confined arena may only be used by the thread that created it; use a
+ * shared arena for matrices read by several threads.
+ */
+public class OffHeapMatrix implements AutoCloseable {
+
+    /** Byte alignment of new allocations (one cache line, also the widest SIMD register) */
+    public static final long ALIGNMENT = 64;
+
+    /** Number of rows in the matrix */
+    public final int rows;
+
+    /** Number of columns in the matrix */
+    public final int cols;
+
+    /** Distance in floats between the start of two consecutive rows */
+    public final int stride;
+
+    /** Off-heap storage; element (0, 0) is at byte 0 */
+    public final MemorySegment segment;
+
+    /** Arena released by close(), or null when the memory is owned elsewhere */
+    private final Arena ownedArena;
+
+    /** Random number generator (used for initialization) */
+    private static Random rand = new Random();
+
+    // ============================
+    // Construction
+    // ============================
+
+    /**
+     * Wraps an existing segment (no copy, no ownership).
+     *
+     * @param segment storage, at least ((rows - 1) * stride + cols) floats long
+     * @param rows    number of rows
+     * @param cols    number of columns
+     * @param stride  floats between the start of consecutive rows
+     */
+    public OffHeapMatrix(MemorySegment segment, int rows, int cols, int stride) {
+        this(segment, rows, cols, stride, null);
+    }
+
+    private OffHeapMatrix(MemorySegment segment, int rows, int cols, int stride, Arena ownedArena) {
+        long needed = rows == 0 ? 0 : ((long) (rows - 1) * stride + cols) * Float.BYTES;
+        if (segment.byteSize() < needed) {
+            throw new IllegalArgumentException("Segment too small: " + segment.byteSize()
+                    + " bytes for " + rows + " x " + cols + " (stride " + stride + ")");
+        }
+        this.segment = segment;
+        this.rows = rows;
+        this.cols = cols;
+        this.stride = stride;
+        this.ownedArena = ownedArena;
+    }
+
+    /**
+     * Allocates a zero-filled rows x cols matrix from the given arena.
+     * The arena controls the lifetime; close() on the matrix does nothing.
+     */
+    public static OffHeapMatrix allocate(Arena arena, int rows, int cols) {
+        MemorySegment seg = arena.allocate((long) rows * cols * Float.BYTES, ALIGNMENT);
+        return new OffHeapMatrix(seg, rows, cols, cols, null);
+    }
+
+    /**
+     * Allocates a matrix with its own confined arena (single-thread access).
+     * Free it with close(), ideally via try-with-resources.
+     */
+    public static OffHeapMatrix allocateConfined(int rows, int cols) {
+        Arena arena = Arena.ofConfined();
+        MemorySegment seg = arena.allocate((long) rows * cols * Float.BYTES, ALIGNMENT);
+        return new OffHeapMatrix(seg, rows, cols, cols, arena);
+    }
+
+    /**
+     * Allocates a matrix with its own shared arena (any thread may read or
+     * write it). Free it with close().
+     */
+    public static OffHeapMatrix allocateShared(int rows, int cols) {
+        Arena arena = Arena.ofShared();
+        MemorySegment seg = arena.allocate((long) rows * cols * Float.BYTES, ALIGNMENT);
+        return new OffHeapMatrix(seg, rows, cols, cols, arena);
+    }
+
+    /**
+     * Maps a block of a file straight into memory as a rows x cols matrix of
+     * little-endian floats. Nothing is read up front; pages are loaded by the
+     * OS on first touch.
+     *
+     * @param file       file to map
+     * @param byteOffset position of element (0, 0) in the file
+     * @param rows       number of rows
+     * @param cols       number of columns
+     * @param writable   map read-write (changes are written back to the file)
+     * @param arena      arena that controls how long the mapping stays valid
+     * @return matrix backed by the mapping
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static OffHeapMatrix map(Path file, long byteOffset, int rows, int cols,
+                                    boolean writable, Arena arena) throws IOException {
+        long size = (long) rows * cols * Float.BYTES;
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        StandardOpenOption[] options = writable
+                ? new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[]{StandardOpenOption.READ};
+
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            MemorySegment seg = channel.map(mode, byteOffset, size, arena);
+            return new OffHeapMatrix(seg, rows, cols, cols, null);
+        }
+    }
+
+    /**
+     * Copies a heap matrix into new off-heap memory from the given arena.
+     */
+    public static OffHeapMatrix fromHeap(Matrix source, Arena arena) {
+        OffHeapMatrix out = allocate(arena, source.rows, source.cols);
+        for (int i = 0; i < source.rows; i++) {
+            out.setRow(i, source.data, source.index(i, 0));
+        }
+        return out;
+    }
+
+    /**
+     * Copies this matrix into a new (contiguous) heap Matrix.
+     */
+    public Matrix toHeap() {
+        Matrix out = new Matrix(rows, cols);
+        for (int i = 0; i < rows; i++) {
+            getRow(i, out.data, i * cols);
+        }
+        return out;
+    }
+
+    /**
+     * Releases the memory if this matrix owns its arena.
+     * For arena-supplied or view matrices this does nothing.
+     */
+    @Override
+    public void close() {
+        if (ownedArena != null) {
+            ownedArena.close();
+        }
+    }
+
+    // ============================
+    // Element and view access
+    // ============================
+
+    /** Byte offset of element (i, j) inside the segment */
+    public long byteIndex(int i, int j) {
+        return ((long) i * stride + j) * Float.BYTES;
+    }
+
+    /** Read element (i, j) */
+    public float get(int i, int j) {
+        return segment.get(SEGMENT_FLOAT, byteIndex(i, j));
+    }
+
+    /** Write element (i, j) */
+    public void set(int i, int j, float value) {
+        segment.set(SEGMENT_FLOAT, byteIndex(i, j), value);
+    }
+
+    /** Zero-copy view of a single row as a 1 x cols matrix */
+    public OffHeapMatrix row(int i) {
+        return new OffHeapMatrix(segment.asSlice(byteIndex(i, 0)), 1, cols, stride, null);
+    }
+
+    /** Zero-copy view of a block of consecutive rows */
+    public OffHeapMatrix rowRange(int startRow, int numRows) {
+        return new OffHeapMatrix(segment.asSlice(byteIndex(startRow, 0)), numRows, cols, stride, null);
+    }
+
+    /** Zero-copy view of a rectangular block */
+    public OffHeapMatrix subMatrix(int startRow, int startCol, int numRows, int numCols) {
+        return new OffHeapMatrix(segment.asSlice(byteIndex(startRow, startCol)), numRows, numCols, stride, null);
+    }
+
+    /** Copies one row into a new heap array */
+    public float[] getRow(int i) {
+        float[] out = new float[cols];
+        getRow(i, out, 0);
+        return out;
+    }
+
+    /** Copies one row into an existing heap array starting at outOffset */
+    public void getRow(int i, float[] out, int outOffset) {
+        MemorySegment.copy(segment, SEGMENT_FLOAT, byteIndex(i, 0), out, outOffset, cols);
+    }
+
+    /** Overwrites one row with values from a heap array starting at srcOffset */
+    public void setRow(int i, float[] values, int srcOffset) {
+        MemorySegment.copy(values, srcOffset, segment, SEGMENT_FLOAT, byteIndex(i, 0), cols);
+    }
+
+    /** Overwrites one row with the given values */
+    public void setRow(int i, float[] values) {
+        setRow(i, values, 0);
+    }
+
+    // ============================
+    // Initialization methods
+    // ============================
+
+    /** Fill with zeros */
+    public void zeros() {
+        fill(0.0f);
+    }
+
+    /** Fill with ones */
+    public void ones() {
+        fill(1.0f);
+    }
+
+    /** Fill every element with the same value */
+    public void fill(float value) {
+        for (int i = 0; i < rows; i++) {
+            long base = byteIndex(i, 0);
+            for (int j = 0; j < cols; j++) {
+                segment.set(SEGMENT_FLOAT, base + 4L * j, value);
+            }
+        }
+    }
+
+    /** Fill with random values between -1 and +1 */
+    public void randomizeUniform() {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                set(i, j, rand.nextFloat() * 2f - 1f);
+            }
+        }
+    }
+
+    /** Fill with normally distributed random values (mean=0, std=1) */
+    public void randomizeNormal() {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                set(i, j, (float) rand.nextGaussian());
+            }
+        }
+    }
+
+    // ============================
+    // Operations (same surface as Matrix, destination-passing)
+    //
+    // Aliasing rules follow Matrix: elementwise ops accept out == input,
+    // multiplyInto / transposeInto / gemvInto need distinct storage.
+    // ============================
+
+    /**
+     * C = A * B. Rows of C are built as sums of scaled rows of B
+     * (i-k-j order), using the SIMD segment axpy when available.
+     */
+    public static void multiplyInto(OffHeapMatrix A, OffHeapMatrix B, OffHeapMatrix C) {
+        if (A.cols != B.rows || C.rows != A.rows || C.cols != B.cols) {
+            throw new IllegalArgumentException("Shape mismatch for multiply");
+        }
+        Kernels kernels = Kernels.get();
+        C.zeros();
+        for (int i = 0; i < A.rows; i++) {
+            long cRow = C.byteIndex(i, 0);
+            for (int k = 0; k < A.cols; k++) {
+                float aik = A.get(i, k);
+                if (aik != 0.0f) {
+                    kernels.axpy(aik, B.segment, B.byteIndex(k, 0), C.segment, cRow, B.cols);
+                }
+            }
+        }
+    }
+
+    /**
+     * out = mat^T * vec[vecOffset ..] (the Layer convention), with the
+     * result written to heap memory out[outOffset .. outOffset + cols).
+     */
+    public static void gemvInto(OffHeapMatrix mat, float[] vec, int vecOffset, float[] out, int outOffset) {
+        Kernels kernels = Kernels.get();
+        Arrays.fill(out, outOffset, outOffset + mat.cols, 0.0f);
+        for (int i = 0; i < mat.rows; i++) {
+            float v = vec[vecOffset + i];
+            if (v != 0.0f) {
+                kernels.axpy(v, mat.segment, mat.byteIndex(i, 0), out, outOffset, mat.cols);
+            }
+        }
+    }
+
+    /**
+     * out[i] = sum_j mat[i, j] * vec[j] (one dot product per row).
+     */
+    public static void multiplyRowsInto(OffHeapMatrix mat, float[] vec, float[] out) {
+        Kernels kernels = Kernels.get();
+        for (int i = 0; i < mat.rows; i++) {
+            out[i] = kernels.dot(mat.segment, mat.byteIndex(i, 0), vec, 0, mat.cols);
+        }
+    }
+
+    /** out = mat^T (out must not share storage with mat) */
+    public static void transposeInto(OffHeapMatrix mat, OffHeapMatrix out) {
+        for (int i = 0; i < mat.rows; i++) {
+            for (int j = 0; j < mat.cols; j++) {
+                out.set(j, i, mat.get(i, j));
+            }
+        }
+    }
+
+    /** out = A + B. out may alias A or B. */
+    public static void addInto(OffHeapMatrix A, OffHeapMatrix B, OffHeapMatrix out) {
+        for (int i = 0; i < A.rows; i++) {
+            for (int j = 0; j < A.cols; j++) {
+                out.set(i, j, A.get(i, j) + B.get(i, j));
+            }
+        }
+    }
+
+    /** out = A - B. out may alias A or B. */
+    public static void subtractInto(OffHeapMatrix A, OffHeapMatrix B, OffHeapMatrix out) {
+        for (int i = 0; i < A.rows; i++) {
+            for (int j = 0; j < A.cols; j++) {
+                out.set(i, j, A.get(i, j) - B.get(i, j));
+            }
+        }
+    }
+
+    /** out = A * B (elementwise). out may alias A or B. */
+    public static void multiplyElemInto(OffHeapMatrix A, OffHeapMatrix B, OffHeapMatrix out) {
+        for (int i = 0; i < A.rows; i++) {
+            for (int j = 0; j < A.cols; j++) {
+                out.set(i, j, A.get(i, j) * B.get(i, j));
+            }
+        }
+    }
+
+    /** out = A * scalar. out may alias A. */
+    public static void multiplyScalarInto(OffHeapMatrix A, float scalar, OffHeapMatrix out) {
+        for (int i = 0; i < A.rows; i++) {
+            for (int j = 0; j < A.cols; j++) {
+                out.set(i, j, A.get(i, j) * scalar);
+            }
+        }
+    }
+
+    /** A = A * scalar */
+    public static void scaleInPlace(OffHeapMatrix A, float scalar) {
+        multiplyScalarInto(A, scalar, A);
+    }
+
+    /** Y = Y + alpha * X */
+    public static void axpy(float alpha, OffHeapMatrix X, OffHeapMatrix Y) {
+        Kernels kernels = Kernels.get();
+        for (int i = 0; i < X.rows; i++) {
+            kernels.axpy(alpha, X.segment, X.byteIndex(i, 0), Y.segment, Y.byteIndex(i, 0), X.cols);
+        }
+    }
+
+    /** out = A (row by row, so views with different strides work) */
+    public static void copyInto(OffHeapMatrix A, OffHeapMatrix out) {
+        for (int i = 0; i < A.rows; i++) {
+            MemorySegment.copy(A.segment, A.byteIndex(i, 0), out.segment, out.byteIndex(i, 0),
+                    (long) A.cols * Float.BYTES);
+        }
+    }
+
+    // ============================
+    // Allocating operations (result memory comes from the given arena)
+    // ============================
+
+    /** C = A * B */
+    public static OffHeapMatrix multiply(OffHeapMatrix A, OffHeapMatrix B, Arena arena) {
+        OffHeapMatrix C = allocate(arena, A.rows, B.cols);
+        multiplyInto(A, B, C);
+        return C;
+    }
+
+    /** out = mat^T * vec (heap result) */
+    public static float[] multiplyVector(OffHeapMatrix mat, float[] vec) {
+        float[] out = new float[mat.cols];
+        gemvInto(mat, vec, 0, out, 0);
+        return out;
+    }
+
+    /** Transposed copy */
+    public static OffHeapMatrix transpose(OffHeapMatrix mat, Arena arena) {
+        OffHeapMatrix out = allocate(arena, mat.cols, mat.rows);
+        transposeInto(mat, out);
+        return out;
+    }
+
+    /** Element-wise addition */
+    public static OffHeapMatrix add(OffHeapMatrix A, OffHeapMatrix B, Arena arena) {
+        OffHeapMatrix out = allocate(arena, A.rows, A.cols);
+        addInto(A, B, out);
+        return out;
+    }
+
+    /** Element-wise subtraction */
+    public static OffHeapMatrix subtract(OffHeapMatrix A, OffHeapMatrix B, Arena arena) {
+        OffHeapMatrix out = allocate(arena, A.rows, A.cols);
+        subtractInto(A, B, out);
+        return out;
+    }
+
+    /** Element-wise multiplication (Hadamard product) */
+    public static OffHeapMatrix multiplyElem(OffHeapMatrix A, OffHeapMatrix B, Arena arena) {
+        OffHeapMatrix out = allocate(arena, A.rows, A.cols);
+        multiplyElemInto(A, B, out);
+        return out;
+    }
+
+    /** Multiplies all elements by a scalar */
+    public static OffHeapMatrix multiplyScalar(OffHeapMatrix A, float scalar, Arena arena) {
+        OffHeapMatrix out = allocate(arena, A.rows, A.cols);
+        multiplyScalarInto(A, scalar, out);
+        return out;
+    }
+
+    /** Deep copy (always contiguous) */
+    public static OffHeapMatrix copy(OffHeapMatrix A, Arena arena) {
+        OffHeapMatrix out = allocate(arena, A.rows, A.cols);
+        copyInto(A, out);
+        return out;
+    }
+
+    /** Print the matrix in a readable format */
+    public void print() {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                System.out.printf("%8.4f ", get(i, j));
+            }
+            System.out.println();
+        }
+    }
+}
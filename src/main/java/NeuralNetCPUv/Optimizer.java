@@ -0,0 +1,148 @@
+package NeuralNetCPUv;
+
+/**
+ * Base class for parameter update rules (SGD, momentum, Adam, RMSprop ...).
+ *
+ * Backpropagation accumulates gradients into Layer.weightGrad / biasGrad;
+ * step() then updates every parameter tensor of the network. Each rule
+ * implements update() as one loop over flat float arrays that reads the
+ * gradient, updates the optimizer state and the parameter, and clears the
+ * gradient for the next step, so parameters and state are streamed once
+ * and nothing is allocated per step.
+ *
+ * State arrays (momentum, second moments, ...) are created on the first
+ * step, one set per parameter tensor ("slot": weights and biases of each
+ * layer). An optimizer instance therefore belongs to one network.
+ *
+ * Install one with NeuralNetwork.setOptimizer(...). Without an optimizer
+ * the network uses its built-in plain SGD, which updates the weights
+ * during backprop and needs no gradient buffers.
+ */
+public abstract class Optimizer {
+
+    /** Step size */
+    protected float learningRate;
+
+    /** Number of steps taken so far (t, starts at 1 on the first step) */
+    protected int stepCount;
+
+    /** State arrays per slot: state[slot][k] has one value per parameter */
+    private float[][][] state = new float[0][][];
+
+    protected Optimizer(float learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    /** Name used in logs */
+    public abstract String name();
+
+    /** Number of state values kept per parameter (0 for plain SGD) */
+    protected abstract int stateArrays();
+
+    /**
+     * Fused update of n parameters.
+     *
+     * @param param parameter array, updated in place
+     * @param pOff  index of the first parameter
+     * @param grad  gradient array, cleared (set to 0) after use
+     * @param gOff  index of the first gradient
+     * @param state this slot's state arrays
+     * @param sOff  index of the first state value
+     * @param n     number of parameters
+     */
+    protected abstract void update(float[] param, int pOff, float[] grad, int gOff,
+                                   float[][] state, int sOff, int n);
+
+    /**
+     * Applies one update to every layer that has gradients and clears them.
+     *
+     * @param layers layers of the network, always in the same order
+     */
+    public void step(Layer[] layers) {
+        stepCount++;
+        if (state.length < 2 * layers.length) {
+            float[][][] grown = new float[2 * layers.length][][];
+            System.arraycopy(state, 0, grown, 0, state.length);
+            state = grown;
+        }
+
+        for (int l = 0; l < layers.length; l++) {
+            Layer layer = layers[l];
+            if (layer.weightGrad == null) {
+                continue;
+            }
+
+            // Weights (row by row if the matrix is a strided view)
+            Matrix w = layer.weights;
+            float[][] ws = slotState(2 * l, w.rows * w.cols);
+            if (w.isContiguous()) {
+                update(w.data, w.offset, layer.weightGrad.data, 0, ws, 0, w.rows * w.cols);
+            } else {
+                for (int r = 0; r < w.rows; r++) {
+                    update(w.data, w.index(r, 0), layer.weightGrad.data, r * w.cols, ws, r * w.cols, w.cols);
+                }
+            }
+
+            // Biases
+            float[][] bs = slotState(2 * l + 1, layer.outputSize);
+            update(layer.biases, 0, layer.biasGrad, 0, bs, 0, layer.outputSize);
+        }
+    }
+
+    /** State arrays of a slot, created on first use */
+    private float[][] slotState(int slot, int size) {
+        if (state[slot] == null || (stateArrays() > 0 && state[slot][0].length != size)) {
+            state[slot] = new float[stateArrays()][size];
+        }
+        return state[slot];
+    }
+
+    /** Forgets all state (momentum, moments, step count) */
+    public void reset() {
+        state = new float[0][][];
+        stepCount = 0;
+    }
+
+    public float getLearningRate() {
+        return learningRate;
+    }
+
+    /** Changes the step size (e.g. for a learning-rate schedule) */
+    public void setLearningRate(float learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    // ============================
+    // Factories
+    // ============================
+
+    /** Plain SGD */
+    public static Optimizer sgd(float learningRate) {
+        return new SgdOptimizer(learningRate, 0.0f, false, 0.0f);
+    }
+
+    /** SGD with (heavy-ball) momentum, e.g. momentum = 0.9 */
+    public static Optimizer momentum(float learningRate, float momentum) {
+        return new SgdOptimizer(learningRate, momentum, false, 0.0f);
+    }
+
+    /** SGD with Nesterov momentum */
+    public static Optimizer nesterov(float learningRate, float momentum) {
+        return new SgdOptimizer(learningRate, momentum, true, 0.0f);
+    }
+
+    /** Adam with the usual defaults (beta1 0.9, beta2 0.999, eps 1e-8) */
+    public static Optimizer adam(float learningRate) {
+        return new AdamOptimizer(learningRate, 0.9f, 0.999f, 1e-8f, 0.0f, false);
+    }
+
+    /** AdamW: Adam with decoupled weight decay */
+    public static Optimizer adamW(float learningRate, float weightDecay) {
+        return new AdamOptimizer(learningRate, 0.9f, 0.999f, 1e-8f, weightDecay, true);
+    }
+
+    /** RMSprop with the usual defaults (rho 0.9, eps 1e-8, no momentum) */
+    public static Optimizer rmsProp(float learningRate) {
+        return new RmsPropOptimizer(learningRate, 0.9f, 1e-8f, 0.0f);
+    }
+}
@@ -0,0 +1,166 @@
+package NeuralNetCPUv;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Settings and helpers for multi-core execution of the math kernels.
+ *
+ * Large GEMM and GEMV calls are split into row / column tiles that run as
+ * fork/join tasks on a configurable ForkJoinPool. Work below the size
+ * thresholds stays on the calling thread, because for small layers the
+ * task overhead is larger than the arithmetic.
+ *
+ * By default the common pool is used. A service that wants to cap the
+ * number of cores used for math can install its own pool with setPool().
+ */
+public class Parallel {
+
+    /** Pool used for all parallel kernels */
+    private static volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /** Master switch (false = always single-threaded) */
+    private static volatile boolean enabled = true;
+
+    /** Minimum multiply-adds (m * n * k) before a GEMM is split */
+    private static volatile long gemmThreshold = 128L * 128 * 128;
+
+    /** Minimum multiply-adds (rows * cols) before a GEMV is split */
+    private static volatile long gemvThreshold = 256L * 1024;
+
+    /** Threads that must never split their kernels (e.g. trainer workers that are already parallel) */
+    private static final ThreadLocal<Boolean> SEQUENTIAL_THREAD = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    /**
+     * Body of a parallel loop over an index range [from, to).
+     */
+    public interface RangeBody {
+        void run(int from, int to);
+    }
+
+    // ============================
+    // Configuration
+    // ============================
+
+    /** Pool used for parallel kernels */
+    public static ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the pool used for parallel kernels (e.g. a pool sized to leave
+     * cores free for the rest of the service).
+     */
+    public static void setPool(ForkJoinPool newPool) {
+        if (newPool == null) {
+            throw new IllegalArgumentException("Pool must not be null");
+        }
+        pool = newPool;
+    }
+
+    /** Enables or disables parallel kernels globally */
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /** True when parallel kernels are enabled */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Sets the minimum m * n * k for a parallel GEMM */
+    public static void setGemmThreshold(long multiplyAdds) {
+        gemmThreshold = multiplyAdds;
+    }
+
+    /** Sets the minimum rows * cols for a parallel GEMV */
+    public static void setGemvThreshold(long multiplyAdds) {
+        gemvThreshold = multiplyAdds;
+    }
+
+    /** Minimum m * n * k for a parallel GEMM */
+    public static long getGemmThreshold() {
+        return gemmThreshold;
+    }
+
+    /** Minimum rows * cols for a parallel GEMV */
+    public static long getGemvThreshold() {
+        return gemvThreshold;
+    }
+
+    /**
+     * True when a job of the given size should be split.
+     *
+     * @param work      amount of work (multiply-adds)
+     * @param threshold minimum work for parallel execution
+     */
+    public static boolean worthSplitting(long work, long threshold) {
+        return enabled && work >= threshold && pool.getParallelism() > 1 && !SEQUENTIAL_THREAD.get();
+    }
+
+    /**
+     * Keeps the kernels called from the current thread single-threaded
+     * (true) or lets them split again (false). Used by trainers that run
+     * one worker per core, where nested splitting would only oversubscribe.
+     */
+    public static void setSequentialForCurrentThread(boolean value) {
+        SEQUENTIAL_THREAD.set(value);
+    }
+
+    // ============================
+    // Parallel loops
+    // ============================
+
+    /**
+     * Runs body over [from, to), split into chunks of at least minChunk
+     * indices that execute on the pool. Returns when all chunks are done.
+     *
+     * @param from     first index (inclusive)
+     * @param to       last index (exclusive)
+     * @param minChunk smallest chunk handed to one task
+     * @param body     loop body for one chunk
+     */
+    public static void forRange(int from, int to, int minChunk, RangeBody body) {
+        if (to - from <= minChunk) {
+            body.run(from, to);
+            return;
+        }
+        pool.invoke(new RangeTask(from, to, Math.max(1, minChunk), body));
+    }
+
+    /**
+     * Number of tasks worth creating: a few per worker so uneven tiles
+     * still balance out.
+     */
+    static int targetTasks() {
+        return pool.getParallelism() * 4;
+    }
+
+    /**
+     * Splits a range in halves until chunks are small enough.
+     */
+    private static class RangeTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int minChunk;
+        private final RangeBody body;
+
+        RangeTask(int from, int to, int minChunk, RangeBody body) {
+            this.from = from;
+            this.to = to;
+            this.minChunk = minChunk;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= minChunk) {
+                body.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, mid, minChunk, body),
+                      new RangeTask(mid, to, minChunk, body));
+        }
+    }
+}
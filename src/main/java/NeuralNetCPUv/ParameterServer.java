@@ -0,0 +1,641 @@
+package NeuralNetCPUv;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Parameter server for multi-process training.
+ *
+ * The server owns the network parameters and the optimizer. Worker
+ * processes (ParameterServerWorker, one JVM each) connect over TCP, receive
+ * the architecture, the training settings and their shard of the dataset,
+ * and then loop:
+ *
+ *   pull weights -> compute gradients on batchesPerPush mini-batches
+ *   -> push the averaged gradient (optionally compressed) -> ...
+ *
+ * Every applied push is one optimizer step and increments the parameter
+ * version. A push carries the version of the weights it was computed on;
+ * if the server has moved on by more than maxStaleness versions since,
+ * the push is rejected and the worker must pull again (bounded staleness).
+ * Workers only pull when their copy is maxStaleness or more versions
+ * behind, so with maxStaleness > 0 most round trips are push-only.
+ *
+ * All messages are length-prefixed little-endian frames on blocking NIO
+ * SocketChannels; each worker connection is served by its own thread and
+ * updates are applied under the server's lock. Everything runs over the
+ * loopback interface, so the whole setup works on a single machine:
+ *
+ *   ParameterServer.Report report = ParameterServer.trainLocal(network, optimizer, train, config);
+ *   report.print();
+ *
+ * Workers report their compute, compression and communication time when
+ * they finish; the Report puts them side by side.
+ */
+public class ParameterServer implements Closeable {
+
+    // Message types
+    static final byte HELLO = 1;
+    static final byte CONFIG = 2;
+    static final byte PULL = 3;
+    static final byte PARAMS = 4;
+    static final byte PUSH = 5;
+    static final byte ACK = 6;
+    static final byte DONE = 7;
+    static final byte SHARD = 8;
+
+    /** Upper bound of the dataset bytes carried by one SHARD frame */
+    static final int SHARD_FRAME_BYTES = 4 << 20;
+
+    /** Network whose parameters are served and updated */
+    public final NeuralNetwork network;
+
+    /** Update rule applied to every accepted push */
+    public final Optimizer optimizer;
+
+    /** Training settings, sent to every worker */
+    public final Config config;
+
+    private final TrainDataset dataset;
+    private final int parameterCount;
+    private final float[] gradient;     // decoded push, flat [W0, b0, W1, b1, ...]
+    private final WorkerStats[] workerStats;
+    private final CountDownLatch finished;
+    private final List<Throwable> failures = new ArrayList<>();
+
+    private ServerSocketChannel serverChannel;
+    private int version;
+    private int rejected;
+    private long applyNanos;
+    private long startNanos;
+
+    /**
+     * Training settings shared by the server and all workers.
+     */
+    public static class Config {
+        public int workers = 2;               // number of worker processes
+        public int epochs = 10;               // passes of every worker over its shard
+        public int batchSize = 32;            // samples per mini-batch
+        public int batchesPerPush = 1;        // mini-batches averaged into one push
+        public int maxStaleness = 4;          // max versions a push may lag behind
+        public GradientCompression compression = GradientCompression.NONE;
+        public float topKFraction = 0.01f;    // share of entries sent by TOP_K
+        public long seed = 1;                 // worker i shuffles with seed + i
+    }
+
+    /**
+     * Statistics of one worker, reported by the worker when it finishes.
+     */
+    public static class WorkerStats {
+        public long samples;
+        public int pushes;
+        public int rejectedPushes;
+        public int pulls;
+        public double computeSeconds;        // forward + backward
+        public double compressSeconds;       // gradient encoding
+        public double communicationSeconds;  // pull / push round trips (incl. server apply)
+        public long bytesSent;
+        public long bytesReceived;
+        public float lastEpochLoss;          // average loss of the final epoch
+    }
+
+    /**
+     * Communication versus compute summary of a training run.
+     */
+    public static class Report {
+        public int workers;
+        public int parameters;
+        public int updates;                  // accepted pushes (= optimizer steps)
+        public int rejectedPushes;           // pushes dropped for staleness
+        public double seconds;               // wall-clock time until the last worker finished
+        public double serverApplySeconds;    // time spent decoding and stepping on the server
+        public GradientCompression compression;
+        public WorkerStats[] perWorker;
+
+        /** Print the statistics in a readable format */
+        public void print() {
+            System.out.println("=== Parameter Server Report ===");
+            System.out.printf("Workers: %d, parameters: %d, compression: %s%n", workers, parameters, compression);
+            System.out.printf("Updates: %d applied, %d rejected as stale, %.3f s wall, %.3f s server apply%n",
+                    updates, rejectedPushes, seconds, serverApplySeconds);
+            System.out.println("Worker | Samples  | Pushes | Pulls | Compute s | Compress s | Comm s | Comm % | MB sent | MB recv | Loss");
+            double compute = 0, compress = 0, comm = 0;
+            long sent = 0;
+            int pushes = 0;
+            for (int w = 0; w < perWorker.length; w++) {
+                WorkerStats s = perWorker[w];
+                if (s == null) {
+                    System.out.printf("%6d | (no report)%n", w);
+                    continue;
+                }
+                double total = s.computeSeconds + s.compressSeconds + s.communicationSeconds;
+                System.out.printf("%6d | %8d | %6d | %5d | %9.3f | %10.3f | %6.3f | %5.1f%% | %7.2f | %7.2f | %.4f%n",
+                        w, s.samples, s.pushes, s.pulls, s.computeSeconds, s.compressSeconds,
+                        s.communicationSeconds, total > 0 ? 100.0 * s.communicationSeconds / total : 0.0,
+                        s.bytesSent / 1e6, s.bytesReceived / 1e6, s.lastEpochLoss);
+                compute += s.computeSeconds;
+                compress += s.compressSeconds;
+                comm += s.communicationSeconds;
+                sent += s.bytesSent;
+                pushes += s.pushes;
+            }
+            double total = compute + compress + comm;
+            System.out.printf("Total: compute %.3f s, compress %.3f s, communication %.3f s (%.1f%% of worker time)%n",
+                    compute, compress, comm, total > 0 ? 100.0 * comm / total : 0.0);
+            if (pushes > 0) {
+                double raw = 4.0 * parameters;
+                System.out.printf("Bytes sent per push: %.0f (%.1f%% of raw FP32)%n",
+                        (double) sent / pushes, 100.0 * sent / pushes / raw);
+            }
+        }
+    }
+
+    /**
+     * Creates a server; call start() to begin accepting workers.
+     *
+     * @param network   network to train (its parameters live on the server)
+     * @param optimizer update rule applied to every accepted push
+     * @param dataset   training data, split into one contiguous shard per worker
+     * @param config    training settings
+     */
+    public ParameterServer(NeuralNetwork network, Optimizer optimizer, TrainDataset dataset, Config config) {
+        if (config.workers < 1 || config.batchSize < 1 || config.batchesPerPush < 1 || config.maxStaleness < 0) {
+            throw new IllegalArgumentException("Invalid parameter server configuration");
+        }
+        this.network = network;
+        this.optimizer = optimizer;
+        this.dataset = dataset;
+        this.config = config;
+        int count = 0;
+        for (Layer layer : network.layers) {
+            layer.ensureGradients();
+            count += layer.inputSize * layer.outputSize + layer.outputSize;
+        }
+        this.parameterCount = count;
+        this.gradient = new float[count];
+        this.workerStats = new WorkerStats[config.workers];
+        this.finished = new CountDownLatch(config.workers);
+    }
+
+    /**
+     * Binds to an ephemeral loopback port and starts accepting workers.
+     *
+     * @return the port workers must connect to
+     */
+    public int start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        startNanos = System.nanoTime();
+
+        Thread acceptor = new Thread(this::acceptWorkers, "parameter-server-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return port();
+    }
+
+    /** Port the server listens on */
+    public int port() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Starts config.workers worker JVMs on this machine with the same
+     * classpath and JVM options as the current process.
+     */
+    public List<Process> launchLocalWorkers() throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!arg.startsWith("-agentlib") && !arg.startsWith("-javaagent")) {
+                command.add(arg);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ParameterServerWorker.class.getName());
+        command.add(InetAddress.getLoopbackAddress().getHostAddress());
+        command.add(Integer.toString(port()));
+
+        List<Process> processes = new ArrayList<>();
+        for (int w = 0; w < config.workers; w++) {
+            processes.add(new ProcessBuilder(command).inheritIO().start());
+        }
+        return processes;
+    }
+
+    /**
+     * Waits until every worker has reported back.
+     *
+     * @throws IllegalStateException if serving a worker failed
+     */
+    public Report awaitCompletion() throws InterruptedException {
+        finished.await();
+        synchronized (this) {
+            if (!failures.isEmpty()) {
+                IllegalStateException ex = new IllegalStateException("Parameter server worker failed");
+                failures.forEach(ex::addSuppressed);
+                throw ex;
+            }
+            Report report = new Report();
+            report.workers = config.workers;
+            report.parameters = parameterCount;
+            report.updates = version;
+            report.rejectedPushes = rejected;
+            report.seconds = (System.nanoTime() - startNanos) / 1e9;
+            report.serverApplySeconds = applyNanos / 1e9;
+            report.compression = config.compression;
+            report.perWorker = workerStats.clone();
+            return report;
+        }
+    }
+
+    /** Stops accepting connections */
+    @Override
+    public void close() throws IOException {
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+    }
+
+    /**
+     * Trains with config.workers local worker processes over loopback and
+     * returns when all of them have finished. A worker process exiting with
+     * an error (even before it connected) fails the run instead of hanging.
+     */
+    public static Report trainLocal(NeuralNetwork network, Optimizer optimizer,
+                                    TrainDataset dataset, Config config) throws IOException, InterruptedException {
+        try (ParameterServer server = new ParameterServer(network, optimizer, dataset, config)) {
+            server.start();
+            List<Process> processes = server.launchLocalWorkers();
+            for (Process process : processes) {
+                process.onExit().thenAccept(server::workerProcessExited);
+            }
+            try {
+                Report report = server.awaitCompletion();
+                for (Process process : processes) {
+                    process.waitFor();
+                }
+                return report;
+            } finally {
+                for (Process process : processes) {
+                    process.destroy();
+                }
+            }
+        }
+    }
+
+    // ============================
+    // Serving workers
+    // ============================
+
+    /**
+     * Exit hook of a local worker process. A non-zero exit code means the
+     * worker failed, possibly before it ever connected (bad classpath or
+     * JVM flag, startup OOM); closing the server channel then makes the
+     * acceptor release awaitCompletion() with the failure instead of
+     * waiting forever for the missing connection.
+     */
+    private void workerProcessExited(Process process) {
+        int exitCode = process.exitValue();
+        if (exitCode != 0) {
+            fail(new IOException("Worker process " + process.pid() + " exited with code " + exitCode));
+            try {
+                close();
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        }
+    }
+
+    private void acceptWorkers() {
+        for (int w = 0; w < config.workers; w++) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                int workerId = w;
+                Thread handler = new Thread(() -> serve(channel, workerId), "parameter-server-worker-" + w);
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException ex) {
+                // Closed while waiting: release everyone still waiting for workers
+                fail(ex);
+                while (finished.getCount() > 0) {
+                    finished.countDown();
+                }
+                return;
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel, int workerId) {
+        try (Connection connection = new Connection(channel)) {
+            connection.receive(HELLO);
+            sendConfig(connection, workerId);
+
+            while (true) {
+                ByteBuffer message = connection.receive();
+                byte type = message.get();
+                if (type == PULL) {
+                    sendParameters(connection);
+                } else if (type == PUSH) {
+                    boolean applied = applyPush(message);
+                    ByteBuffer ack = connection.begin(ACK, 5);
+                    ack.put((byte) (applied ? 1 : 0));
+                    ack.putInt(currentVersion());
+                    connection.send();
+                } else if (type == DONE) {
+                    WorkerStats stats = readStats(message);
+                    synchronized (this) {
+                        workerStats[workerId] = stats;
+                    }
+                    break;
+                } else {
+                    throw new IOException("Unexpected message type " + type);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            fail(ex);
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private synchronized void fail(Throwable ex) {
+        failures.add(ex);
+    }
+
+    private synchronized int currentVersion() {
+        return version;
+    }
+
+    /**
+     * CONFIG: worker id, settings, architecture and the shard's shape,
+     * followed by the shard rows in SHARD frames of at most
+     * SHARD_FRAME_BYTES each, so neither side ever needs a buffer of the
+     * whole shard.
+     */
+    private void sendConfig(Connection connection, int workerId) throws IOException {
+        Layer[] layers = network.layers;
+        int n = dataset.numExamples;
+        int from = (int) ((long) n * workerId / config.workers);
+        int to = (int) ((long) n * (workerId + 1) / config.workers);
+        int rows = to - from;
+        int inputs = dataset.features.cols;
+        int outputs = dataset.labels.cols;
+
+        byte[][] activationNames = new byte[layers.length][];
+        int size = 64 + 8 * layers.length;
+        for (int l = 0; l < layers.length; l++) {
+            activationNames[l] = layers[l].activation.name().getBytes(StandardCharsets.UTF_8);
+            size += 4 + activationNames[l].length;
+        }
+
+        ByteBuffer out = connection.begin(CONFIG, size);
+        out.putInt(workerId);
+        out.putInt(config.workers);
+        out.putInt(config.epochs);
+        out.putInt(config.batchSize);
+        out.putInt(config.batchesPerPush);
+        out.putInt(config.maxStaleness);
+        out.putInt(config.compression.ordinal());
+        out.putFloat(config.topKFraction);
+        out.putLong(config.seed + workerId);
+
+        out.putInt(layers.length);
+        for (int l = 0; l < layers.length; l++) {
+            out.putInt(layers[l].inputSize);
+            out.putInt(layers[l].outputSize);
+            out.putInt(activationNames[l].length);
+            out.put(activationNames[l]);
+        }
+
+        out.putInt(rows);
+        out.putInt(inputs);
+        out.putInt(outputs);
+        connection.send();
+
+        // SHARD: row count, then features and labels of those rows
+        long rowBytes = 4L * (inputs + outputs);
+        int rowsPerFrame = (int) Math.max(1, Math.min(rows, SHARD_FRAME_BYTES / rowBytes));
+        for (int start = from; start < to; start += rowsPerFrame) {
+            int count = Math.min(rowsPerFrame, to - start);
+            ByteBuffer frame = connection.begin(SHARD, Math.toIntExact(4 + count * rowBytes));
+            frame.putInt(count);
+            for (int r = start; r < start + count; r++) {
+                Connection.putFloats(frame, dataset.features.data, dataset.features.index(r, 0), inputs);
+            }
+            for (int r = start; r < start + count; r++) {
+                Connection.putFloats(frame, dataset.labels.data, dataset.labels.index(r, 0), outputs);
+            }
+            connection.send();
+        }
+    }
+
+    /**
+     * PARAMS: version, then weights and biases of every layer as float32.
+     */
+    private void sendParameters(Connection connection) throws IOException {
+        ByteBuffer out = connection.begin(PARAMS, 4 + 4 * parameterCount);
+        synchronized (this) {
+            out.putInt(version);
+            for (Layer layer : network.layers) {
+                Matrix w = layer.weights;
+                for (int r = 0; r < w.rows; r++) {
+                    Connection.putFloats(out, w.data, w.index(r, 0), w.cols);
+                }
+                Connection.putFloats(out, layer.biases, 0, layer.outputSize);
+            }
+        }
+        connection.send();
+    }
+
+    /**
+     * PUSH: version the gradient was computed on, then the encoded gradient.
+     *
+     * @return true if the gradient was applied, false if it was too stale
+     */
+    private synchronized boolean applyPush(ByteBuffer message) {
+        int baseVersion = message.getInt();
+        if (version - baseVersion > config.maxStaleness) {
+            rejected++;
+            return false;
+        }
+
+        long start = System.nanoTime();
+        config.compression.decode(message, gradient, parameterCount);
+        int offset = 0;
+        for (Layer layer : network.layers) {
+            int weights = layer.inputSize * layer.outputSize;
+            System.arraycopy(gradient, offset, layer.weightGrad.data, 0, weights);
+            offset += weights;
+            System.arraycopy(gradient, offset, layer.biasGrad, 0, layer.outputSize);
+            offset += layer.outputSize;
+        }
+        optimizer.step(network.layers);
+        version++;
+        applyNanos += System.nanoTime() - start;
+        return true;
+    }
+
+    private static WorkerStats readStats(ByteBuffer in) {
+        WorkerStats s = new WorkerStats();
+        s.samples = in.getLong();
+        s.pushes = in.getInt();
+        s.rejectedPushes = in.getInt();
+        s.pulls = in.getInt();
+        s.computeSeconds = in.getLong() / 1e9;
+        s.compressSeconds = in.getLong() / 1e9;
+        s.communicationSeconds = in.getLong() / 1e9;
+        s.bytesSent = in.getLong();
+        s.bytesReceived = in.getLong();
+        s.lastEpochLoss = in.getFloat();
+        return s;
+    }
+
+    // ============================
+    // Framing
+    // ============================
+
+    /**
+     * Length-prefixed message framing on a blocking SocketChannel:
+     * int length (of everything after it), byte type, payload.
+     * One reusable direct buffer per connection, grown on demand.
+     */
+    static final class Connection implements Closeable {
+        private final SocketChannel channel;
+        private ByteBuffer buffer = newBuffer(1 << 16);
+        long bytesSent;
+        long bytesReceived;
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            channel.configureBlocking(true);
+            channel.socket().setTcpNoDelay(true);
+        }
+
+        private static ByteBuffer newBuffer(int capacity) {
+            return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (buffer.capacity() < capacity) {
+                buffer = newBuffer(Math.max(capacity, 2 * buffer.capacity()));
+            }
+        }
+
+        /**
+         * Starts a message; the returned buffer takes up to payloadBytes of payload.
+         */
+        ByteBuffer begin(byte type, int payloadBytes) {
+            ensureCapacity(5 + payloadBytes);
+            buffer.clear();
+            buffer.position(4);
+            buffer.put(type);
+            return buffer;
+        }
+
+        /** Sends the message started with begin() */
+        void send() throws IOException {
+            buffer.flip();
+            buffer.putInt(0, buffer.limit() - 4);
+            bytesSent += buffer.limit();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        /**
+         * Receives one message.
+         *
+         * @return buffer positioned at the type byte
+         */
+        ByteBuffer receive() throws IOException {
+            buffer.clear().limit(4);
+            readFully();
+            int length = buffer.getInt(0);
+            ensureCapacity(length);
+            buffer.clear().limit(length);
+            readFully();
+            buffer.flip();
+            bytesReceived += 4 + length;
+            return buffer;
+        }
+
+        /**
+         * Receives one message of the expected type.
+         *
+         * @return buffer positioned after the type byte
+         */
+        ByteBuffer receive(byte expectedType) throws IOException {
+            ByteBuffer message = receive();
+            byte type = message.get();
+            if (type != expectedType) {
+                throw new IOException("Expected message type " + expectedType + ", got " + type);
+            }
+            return message;
+        }
+
+        private void readFully() throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Connection closed");
+                }
+            }
+        }
+
+        static void putFloats(ByteBuffer out, float[] values, int offset, int count) {
+            out.asFloatBuffer().put(values, offset, count);
+            out.position(out.position() + 4 * count);
+        }
+
+        static void getFloats(ByteBuffer in, float[] values, int offset, int count) {
+            in.asFloatBuffer().get(values, offset, count);
+            in.position(in.position() + 4 * count);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // ============================
+    // Demo
+    // ============================
+
+    /**
+     * Trains the Iris network with two worker processes and prints the report.
+     */
+    public static void main(String[] args) throws Exception {
+        TrainDataset train = new TrainDataset(120, 4, 3);
+        TestDataset test = new TestDataset(30, 4, 3);
+        DataUtils.splitDataset("iris.csv", 120, 30, train, test);
+        for (int i = 0; i < train.features.data.length; i++) train.features.data[i] /= 8.0f;
+        for (int i = 0; i < test.features.data.length; i++) test.features.data[i] /= 8.0f;
+
+        NeuralNetwork network = new NeuralNetwork(4, new int[]{10, 8}, 3, 0.01f);
+        Config config = new Config();
+        config.epochs = 300;
+        config.batchSize = 8;
+        if (args.length > 0) {
+            config.compression = GradientCompression.valueOf(args[0]);
+        }
+
+        Report report = trainLocal(network, Optimizer.adam(0.01f), train, config);
+        report.print();
+        System.out.printf("Test Accuracy: %.2f%%%n", NeuralNetwork.evaluate(test, network) * 100);
+    }
+}
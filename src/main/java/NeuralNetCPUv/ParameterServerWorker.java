@@ -0,0 +1,271 @@
+package NeuralNetCPUv;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Worker process of a ParameterServer.
+ *
+ * Connects to the server, receives the settings, the architecture and its
+ * shard of the dataset, then trains: gradients of batchesPerPush mini-batches
+ * are accumulated into one flat buffer (laid out [W0, b0, W1, b1, ...] like
+ * the server's) and pushed with the configured compression. The residual the
+ * compression leaves in the buffer is carried into the next push.
+ *
+ * Started by ParameterServer.launchLocalWorkers() as
+ *   java ... NeuralNetCPUv.ParameterServerWorker <host> <port>
+ */
+public class ParameterServerWorker {
+
+    private final String host;
+    private final int port;
+
+    // Settings received from the server
+    private int epochs;
+    private int batchSize;
+    private int batchesPerPush;
+    private int maxStaleness;
+    private GradientCompression compression;
+    private float topKFraction;
+    private Random random;
+
+    // Local replica of the network and the worker's shard
+    private Layer[] layers;
+    private TrainDataset shard;
+    private BatchWorkspace workspace;
+
+    // Gradient buffers
+    private float[] gradient;      // flat accumulated gradient, holds the compression residual
+    private Matrix[] weightGrads;  // views into gradient
+    private float[][] biasGrads;   // accumulated separately, folded into gradient on push
+    private int[] biasOffsets;
+    private float[] scratch;
+    private int parameterCount;
+
+    // Version of the local weights and of the server after the last push
+    private int localVersion;
+    private int serverVersion;
+
+    private final ParameterServer.WorkerStats stats = new ParameterServer.WorkerStats();
+    private long computeNanos;
+    private long compressNanos;
+    private long communicationNanos;
+
+    public ParameterServerWorker(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Connects, trains on the shard and reports the statistics to the server.
+     */
+    public void run() throws IOException {
+        try (ParameterServer.Connection connection =
+                     new ParameterServer.Connection(SocketChannel.open(new InetSocketAddress(host, port)))) {
+            connection.begin(ParameterServer.HELLO, 0);
+            connection.send();
+            readConfig(connection.receive(ParameterServer.CONFIG));
+            readShard(connection);
+
+            pull(connection);
+            train(connection);
+
+            stats.computeSeconds = computeNanos / 1e9;
+            stats.compressSeconds = compressNanos / 1e9;
+            stats.communicationSeconds = communicationNanos / 1e9;
+            stats.bytesSent = connection.bytesSent;
+            stats.bytesReceived = connection.bytesReceived;
+            sendDone(connection);
+        }
+    }
+
+    private void train(ParameterServer.Connection connection) throws IOException {
+        int n = shard.numExamples;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        int rows = Math.min(batchSize, Math.max(n, 1));
+        Matrix batchX = new Matrix(rows, shard.features.cols);
+        Matrix batchY = new Matrix(rows, shard.labels.cols);
+        workspace.ensureCapacity(rows);
+
+        // Push groups run across epoch boundaries, so every push averages batchesPerPush batches
+        int pending = 0;
+        for (int e = 0; e < epochs; e++) {
+            RandomUtil.shuffle(order, random);
+            double loss = 0.0;
+            for (int b = 0; b < n; b += batchSize) {
+                int m = Math.min(batchSize, n - b);
+                long start = System.nanoTime();
+                for (int i = 0; i < m; i++) {
+                    int row = order[b + i];
+                    System.arraycopy(shard.features.data, shard.features.index(row, 0),
+                            batchX.data, batchX.index(i, 0), batchX.cols);
+                    System.arraycopy(shard.labels.data, shard.labels.index(row, 0),
+                            batchY.data, batchY.index(i, 0), batchY.cols);
+                }
+                loss += workspace.computeGradients(batchX.rowRange(0, m), batchY.rowRange(0, m),
+                        1.0f / ((float) m * batchesPerPush), true, weightGrads, biasGrads);
+                computeNanos += System.nanoTime() - start;
+                stats.samples += m;
+
+                if (++pending == batchesPerPush) {
+                    push(connection);
+                    pending = 0;
+                }
+            }
+            stats.lastEpochLoss = n > 0 ? (float) (loss / n) : 0.0f;
+        }
+        if (pending > 0) {
+            push(connection);
+        }
+    }
+
+    /**
+     * Encodes and pushes the accumulated gradient, then pulls if the local
+     * weights are too far behind (or the push was rejected).
+     */
+    private void push(ParameterServer.Connection connection) throws IOException {
+        long start = System.nanoTime();
+        for (int l = 0; l < layers.length; l++) {
+            float[] b = biasGrads[l];
+            int offset = biasOffsets[l];
+            for (int j = 0; j < b.length; j++) {
+                gradient[offset + j] += b[j];
+                b[j] = 0.0f;
+            }
+        }
+        int k = Math.max(1, (int) (parameterCount * (double) topKFraction));
+        ByteBuffer out = connection.begin(ParameterServer.PUSH, 4 + compression.maxEncodedBytes(parameterCount, k));
+        out.putInt(localVersion);
+        compression.encode(gradient, parameterCount, k, scratch, out);
+        compressNanos += System.nanoTime() - start;
+
+        start = System.nanoTime();
+        connection.send();
+        ByteBuffer ack = connection.receive(ParameterServer.ACK);
+        boolean applied = ack.get() != 0;
+        serverVersion = ack.getInt();
+        communicationNanos += System.nanoTime() - start;
+        stats.pushes++;
+
+        if (!applied) {
+            // Computed on weights that are too old: drop it, including any residual
+            stats.rejectedPushes++;
+            Arrays.fill(gradient, 0.0f);
+            pull(connection);
+        } else if (serverVersion - localVersion >= maxStaleness) {
+            pull(connection);
+        }
+    }
+
+    private void pull(ParameterServer.Connection connection) throws IOException {
+        long start = System.nanoTime();
+        connection.begin(ParameterServer.PULL, 0);
+        connection.send();
+        ByteBuffer in = connection.receive(ParameterServer.PARAMS);
+        localVersion = in.getInt();
+        serverVersion = localVersion;
+        for (Layer layer : layers) {
+            Matrix w = layer.weights;
+            for (int r = 0; r < w.rows; r++) {
+                ParameterServer.Connection.getFloats(in, w.data, w.index(r, 0), w.cols);
+            }
+            ParameterServer.Connection.getFloats(in, layer.biases, 0, layer.outputSize);
+        }
+        communicationNanos += System.nanoTime() - start;
+        stats.pulls++;
+    }
+
+    private void readConfig(ByteBuffer in) throws IOException {
+        in.getInt(); // worker id
+        in.getInt(); // number of workers
+        epochs = in.getInt();
+        batchSize = in.getInt();
+        batchesPerPush = in.getInt();
+        maxStaleness = in.getInt();
+        compression = GradientCompression.values()[in.getInt()];
+        topKFraction = in.getFloat();
+        random = new Random(in.getLong());
+
+        // Architecture
+        layers = new Layer[in.getInt()];
+        weightGrads = new Matrix[layers.length];
+        biasGrads = new float[layers.length][];
+        biasOffsets = new int[layers.length];
+        int[] weightOffsets = new int[layers.length];
+        for (int l = 0; l < layers.length; l++) {
+            int inputSize = in.getInt();
+            int outputSize = in.getInt();
+            byte[] name = new byte[in.getInt()];
+            in.get(name);
+            layers[l] = new Layer(inputSize, outputSize, Activation.forName(new String(name, StandardCharsets.UTF_8)));
+            weightOffsets[l] = parameterCount;
+            parameterCount += inputSize * outputSize;
+            biasOffsets[l] = parameterCount;
+            parameterCount += outputSize;
+        }
+        gradient = new float[parameterCount];
+        scratch = compression == GradientCompression.TOP_K ? new float[parameterCount] : null;
+        for (int l = 0; l < layers.length; l++) {
+            int outputSize = layers[l].outputSize;
+            weightGrads[l] = new Matrix(gradient, weightOffsets[l], layers[l].inputSize, outputSize, outputSize);
+            biasGrads[l] = new float[outputSize];
+        }
+        workspace = new BatchWorkspace(layers);
+
+        // Shard shape; the rows follow in SHARD frames
+        int rows = in.getInt();
+        int inputs = in.getInt();
+        int outputs = in.getInt();
+        if ((long) rows * Math.max(inputs, outputs) > Integer.MAX_VALUE) {
+            throw new IOException("Shard of " + rows + " rows does not fit in one matrix");
+        }
+        shard = new TrainDataset(rows, inputs, outputs);
+    }
+
+    /** Receives the shard rows frame by frame */
+    private void readShard(ParameterServer.Connection connection) throws IOException {
+        int inputs = shard.features.cols;
+        int outputs = shard.labels.cols;
+        for (int row = 0; row < shard.numExamples; ) {
+            ByteBuffer in = connection.receive(ParameterServer.SHARD);
+            int count = in.getInt();
+            if (count <= 0 || count > shard.numExamples - row) {
+                throw new IOException("Unexpected shard frame of " + count + " rows");
+            }
+            ParameterServer.Connection.getFloats(in, shard.features.data, row * inputs, count * inputs);
+            ParameterServer.Connection.getFloats(in, shard.labels.data, row * outputs, count * outputs);
+            row += count;
+        }
+    }
+
+    private void sendDone(ParameterServer.Connection connection) throws IOException {
+        ByteBuffer out = connection.begin(ParameterServer.DONE, 64);
+        out.putLong(stats.samples);
+        out.putInt(stats.pushes);
+        out.putInt(stats.rejectedPushes);
+        out.putInt(stats.pulls);
+        out.putLong(computeNanos);
+        out.putLong(compressNanos);
+        out.putLong(communicationNanos);
+        out.putLong(stats.bytesSent);
+        out.putLong(stats.bytesReceived);
+        out.putFloat(stats.lastEpochLoss);
+        connection.send();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ParameterServerWorker <host> <port>");
+            System.exit(2);
+        }
+        new ParameterServerWorker(args[0], Integer.parseInt(args[1])).run();
+    }
+}
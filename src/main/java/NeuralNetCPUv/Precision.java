@@ -0,0 +1,91 @@
+package NeuralNetCPUv;
+
+/**
+ * Storage formats for network parameters.
+ *
+ * FP16 (IEEE 754 half): 1 sign, 5 exponent, 10 mantissa bits.
+ *   About 3 decimal digits, range +-65504; tiny weights lose precision.
+ * BF16 (bfloat16): the upper 16 bits of a float32.
+ *   Same range as float32 but only about 2-3 decimal digits.
+ *
+ * Both take 2 bytes per value instead of 4. Values are always widened
+ * back to float32 before any arithmetic.
+ */
+public enum Precision {
+
+    /** 32-bit float (no compression) */
+    FP32(4),
+
+    /** IEEE 754 half precision */
+    FP16(2),
+
+    /** bfloat16 (truncated float32 with round-to-nearest-even) */
+    BF16(2);
+
+    /** Bytes used per stored value */
+    public final int bytesPerValue;
+
+    Precision(int bytesPerValue) {
+        this.bytesPerValue = bytesPerValue;
+    }
+
+    /**
+     * Narrows a float to this 16-bit format.
+     *
+     * @throws IllegalStateException for FP32 (nothing to narrow to)
+     */
+    public short encode(float value) {
+        switch (this) {
+            case FP16:
+                return Float.floatToFloat16(value);
+            case BF16:
+                return floatToBf16(value);
+            default:
+                throw new IllegalStateException("FP32 values are not stored as shorts");
+        }
+    }
+
+    /**
+     * Widens a 16-bit value of this format back to float.
+     */
+    public float decode(short bits) {
+        switch (this) {
+            case FP16:
+                return Float.float16ToFloat(bits);
+            case BF16:
+                return bf16ToFloat(bits);
+            default:
+                throw new IllegalStateException("FP32 values are not stored as shorts");
+        }
+    }
+
+    /**
+     * float32 -> bfloat16 with round-to-nearest-even (NaN stays NaN).
+     */
+    public static short floatToBf16(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        if (Float.isNaN(value)) {
+            return (short) ((bits >>> 16) | 0x0040); // keep it a quiet NaN
+        }
+        int roundingBias = 0x7FFF + ((bits >>> 16) & 1);
+        return (short) ((bits + roundingBias) >>> 16);
+    }
+
+    /**
+     * bfloat16 -> float32 (exact: just shift into the upper half).
+     */
+    public static float bf16ToFloat(short bits) {
+        return Float.intBitsToFloat((bits & 0xFFFF) << 16);
+    }
+
+    /**
+     * Narrows a whole array.
+     */
+    public short[] encode(float[] values, int offset, int length) {
+        short[] out = new short[length];
+        for (int i = 0; i < length; i++) {
+            out[i] = encode(values[offset + i]);
+        }
+        return out;
+    }
+}
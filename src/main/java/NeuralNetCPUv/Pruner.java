@@ -0,0 +1,252 @@
+package NeuralNetCPUv;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Magnitude pruning tool.
+ *
+ * Steps:
+ *  1. Pruning: in every layer the smallest-magnitude weights are set to 0
+ *     until the layer reaches the target sparsity (biases are kept).
+ *     Either one-shot (prune) or gradually with fine-tuning in between
+ *     (pruneIteratively).
+ *  2. Conversion: new SparseNetwork(network) stores the pruned layers as
+ *     CSR and runs them with the sparse GEMV kernel.
+ *  3. Check: compare accuracy (NeuralNetwork.evaluate) and measured
+ *     per-sample latency of the dense and the sparse model.
+ */
+public class Pruner {
+
+    /** Sink for benchmark results, so the timed predictions are not optimized away */
+    private static volatile float sink;
+
+    /**
+     * Zeroes the smallest-magnitude weights of a layer so that at least a
+     * fraction sparsity of its weights are 0.
+     *
+     * @param layer    layer to prune in place
+     * @param sparsity target fraction of zero weights in [0, 1]
+     * @return number of zero weights afterwards
+     */
+    public static int pruneLayer(Layer layer, float sparsity) {
+        if (sparsity < 0.0f || sparsity > 1.0f) {
+            throw new IllegalArgumentException("Sparsity must be in [0, 1]");
+        }
+        Matrix w = layer.weights;
+        int n = w.rows * w.cols;
+        int target = Math.round(sparsity * n);
+        if (target == 0) {
+            return n - nonZeros(layer);
+        }
+
+        // Step 1: magnitude of the target-th smallest weight
+        float[] magnitudes = new float[n];
+        for (int i = 0; i < w.rows; i++) {
+            int row = w.index(i, 0);
+            for (int j = 0; j < w.cols; j++) {
+                magnitudes[i * w.cols + j] = Math.abs(w.data[row + j]);
+            }
+        }
+        Arrays.sort(magnitudes);
+        float threshold = magnitudes[target - 1];
+
+        // Step 2: zero everything below the threshold, then ties until the target is met
+        int zeros = 0;
+        for (int i = 0; i < w.rows; i++) {
+            int row = w.index(i, 0);
+            for (int j = 0; j < w.cols; j++) {
+                if (Math.abs(w.data[row + j]) < threshold) {
+                    w.data[row + j] = 0.0f;
+                    zeros++;
+                }
+            }
+        }
+        for (int i = 0; i < w.rows && zeros < target; i++) {
+            int row = w.index(i, 0);
+            for (int j = 0; j < w.cols && zeros < target; j++) {
+                if (w.data[row + j] != 0.0f && Math.abs(w.data[row + j]) == threshold) {
+                    w.data[row + j] = 0.0f;
+                    zeros++;
+                }
+            }
+        }
+        return n - nonZeros(layer);
+    }
+
+    /**
+     * One-shot pruning of every layer to the same sparsity.
+     *
+     * @param network  network to prune in place
+     * @param sparsity target fraction of zero weights per layer
+     */
+    public static void prune(NeuralNetwork network, float sparsity) {
+        for (Layer layer : network.layers) {
+            pruneLayer(layer, sparsity);
+        }
+    }
+
+    /**
+     * Gradual pruning interleaved with fine-tuning. The sparsity follows the
+     * cubic schedule s_t = sparsity * (1 - (1 - t / steps)^3), t = 1 .. steps,
+     * which prunes fast while there are many redundant weights and slowly
+     * near the target. After every fine-tuning epoch the network is pruned
+     * again to the current s_t, so weights that training revived are removed
+     * (or, if they became important, replace smaller ones).
+     *
+     * @param network       network to prune in place
+     * @param train         fine-tuning data
+     * @param sparsity      final fraction of zero weights per layer
+     * @param steps         number of pruning steps
+     * @param epochsPerStep fine-tuning epochs after each step
+     */
+    public static void pruneIteratively(NeuralNetwork network, TrainDataset train, float sparsity,
+                                        int steps, int epochsPerStep) {
+        for (int t = 1; t <= steps; t++) {
+            double remaining = 1.0 - (double) t / steps;
+            float target = (float) (sparsity * (1.0 - remaining * remaining * remaining));
+            prune(network, target);
+            for (int e = 0; e < epochsPerStep; e++) {
+                network.train(train, 1);
+                prune(network, target);
+            }
+        }
+    }
+
+    /** Number of non-zero weights of a layer */
+    public static int nonZeros(Layer layer) {
+        Matrix w = layer.weights;
+        int count = 0;
+        for (int i = 0; i < w.rows; i++) {
+            int row = w.index(i, 0);
+            for (int j = 0; j < w.cols; j++) {
+                if (w.data[row + j] != 0.0f) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Fraction of zero weights of a layer */
+    public static float sparsity(Layer layer) {
+        long total = (long) layer.inputSize * layer.outputSize;
+        return total == 0 ? 0.0f : 1.0f - (float) nonZeros(layer) / total;
+    }
+
+    /** Fraction of zero weights over all layers */
+    public static float sparsity(NeuralNetwork network) {
+        long total = 0;
+        long nonZero = 0;
+        for (Layer layer : network.layers) {
+            total += (long) layer.inputSize * layer.outputSize;
+            nonZero += nonZeros(layer);
+        }
+        return total == 0 ? 0.0f : 1.0f - (float) nonZero / total;
+    }
+
+    // ============================
+    // Accuracy and latency check
+    // ============================
+
+    /**
+     * Dense vs pruned vs sparse-kernel comparison on a test dataset.
+     */
+    public static class Report {
+        public float sparsity;             // fraction of zero weights over all layers
+        public float[] layerSparsity;
+        public float baselineAccuracy;     // before pruning
+        public float prunedAccuracy;       // pruned network, dense kernels (NeuralNetwork.evaluate)
+        public float sparseAccuracy;       // SparseNetwork
+        public double denseMicros;         // per-sample latency, dense kernels
+        public double sparseMicros;        // per-sample latency, sparse kernels
+        public long denseBytes;
+        public long sparseBytes;
+
+        /** Accuracy change caused by pruning (negative = worse) */
+        public float accuracyDelta() {
+            return prunedAccuracy - baselineAccuracy;
+        }
+
+        /** Dense latency / sparse latency */
+        public double speedup() {
+            return denseMicros / sparseMicros;
+        }
+
+        /** Print the report in a readable format */
+        public void print() {
+            System.out.println("Pruning report:");
+            System.out.printf("  Sparsity:         %.1f%% overall, per layer:", sparsity * 100);
+            for (float s : layerSparsity) {
+                System.out.printf(" %.1f%%", s * 100);
+            }
+            System.out.println();
+            System.out.printf("  Baseline accuracy: %.2f%%%n", baselineAccuracy * 100);
+            System.out.printf("  Pruned accuracy:   %.2f%%  (delta %+.2f pts), sparse kernels %.2f%%%n",
+                    prunedAccuracy * 100, accuracyDelta() * 100, sparseAccuracy * 100);
+            System.out.printf("  Latency:           %.2f us dense -> %.2f us sparse (%.2fx)%n",
+                    denseMicros, sparseMicros, speedup());
+            System.out.printf("  Parameter bytes:   %d -> %d (%.1f%%)%n",
+                    denseBytes, sparseBytes, 100.0 * sparseBytes / denseBytes);
+        }
+    }
+
+    /**
+     * Evaluates and times the pruned network with dense and sparse kernels.
+     *
+     * @param baselineAccuracy accuracy of the network before pruning
+     * @param pruned           pruned network
+     * @param sparse           SparseNetwork built from the pruned network
+     * @param test             data used for accuracy and latency
+     */
+    public static Report compare(float baselineAccuracy, NeuralNetwork pruned, SparseNetwork sparse, TestDataset test) {
+        Report report = new Report();
+        report.sparsity = sparsity(pruned);
+        report.layerSparsity = new float[pruned.layers.length];
+        for (int l = 0; l < pruned.layers.length; l++) {
+            report.layerSparsity[l] = sparsity(pruned.layers[l]);
+        }
+        report.baselineAccuracy = baselineAccuracy;
+        report.prunedAccuracy = NeuralNetwork.evaluate(test, pruned);
+        report.sparseAccuracy = sparse.evaluate(test);
+
+        InferenceSession session = pruned.newSession();
+        float[] data = test.features.data;
+        report.denseMicros = measureMicros(test.numExamples,
+                i -> sink += session.predict(data, test.features.index(i, 0))[0]);
+        report.sparseMicros = measureMicros(test.numExamples,
+                i -> sink += sparse.predict(data, test.features.index(i, 0))[0]);
+
+        report.denseBytes = HalfPrecisionNetwork.parameterBytes(pruned);
+        report.sparseBytes = sparse.parameterBytes();
+        return report;
+    }
+
+    /**
+     * Average time per call of predict(i), cycling over the samples:
+     * 300 ms of warm-up (so the JIT has compiled the kernels), then passes
+     * until at least 300 ms have been timed.
+     */
+    private static double measureMicros(int samples, IntConsumer predict) {
+        if (samples == 0) {
+            return 0.0;
+        }
+        runFor(samples, predict, 300_000_000L);
+        long start = System.nanoTime();
+        long calls = runFor(samples, predict, 300_000_000L);
+        return (System.nanoTime() - start) / 1e3 / calls;
+    }
+
+    /** Full passes over the samples until nanos have elapsed; returns the number of calls */
+    private static long runFor(int samples, IntConsumer predict, long nanos) {
+        long calls = 0;
+        long start = System.nanoTime();
+        do {
+            for (int i = 0; i < samples; i++) {
+                predict.accept(i);
+            }
+            calls += samples;
+        } while (System.nanoTime() - start < nanos);
+        return calls;
+    }
+}
@@ -0,0 +1,188 @@
+package NeuralNetCPUv;
+
+/**
+ * Inference-only int8 copy of a NeuralNetwork (post-training quantization).
+ *
+ * Scheme (symmetric, per layer):
+ *  - Weights: one scale per output neuron ("per-channel"),
+ *      wScale[j] = max_i |W[i, j]| / 127,  Wq[j, i] = round(W[i, j] / wScale[j]).
+ *    Weights are stored transposed (outputSize x inputSize) so every output
+ *    neuron is one contiguous int8 dot product.
+ *  - Inputs: one scale per layer, calibrated from sample data,
+ *      xScale = max |x| / 127,  xq[i] = clamp(round(x[i] / xScale), -127, 127).
+ *  - Product: acc[j] = sum_i Wq[j, i] * xq[i] in int32, then dequantized
+ *      z[j] = acc[j] * xScale * wScale[j] + b[j] (biases stay float32).
+ *  - Activations and softmax run in float32 between layers.
+ *
+ * Weights take 1 byte instead of 4. Build one with Quantizer.quantize(...);
+ * forward buffers are reused, so an instance must not be shared between
+ * threads.
+ */
+public class QuantizedNetwork {
+
+    /** Largest magnitude of a quantized value (symmetric range [-127, 127]) */
+    public static final int QMAX = 127;
+
+    /** Inputs per layer */
+    public final int[] inputSizes;
+
+    /** Outputs per layer */
+    public final int[] outputSizes;
+
+    /** Transposed int8 weights per layer, row j = weights of output neuron j */
+    public final byte[][] weights;
+
+    /** Per-output-neuron weight scales per layer */
+    public final float[][] weightScales;
+
+    /** Input scale per layer (from calibration) */
+    public final float[] inputScales;
+
+    /** Float32 biases per layer */
+    public final float[][] biases;
+
+    /** Activation function per layer */
+    private final Activation[] activations;
+
+    /** Quantized input and output buffer per layer, and the softmax output */
+    private final byte[][] quantizedInputs;
+    private final float[][] outputs;
+    private final float[] probabilities;
+
+    /**
+     * Quantizes the weights of a network using already calibrated input ranges.
+     *
+     * @param source      trained network (left unchanged)
+     * @param inputRanges max |input| seen for each layer during calibration
+     */
+    public QuantizedNetwork(NeuralNetwork source, float[] inputRanges) {
+        int n = source.layers.length;
+        if (inputRanges.length != n) {
+            throw new IllegalArgumentException("Need one input range per layer");
+        }
+        this.inputSizes = new int[n];
+        this.outputSizes = new int[n];
+        this.weights = new byte[n][];
+        this.weightScales = new float[n][];
+        this.inputScales = new float[n];
+        this.biases = new float[n][];
+        this.activations = new Activation[n];
+        this.quantizedInputs = new byte[n][];
+        this.outputs = new float[n][];
+
+        for (int l = 0; l < n; l++) {
+            Layer layer = source.layers[l];
+            int in = layer.inputSize;
+            int out = layer.outputSize;
+            quantizedInputs[l] = new byte[in];
+            outputs[l] = new float[out];
+            inputSizes[l] = in;
+            outputSizes[l] = out;
+            activations[l] = layer.activation;
+            biases[l] = layer.biases.clone();
+            inputScales[l] = inputRanges[l] > 0.0f ? inputRanges[l] / QMAX : 1.0f;
+
+            // Step 1: per-output-neuron scale from the largest weight in that column
+            float[] scales = new float[out];
+            for (int i = 0; i < in; i++) {
+                int row = layer.weights.index(i, 0);
+                for (int j = 0; j < out; j++) {
+                    scales[j] = Math.max(scales[j], Math.abs(layer.weights.data[row + j]));
+                }
+            }
+            for (int j = 0; j < out; j++) {
+                scales[j] = scales[j] > 0.0f ? scales[j] / QMAX : 1.0f;
+            }
+
+            // Step 2: quantize and transpose
+            byte[] q = new byte[out * in];
+            for (int i = 0; i < in; i++) {
+                int row = layer.weights.index(i, 0);
+                for (int j = 0; j < out; j++) {
+                    q[j * in + i] = quantize(layer.weights.data[row + j], scales[j]);
+                }
+            }
+            weights[l] = q;
+            weightScales[l] = scales;
+        }
+        this.probabilities = new float[outputSizes[n - 1]];
+    }
+
+    /** Rounds value / scale to the nearest int8 in [-127, 127] */
+    static byte quantize(float value, float scale) {
+        int q = Math.round(value / scale);
+        return (byte) Math.max(-QMAX, Math.min(QMAX, q));
+    }
+
+    /**
+     * Forward pass returning class probabilities (softmax output). The
+     * returned array is reused by the next call.
+     */
+    public float[] forward(float[] input) {
+        return forward(input, 0);
+    }
+
+    /**
+     * Forward pass for an input stored at an offset inside a larger array.
+     */
+    public float[] forward(float[] input, int inputOffset) {
+        Kernels kernels = Kernels.get();
+        float[] x = input;
+        int xOff = inputOffset;
+
+        for (int l = 0; l < weights.length; l++) {
+            int in = inputSizes[l];
+            int out = outputSizes[l];
+            float xScale = inputScales[l];
+
+            // Step 1: quantize the layer input
+            byte[] xq = quantizedInputs[l];
+            for (int i = 0; i < in; i++) {
+                xq[i] = quantize(x[xOff + i], xScale);
+            }
+
+            // Step 2: int8 x int8 -> int32 dot per output, dequantize, add bias
+            float[] z = outputs[l];
+            byte[] w = weights[l];
+            float[] scales = weightScales[l];
+            for (int j = 0; j < out; j++) {
+                int acc = kernels.dotInt8(w, j * in, xq, 0, in);
+                z[j] = acc * xScale * scales[j] + biases[l][j];
+            }
+
+            // Step 3: activation
+            activations[l].apply(z, z, out);
+
+            x = z;
+            xOff = 0;
+        }
+
+        Activations.softmaxInto(x, 0, probabilities, 0, probabilities.length);
+        return probabilities;
+    }
+
+    /**
+     * Classification accuracy on a test dataset.
+     */
+    public float evaluate(TestDataset test) {
+        int correct = 0;
+        for (int i = 0; i < test.numExamples; i++) {
+            float[] pred = forward(test.features.data, test.features.index(i, 0));
+            int label = NeuralNetwork.argMax(test.labels.data, test.labels.index(i, 0), test.labels.cols);
+            if (NeuralNetwork.argMax(pred) == label) {
+                correct++;
+            }
+        }
+        return (float) correct / test.numExamples;
+    }
+
+    /** Bytes used by the stored parameters (int8 weights + float scales and biases) */
+    public long parameterBytes() {
+        long bytes = 0;
+        for (int l = 0; l < weights.length; l++) {
+            bytes += weights[l].length;
+            bytes += 4L * (weightScales[l].length + biases[l].length + 1);
+        }
+        return bytes;
+    }
+}
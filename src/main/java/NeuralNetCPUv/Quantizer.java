@@ -0,0 +1,128 @@
+package NeuralNetCPUv;
+
+/**
+ * Post-training int8 quantization tool.
+ *
+ * Steps:
+ *  1. Calibration: run the float32 network on sample inputs and record
+ *     the largest |value| entering every layer.
+ *  2. Quantization: build a QuantizedNetwork with per-channel weight
+ *     scales and the calibrated input scales.
+ *  3. Check: compare accuracy against the float32 model with
+ *     NeuralNetwork.evaluate.
+ */
+public class Quantizer {
+
+    /**
+     * Records the largest |input| of every layer over the first
+     * numSamples samples of a dataset.
+     *
+     * @param network    float32 network
+     * @param data       calibration data
+     * @param numSamples number of samples to use (clamped to the dataset size)
+     * @return max |input| per layer
+     */
+    public static float[] calibrate(NeuralNetwork network, TestDataset data, int numSamples) {
+        int count = Math.min(numSamples, data.numExamples);
+        float[] ranges = new float[network.layers.length];
+
+        for (int s = 0; s < count; s++) {
+            // Step 1: the first layer's input is the sample itself
+            int offset = data.features.index(s, 0);
+            for (int i = 0; i < data.features.cols; i++) {
+                ranges[0] = Math.max(ranges[0], Math.abs(data.features.data[offset + i]));
+            }
+
+            // Step 2: every later layer's input is the previous layer's output
+            network.forward(data.features.data, offset);
+            for (int l = 1; l < network.layers.length; l++) {
+                float[] prevOut = network.layers[l - 1].lastOutput;
+                for (float v : prevOut) {
+                    ranges[l] = Math.max(ranges[l], Math.abs(v));
+                }
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Calibrates on a sample of the data and quantizes the network.
+     *
+     * @param network    trained float32 network (left unchanged)
+     * @param data       calibration data
+     * @param numSamples number of calibration samples
+     * @return int8 inference model
+     */
+    public static QuantizedNetwork quantize(NeuralNetwork network, TestDataset data, int numSamples) {
+        return new QuantizedNetwork(network, calibrate(network, data, numSamples));
+    }
+
+    // ============================
+    // Accuracy check
+    // ============================
+
+    /**
+     * Float32 vs int8 comparison on a test dataset.
+     */
+    public static class Report {
+        public float fp32Accuracy;
+        public float int8Accuracy;
+        public long fp32Bytes;
+        public long int8Bytes;
+
+        /** Accuracy lost by quantization (positive = worse) */
+        public float accuracyDrop() {
+            return fp32Accuracy - int8Accuracy;
+        }
+
+        /** True when the accuracy drop is at most maxDrop (e.g. 0.01 = 1 point) */
+        public boolean withinTolerance(float maxDrop) {
+            return accuracyDrop() <= maxDrop;
+        }
+
+        /** Print the report in a readable format */
+        public void print() {
+            System.out.println("Quantization report (INT8):");
+            System.out.printf("  FP32 accuracy:   %.2f%%%n", fp32Accuracy * 100);
+            System.out.printf("  INT8 accuracy:   %.2f%%  (delta %+.2f pts)%n",
+                    int8Accuracy * 100, (int8Accuracy - fp32Accuracy) * 100);
+            System.out.printf("  Parameter bytes: %d -> %d (%.1f%%)%n",
+                    fp32Bytes, int8Bytes, 100.0 * int8Bytes / fp32Bytes);
+        }
+    }
+
+    /**
+     * Evaluates both models on the same test data.
+     */
+    public static Report compare(NeuralNetwork network, QuantizedNetwork quantized, TestDataset test) {
+        Report report = new Report();
+        report.fp32Accuracy = NeuralNetwork.evaluate(test, network);
+        report.int8Accuracy = quantized.evaluate(test);
+        report.fp32Bytes = HalfPrecisionNetwork.parameterBytes(network);
+        report.int8Bytes = quantized.parameterBytes();
+        return report;
+    }
+
+    /**
+     * Quantizes and refuses the result if it loses more than maxDrop accuracy.
+     *
+     * @param network     trained float32 network
+     * @param calibration calibration data
+     * @param numSamples  number of calibration samples
+     * @param test        data used for the accuracy check
+     * @param maxDrop     largest acceptable accuracy loss (fraction, e.g. 0.01)
+     * @return the int8 model
+     * @throws IllegalStateException if accuracy drops by more than maxDrop
+     */
+    public static QuantizedNetwork quantizeChecked(NeuralNetwork network, TestDataset calibration, int numSamples,
+                                                   TestDataset test, float maxDrop) {
+        QuantizedNetwork quantized = quantize(network, calibration, numSamples);
+        Report report = compare(network, quantized, test);
+        if (!report.withinTolerance(maxDrop)) {
+            throw new IllegalStateException(String.format(
+                    "INT8 accuracy dropped by %.2f pts (limit %.2f)",
+                    report.accuracyDrop() * 100, maxDrop * 100));
+        }
+        return quantized;
+    }
+}
@@ -0,0 +1,34 @@
+package NeuralNetCPUv;
+
+import java.util.Random;
+
+/**
+ * A uniformly random permutation of 0 .. n-1 every epoch.
+ *
+ * Each epoch shuffles the previous permutation again in place
+ * (Fisher-Yates), which is as random as starting from the identity and
+ * needs no reset.
+ */
+public class RandomSampler extends Sampler {
+
+    private final Random random;
+
+    public RandomSampler(int n, Random random) {
+        super(n);
+        this.random = random;
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "Random(n=" + order.length + ")";
+    }
+
+    @Override
+    public int[] nextEpoch() {
+        RandomUtil.shuffle(order, random);
+        return order;
+    }
+}
@@ -10,6 +10,11 @@ public class RandomUtil {
         rand.setSeed(seed);
     }
 
+    /** The shared generator seeded by setSeed (default samplers draw from it) */
+    static Random generator() {
+        return rand;
+    }
+
     /**
      * Shuffles two arrays in parallel (keeps inputs and outputs aligned).
      * Uses Fisher–Yates shuffle algorithm.
@@ -33,6 +38,41 @@ public class RandomUtil {
             outputs[j] = tmpOutput;
         }
     }
-}
 
+    /**
+     * Shuffles the rows of two matrices in parallel (keeps inputs and outputs aligned).
+     * Rows are swapped inside the flat storage, so no row arrays are allocated.
+     */
+    public static void shuffle(Matrix inputs, Matrix outputs) {
+        if (inputs.rows != outputs.rows) {
+            throw new IllegalArgumentException("Inputs and outputs must have the same length.");
+        }
+
+        for (int i = inputs.rows - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            inputs.swapRows(i, j);
+            outputs.swapRows(i, j);
+        }
+    }
+
+    /**
+     * Shuffles an index array in place (Fisher–Yates).
+     * Used to visit samples in random order without moving any data.
+     */
+    public static void shuffle(int[] order) {
+        shuffle(order, rand);
+    }
 
+    /**
+     * Shuffles an index array in place with a caller-owned generator
+     * (e.g. one generator per worker thread).
+     */
+    public static void shuffle(int[] order, Random random) {
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package NeuralNetCPUv;
+
+/**
+ * RMSprop with optional momentum.
+ *
+ *   s = rho * s + (1 - rho) * g^2
+ *   without momentum: p -= lr * g / (sqrt(s) + eps)
+ *   with momentum:    b = mu * b + g / (sqrt(s) + eps),  p -= lr * b
+ */
+public class RmsPropOptimizer extends Optimizer {
+
+    public final float rho;
+    public final float epsilon;
+    public final float momentum;
+
+    /**
+     * @param learningRate step size
+     * @param rho          decay of the squared-gradient average (e.g. 0.9)
+     * @param epsilon      added to the denominator (e.g. 1e-8)
+     * @param momentum     momentum factor (0 = none)
+     */
+    public RmsPropOptimizer(float learningRate, float rho, float epsilon, float momentum) {
+        super(learningRate);
+        this.rho = rho;
+        this.epsilon = epsilon;
+        this.momentum = momentum;
+    }
+
+    @Override
+    public String name() {
+        return "RMSprop(lr=" + learningRate + ")";
+    }
+
+    @Override
+    protected int stateArrays() {
+        return momentum == 0.0f ? 1 : 2;
+    }
+
+    @Override
+    protected void update(float[] param, int pOff, float[] grad, int gOff,
+                          float[][] state, int sOff, int n) {
+        float[] s = state[0];
+        float lr = learningRate;
+        float r = rho;
+        float eps = epsilon;
+
+        if (momentum == 0.0f) {
+            for (int i = 0; i < n; i++) {
+                float g = grad[gOff + i];
+                float si = r * s[sOff + i] + (1.0f - r) * g * g;
+                s[sOff + i] = si;
+                param[pOff + i] -= lr * g / ((float) Math.sqrt(si) + eps);
+                grad[gOff + i] = 0.0f;
+            }
+            return;
+        }
+
+        float[] b = state[1];
+        float mu = momentum;
+        for (int i = 0; i < n; i++) {
+            float g = grad[gOff + i];
+            float si = r * s[sOff + i] + (1.0f - r) * g * g;
+            s[sOff + i] = si;
+            float bi = mu * b[sOff + i] + g / ((float) Math.sqrt(si) + eps);
+            b[sOff + i] = bi;
+            param[pOff + i] -= lr * bi;
+            grad[gOff + i] = 0.0f;
+        }
+    }
+}
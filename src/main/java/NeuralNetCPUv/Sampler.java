@@ -0,0 +1,133 @@
+package NeuralNetCPUv;
+
+import java.util.Random;
+
+/**
+ * Base class for the order in which training visits samples.
+ *
+ * Every epoch a sampler produces an int[] of row indices; training loops
+ * follow it indirectly (per-sample offsets, or gathering mini-batch rows
+ * into a batch buffer) instead of reordering the dataset. The dataset is
+ * never modified, so one TrainDataset can be shared by concurrent jobs,
+ * and an epoch costs O(size) int operations instead of row copies.
+ *
+ * Implementations:
+ *  - sequential: rows in storage order
+ *  - random:     a fresh permutation every epoch (Fisher-Yates)
+ *  - stratified: a permutation in which every class is spread evenly, so
+ *                each mini-batch has roughly the dataset's class mix
+ *  - weighted:   draws with replacement in proportion to per-row weights
+ *                (e.g. balancedWeights for imbalanced classes)
+ *
+ * The returned array is owned by the sampler and overwritten by the next
+ * call, and a sampler keeps a random state, so each training job needs its
+ * own instance.
+ */
+public abstract class Sampler {
+
+    /** Indices of the current epoch, reused between epochs */
+    protected final int[] order;
+
+    protected Sampler(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Sampler size must not be negative");
+        }
+        this.order = new int[size];
+    }
+
+    /** Name used in logs */
+    public abstract String name();
+
+    /**
+     * Produces the visiting order of the next epoch.
+     *
+     * @return row indices (owned by the sampler, overwritten by the next call)
+     */
+    public abstract int[] nextEpoch();
+
+    /** Number of indices per epoch */
+    public int size() {
+        return order.length;
+    }
+
+    // ============================
+    // Factories
+    // ============================
+
+    /** Rows 0 .. n-1 in order every epoch */
+    public static Sampler sequential(int n) {
+        return new SequentialSampler(n);
+    }
+
+    /**
+     * A new random permutation of 0 .. n-1 every epoch, drawn from
+     * RandomUtil's shared generator (so RandomUtil.setSeed makes it
+     * reproducible).
+     */
+    public static Sampler random(int n) {
+        return new RandomSampler(n, RandomUtil.generator());
+    }
+
+    /** Reproducible random permutations */
+    public static Sampler random(int n, long seed) {
+        return new RandomSampler(n, new Random(seed));
+    }
+
+    /** Random permutations drawn from a caller-owned generator */
+    public static Sampler random(int n, Random random) {
+        return new RandomSampler(n, random);
+    }
+
+    /** Class-stratified permutations of a one-hot labelled dataset */
+    public static Sampler stratified(Matrix labels, long seed) {
+        return new StratifiedSampler(classesOf(labels), new Random(seed));
+    }
+
+    /** Class-stratified permutations for explicit class ids */
+    public static Sampler stratified(int[] classes, long seed) {
+        return new StratifiedSampler(classes, new Random(seed));
+    }
+
+    /**
+     * Weighted sampling with replacement.
+     *
+     * @param weights         non-negative weight per row
+     * @param samplesPerEpoch number of draws per epoch
+     */
+    public static Sampler weighted(float[] weights, int samplesPerEpoch, long seed) {
+        return new WeightedSampler(weights, samplesPerEpoch, new Random(seed));
+    }
+
+    // ============================
+    // Helpers
+    // ============================
+
+    /** Class id (argmax of the label row) of every row */
+    public static int[] classesOf(Matrix labels) {
+        int[] classes = new int[labels.rows];
+        for (int i = 0; i < labels.rows; i++) {
+            classes[i] = NeuralNetwork.argMax(labels.data, labels.index(i, 0), labels.cols);
+        }
+        return classes;
+    }
+
+    /**
+     * Per-row weights 1 / (rows of its class), so weighted sampling draws
+     * every class equally often.
+     */
+    public static float[] balancedWeights(int[] classes) {
+        int numClasses = 0;
+        for (int c : classes) {
+            numClasses = Math.max(numClasses, c + 1);
+        }
+        int[] counts = new int[numClasses];
+        for (int c : classes) {
+            counts[c]++;
+        }
+        float[] weights = new float[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            weights[i] = 1.0f / counts[classes[i]];
+        }
+        return weights;
+    }
+}
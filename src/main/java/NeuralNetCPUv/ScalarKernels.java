@@ -0,0 +1,105 @@
+package NeuralNetCPUv;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Plain Java implementation of Kernels.
+ * Used when the Vector API is not available, or when forced for comparison.
+ */
+public class ScalarKernels extends Kernels {
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public boolean isSimd() {
+        return false;
+    }
+
+    @Override
+    public float dot(float[] a, int aOff, float[] b, int bOff, int n) {
+        float sum = 0.0f;
+        for (int i = 0; i < n; i++) {
+            sum += a[aOff + i] * b[bOff + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float sumOfSquares(float[] a, int aOff, int n) {
+        float sum = 0.0f;
+        for (int i = 0; i < n; i++) {
+            float v = a[aOff + i];
+            sum += v * v;
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n) {
+        for (int i = 0; i < n; i++) {
+            y[yOff + i] += alpha * x[xOff + i];
+        }
+    }
+
+    @Override
+    public void add(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+        for (int i = 0; i < n; i++) {
+            out[outOff + i] = a[aOff + i] + b[bOff + i];
+        }
+    }
+
+    @Override
+    public void subtract(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+        for (int i = 0; i < n; i++) {
+            out[outOff + i] = a[aOff + i] - b[bOff + i];
+        }
+    }
+
+    @Override
+    public void multiply(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+        for (int i = 0; i < n; i++) {
+            out[outOff + i] = a[aOff + i] * b[bOff + i];
+        }
+    }
+
+    @Override
+    public void divide(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+        for (int i = 0; i < n; i++) {
+            out[outOff + i] = a[aOff + i] / b[bOff + i];
+        }
+    }
+
+    @Override
+    public void scale(float[] a, int aOff, float scalar, float[] out, int outOff, int n) {
+        for (int i = 0; i < n; i++) {
+            out[outOff + i] = a[aOff + i] * scalar;
+        }
+    }
+
+    @Override
+    public float dot(MemorySegment a, long aOff, float[] b, int bOff, int n) {
+        float sum = 0.0f;
+        for (int i = 0; i < n; i++) {
+            sum += a.get(SEGMENT_FLOAT, aOff + 4L * i) * b[bOff + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(float alpha, MemorySegment x, long xOff, float[] y, int yOff, int n) {
+        for (int i = 0; i < n; i++) {
+            y[yOff + i] += alpha * x.get(SEGMENT_FLOAT, xOff + 4L * i);
+        }
+    }
+
+    @Override
+    public void axpy(float alpha, MemorySegment x, long xOff, MemorySegment y, long yOff, int n) {
+        for (int i = 0; i < n; i++) {
+            long yi = yOff + 4L * i;
+            y.set(SEGMENT_FLOAT, yi, y.get(SEGMENT_FLOAT, yi) + alpha * x.get(SEGMENT_FLOAT, xOff + 4L * i));
+        }
+    }
+}
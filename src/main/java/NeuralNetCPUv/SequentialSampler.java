@@ -0,0 +1,25 @@
+package NeuralNetCPUv;
+
+/**
+ * Visits rows 0 .. n-1 in storage order every epoch (e.g. for evaluation
+ * or for data that is already shuffled on disk).
+ */
+public class SequentialSampler extends Sampler {
+
+    public SequentialSampler(int n) {
+        super(n);
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "Sequential(n=" + order.length + ")";
+    }
+
+    @Override
+    public int[] nextEpoch() {
+        return order;
+    }
+}
@@ -0,0 +1,82 @@
+package NeuralNetCPUv;
+
+/**
+ * Stochastic gradient descent with optional momentum, Nesterov momentum
+ * and L2 weight decay.
+ *
+ * With g = grad + weightDecay * p:
+ *  - plain:    p -= lr * g
+ *  - momentum: v = mu * v + g,  p -= lr * v
+ *  - Nesterov: v = mu * v + g,  p -= lr * (g + mu * v)
+ */
+public class SgdOptimizer extends Optimizer {
+
+    public final float momentum;
+    public final boolean nesterov;
+    public final float weightDecay;
+
+    /**
+     * @param learningRate step size
+     * @param momentum     momentum factor mu (0 = plain SGD)
+     * @param nesterov     use Nesterov momentum
+     * @param weightDecay  L2 penalty added to the gradient (0 = none)
+     */
+    public SgdOptimizer(float learningRate, float momentum, boolean nesterov, float weightDecay) {
+        super(learningRate);
+        if (nesterov && momentum <= 0.0f) {
+            throw new IllegalArgumentException("Nesterov momentum needs momentum > 0");
+        }
+        this.momentum = momentum;
+        this.nesterov = nesterov;
+        this.weightDecay = weightDecay;
+    }
+
+    @Override
+    public String name() {
+        if (momentum == 0.0f) {
+            return "SGD(lr=" + learningRate + ")";
+        }
+        return (nesterov ? "Nesterov" : "Momentum") + "(lr=" + learningRate + ", mu=" + momentum + ")";
+    }
+
+    @Override
+    protected int stateArrays() {
+        return momentum == 0.0f ? 0 : 1;
+    }
+
+    @Override
+    protected void update(float[] param, int pOff, float[] grad, int gOff,
+                          float[][] state, int sOff, int n) {
+        float lr = learningRate;
+        float wd = weightDecay;
+
+        if (momentum == 0.0f) {
+            for (int i = 0; i < n; i++) {
+                float g = grad[gOff + i] + wd * param[pOff + i];
+                param[pOff + i] -= lr * g;
+                grad[gOff + i] = 0.0f;
+            }
+            return;
+        }
+
+        float mu = momentum;
+        float[] v = state[0];
+        if (nesterov) {
+            for (int i = 0; i < n; i++) {
+                float g = grad[gOff + i] + wd * param[pOff + i];
+                float vi = mu * v[sOff + i] + g;
+                v[sOff + i] = vi;
+                param[pOff + i] -= lr * (g + mu * vi);
+                grad[gOff + i] = 0.0f;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                float g = grad[gOff + i] + wd * param[pOff + i];
+                float vi = mu * v[sOff + i] + g;
+                v[sOff + i] = vi;
+                param[pOff + i] -= lr * vi;
+                grad[gOff + i] = 0.0f;
+            }
+        }
+    }
+}
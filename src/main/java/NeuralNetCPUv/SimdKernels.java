@@ -0,0 +1,439 @@
+package NeuralNetCPUv;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementation of Kernels built on the JDK Vector API.
+ *
+ * Uses the platform's preferred float species (e.g. 8 lanes on AVX2,
+ * 16 on AVX-512). The main loop runs over full vectors; the remaining
+ * 0 .. lanes-1 elements are handled by one masked iteration instead of
+ * a scalar tail loop.
+ *
+ * Loaded reflectively by Kernels, so this class is only touched when
+ * the jdk.incubator.vector module is present.
+ */
+public class SimdKernels extends Kernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /** Ints with the same lane count as SPECIES (for widening 16-bit values) */
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+
+    /** Shorts with the same lane count as SPECIES (half the bit width) */
+    private static final VectorSpecies<Short> SHORT_SPECIES =
+            VectorSpecies.of(short.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+
+    /**
+     * Bytes for the int8 dot: a quarter of the int width (same lane count),
+     * but at least 64 bits, the smallest shape that always exists (at
+     * 128 bits and below one byte vector feeds several int vectors).
+     */
+    private static final VectorSpecies<Byte> BYTE_SPECIES =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, INT_SPECIES.vectorBitSize() / 4)));
+
+    /** Int vectors per byte vector in dotInt8 */
+    private static final int BYTE_PARTS = BYTE_SPECIES.length() / INT_SPECIES.length();
+
+    /** Off-heap floats are always little-endian (see Kernels.SEGMENT_FLOAT) */
+    private static final ByteOrder LE = ByteOrder.LITTLE_ENDIAN;
+
+    @Override
+    public String name() {
+        return "simd(" + SPECIES.length() + " lanes)";
+    }
+
+    @Override
+    public boolean isSimd() {
+        return true;
+    }
+
+    @Override
+    public float dot(float[] a, int aOff, float[] b, int bOff, int n) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOff + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i);
+            acc = va.fma(vb, acc);
+        }
+        if (i < n) {
+            VectorMask<Float> m = SPECIES.indexInRange(i, n);
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOff + i, m);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i, m);
+            acc = va.fma(vb, acc);
+        }
+        return acc.reduceLanes(VectorOperators.ADD);
+    }
+
+    @Override
+    public float sumOfSquares(float[] a, int aOff, int n) {
+        return dot(a, aOff, a, aOff, n);
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n) {
+        FloatVector va = FloatVector.broadcast(SPECIES, alpha);
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, xOff + i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, yOff + i);
+            vx.fma(va, vy).intoArray(y, yOff + i);
+        }
+        if (i < n) {
+            VectorMask<Float> m = SPECIES.indexInRange(i, n);
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, xOff + i, m);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, yOff + i, m);
+            vx.fma(va, vy).intoArray(y, yOff + i, m);
+        }
+    }
+
+    @Override
+    public void add(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+        binary(VectorOperators.ADD, a, aOff, b, bOff, out, outOff, n);
+    }
+
+    @Override
+    public void subtract(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+        binary(VectorOperators.SUB, a, aOff, b, bOff, out, outOff, n);
+    }
+
+    @Override
+    public void multiply(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+        binary(VectorOperators.MUL, a, aOff, b, bOff, out, outOff, n);
+    }
+
+    @Override
+    public void divide(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+        binary(VectorOperators.DIV, a, aOff, b, bOff, out, outOff, n);
+    }
+
+    @Override
+    public void scale(float[] a, int aOff, float scalar, float[] out, int outOff, int n) {
+        FloatVector vs = FloatVector.broadcast(SPECIES, scalar);
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, a, aOff + i).mul(vs).intoArray(out, outOff + i);
+        }
+        if (i < n) {
+            VectorMask<Float> m = SPECIES.indexInRange(i, n);
+            FloatVector.fromArray(SPECIES, a, aOff + i, m).mul(vs).intoArray(out, outOff + i, m);
+        }
+    }
+
+    @Override
+    public float dot(MemorySegment a, long aOff, float[] b, int bOff, int n) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromMemorySegment(SPECIES, a, aOff + 4L * i, LE);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i);
+            acc = va.fma(vb, acc);
+        }
+        if (i < n) {
+            VectorMask<Float> m = SPECIES.indexInRange(i, n);
+            FloatVector va = FloatVector.fromMemorySegment(SPECIES, a, aOff + 4L * i, LE, m);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i, m);
+            acc = va.fma(vb, acc);
+        }
+        return acc.reduceLanes(VectorOperators.ADD);
+    }
+
+    @Override
+    public void axpy(float alpha, MemorySegment x, long xOff, float[] y, int yOff, int n) {
+        FloatVector va = FloatVector.broadcast(SPECIES, alpha);
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromMemorySegment(SPECIES, x, xOff + 4L * i, LE);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, yOff + i);
+            vx.fma(va, vy).intoArray(y, yOff + i);
+        }
+        if (i < n) {
+            VectorMask<Float> m = SPECIES.indexInRange(i, n);
+            FloatVector vx = FloatVector.fromMemorySegment(SPECIES, x, xOff + 4L * i, LE, m);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, yOff + i, m);
+            vx.fma(va, vy).intoArray(y, yOff + i, m);
+        }
+    }
+
+    @Override
+    public void axpy(float alpha, MemorySegment x, long xOff, MemorySegment y, long yOff, int n) {
+        FloatVector va = FloatVector.broadcast(SPECIES, alpha);
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            long xi = xOff + 4L * i;
+            long yi = yOff + 4L * i;
+            FloatVector vx = FloatVector.fromMemorySegment(SPECIES, x, xi, LE);
+            FloatVector vy = FloatVector.fromMemorySegment(SPECIES, y, yi, LE);
+            vx.fma(va, vy).intoMemorySegment(y, yi, LE);
+        }
+        if (i < n) {
+            VectorMask<Float> m = SPECIES.indexInRange(i, n);
+            long xi = xOff + 4L * i;
+            long yi = yOff + 4L * i;
+            FloatVector vx = FloatVector.fromMemorySegment(SPECIES, x, xi, LE, m);
+            FloatVector vy = FloatVector.fromMemorySegment(SPECIES, y, yi, LE, m);
+            vx.fma(va, vy).intoMemorySegment(y, yi, LE, m);
+        }
+    }
+
+    /**
+     * BF16 weights are widened in registers: load shorts, zero-extend to
+     * ints, shift into the upper 16 bits and reinterpret as floats.
+     * FP16 falls back to the scalar loop (Float.float16ToFloat is an
+     * intrinsic the JIT can vectorize on its own).
+     */
+    @Override
+    public void axpyHalf(float alpha, short[] x, int xOff, Precision format, float[] y, int yOff, int n) {
+        if (format != Precision.BF16) {
+            super.axpyHalf(alpha, x, xOff, format, y, yOff, n);
+            return;
+        }
+        FloatVector va = FloatVector.broadcast(SPECIES, alpha);
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector vx = widenBf16(ShortVector.fromArray(SHORT_SPECIES, x, xOff + i));
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, yOff + i);
+            vx.fma(va, vy).intoArray(y, yOff + i);
+        }
+        if (i < n) {
+            VectorMask<Short> ms = SHORT_SPECIES.indexInRange(i, n);
+            VectorMask<Float> m = SPECIES.indexInRange(i, n);
+            FloatVector vx = widenBf16(ShortVector.fromArray(SHORT_SPECIES, x, xOff + i, ms));
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, yOff + i, m);
+            vx.fma(va, vy).intoArray(y, yOff + i, m);
+        }
+    }
+
+    /**
+     * int8 dot product: bytes are sign-extended to int lanes, multiplied
+     * and accumulated in int32 lanes, then reduced once at the end.
+     */
+    @Override
+    public int dotInt8(byte[] a, int aOff, byte[] b, int bOff, int n) {
+        IntVector acc = IntVector.zero(INT_SPECIES);
+        int lanes = BYTE_SPECIES.length();
+        int i = 0;
+        int bound = n - (n % lanes);
+        for (; i < bound; i += lanes) {
+            ByteVector ba = ByteVector.fromArray(BYTE_SPECIES, a, aOff + i);
+            ByteVector bb = ByteVector.fromArray(BYTE_SPECIES, b, bOff + i);
+            for (int part = 0; part < BYTE_PARTS; part++) {
+                IntVector va = (IntVector) ba.convertShape(VectorOperators.B2I, INT_SPECIES, part);
+                IntVector vb = (IntVector) bb.convertShape(VectorOperators.B2I, INT_SPECIES, part);
+                acc = acc.add(va.mul(vb));
+            }
+        }
+        int sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            sum += a[aOff + i] * b[bOff + i];
+        }
+        return sum;
+    }
+
+    // ============================
+    // Fast math (same polynomials as FastMath)
+    // ============================
+
+    @Override
+    public float expShifted(float[] a, int aOff, float shift, float[] out, int outOff, int n) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector e = fastExp(FloatVector.fromArray(SPECIES, a, aOff + i).add(shift));
+            e.intoArray(out, outOff + i);
+            acc = acc.add(e);
+        }
+        if (i < n) {
+            VectorMask<Float> m = SPECIES.indexInRange(i, n);
+            FloatVector e = fastExp(FloatVector.fromArray(SPECIES, a, aOff + i, m).add(shift));
+            e.intoArray(out, outOff + i, m);
+            acc = acc.add(e, m);
+        }
+        return acc.reduceLanes(VectorOperators.ADD);
+    }
+
+    @Override
+    public void sigmoid(float[] a, int aOff, float[] out, int outOff, int n) {
+        for (int i = 0; i < n; i += SPECIES.length()) {
+            VectorMask<Float> m = SPECIES.indexInRange(i, n);
+            FloatVector x = FloatVector.fromArray(SPECIES, a, aOff + i, m);
+            FloatVector one = FloatVector.broadcast(SPECIES, 1.0f);
+            one.div(fastExp(x.neg()).add(1.0f)).intoArray(out, outOff + i, m);
+        }
+    }
+
+    @Override
+    public void tanh(float[] a, int aOff, float[] out, int outOff, int n) {
+        for (int i = 0; i < n; i += SPECIES.length()) {
+            VectorMask<Float> m = SPECIES.indexInRange(i, n);
+            FloatVector x = FloatVector.fromArray(SPECIES, a, aOff + i, m);
+            FloatVector ax = x.abs();
+
+            // Small |x|: odd polynomial
+            FloatVector z = x.mul(x);
+            FloatVector p = FloatVector.broadcast(SPECIES, FastMath.TANH_P0)
+                    .mul(z).add(FastMath.TANH_P1)
+                    .mul(z).add(FastMath.TANH_P2)
+                    .mul(z).add(FastMath.TANH_P3)
+                    .mul(z).add(FastMath.TANH_P4);
+            FloatVector small = p.mul(z).mul(x).add(x);
+
+            // Larger |x|: 1 - 2 / (e^(2|x|) + 1), sign restored (exp clamps, so no overflow)
+            FloatVector t = FloatVector.broadcast(SPECIES, 1.0f)
+                    .sub(FloatVector.broadcast(SPECIES, 2.0f).div(fastExp(ax.add(ax)).add(1.0f)));
+            FloatVector large = t.blend(t.neg(), x.lt(0.0f));
+
+            large.blend(small, ax.lt(FastMath.TANH_SMALL)).intoArray(out, outOff + i, m);
+        }
+    }
+
+    /**
+     * Gathers x[xOff + index[p]] for a full vector of entries at a time
+     * (hardware gather where available), FMA with the contiguous values.
+     */
+    @Override
+    public float sparseDot(float[] values, int[] index, int from, int to, float[] x, int xOff) {
+        int lanes = SPECIES.length();
+        FloatVector acc0 = FloatVector.zero(SPECIES);
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        int p = from;
+        for (; p + 2 * lanes <= to; p += 2 * lanes) {
+            FloatVector x0 = FloatVector.fromArray(SPECIES, x, xOff, index, p);
+            FloatVector x1 = FloatVector.fromArray(SPECIES, x, xOff, index, p + lanes);
+            acc0 = FloatVector.fromArray(SPECIES, values, p).fma(x0, acc0);
+            acc1 = FloatVector.fromArray(SPECIES, values, p + lanes).fma(x1, acc1);
+        }
+        if (p + lanes <= to) {
+            FloatVector x0 = FloatVector.fromArray(SPECIES, x, xOff, index, p);
+            acc0 = FloatVector.fromArray(SPECIES, values, p).fma(x0, acc0);
+            p += lanes;
+        }
+        float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; p < to; p++) {
+            sum += values[p] * x[xOff + index[p]];
+        }
+        return sum;
+    }
+
+    /**
+     * Vector version of FastMath.exp: range reduction, degree-6 polynomial,
+     * 2^n written into the exponent bits.
+     */
+    private static FloatVector fastExp(FloatVector x) {
+        x = x.max(FastMath.EXP_MIN).min(FastMath.EXP_MAX);
+        FloatVector fn = x.mul(FastMath.LOG2E).add(FastMath.ROUND_MAGIC).sub(FastMath.ROUND_MAGIC);
+        FloatVector r = x.sub(fn.mul(FastMath.LN2_HI)).sub(fn.mul(FastMath.LN2_LO));
+
+        FloatVector p = FloatVector.broadcast(SPECIES, FastMath.EXP_P0)
+                .mul(r).add(FastMath.EXP_P1)
+                .mul(r).add(FastMath.EXP_P2)
+                .mul(r).add(FastMath.EXP_P3)
+                .mul(r).add(FastMath.EXP_P4)
+                .mul(r).add(FastMath.EXP_P5);
+        FloatVector er = p.mul(r).mul(r).add(r).add(1.0f);
+
+        IntVector n = (IntVector) fn.convertShape(VectorOperators.F2I, INT_SPECIES, 0);
+        FloatVector pow2 = n.add(127).lanewise(VectorOperators.LSHL, 23).reinterpretAsFloats();
+        return er.mul(pow2);
+    }
+
+    /**
+     * Vector GEMM micro-kernel. The NR columns of the tile are covered by
+     * NR / lanes column strips; each strip keeps one accumulator vector per
+     * row of the tile (8 registers) and does one broadcast-FMA per row and k.
+     */
+    @Override
+    public void gemmMicroKernel(int kc, float[] a, int aOff, float[] b, int bOff,
+                                float[] c, int cOff, int ldc) {
+        if (Gemm.MR != 8 || Gemm.NR % SPECIES.length() != 0) {
+            super.gemmMicroKernel(kc, a, aOff, b, bOff, c, cOff, ldc);
+            return;
+        }
+        for (int j = 0; j < Gemm.NR; j += SPECIES.length()) {
+            microStrip(kc, a, aOff, b, bOff + j, c, cOff + j, ldc);
+        }
+    }
+
+    /**
+     * One 8 x lanes strip of the micro-tile.
+     */
+    private static void microStrip(int kc, float[] a, int aOff, float[] b, int bOff,
+                                   float[] c, int cOff, int ldc) {
+        FloatVector c0 = FloatVector.zero(SPECIES), c1 = FloatVector.zero(SPECIES);
+        FloatVector c2 = FloatVector.zero(SPECIES), c3 = FloatVector.zero(SPECIES);
+        FloatVector c4 = FloatVector.zero(SPECIES), c5 = FloatVector.zero(SPECIES);
+        FloatVector c6 = FloatVector.zero(SPECIES), c7 = FloatVector.zero(SPECIES);
+
+        for (int p = 0; p < kc; p++) {
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff);
+            c0 = vb.fma(FloatVector.broadcast(SPECIES, a[aOff]), c0);
+            c1 = vb.fma(FloatVector.broadcast(SPECIES, a[aOff + 1]), c1);
+            c2 = vb.fma(FloatVector.broadcast(SPECIES, a[aOff + 2]), c2);
+            c3 = vb.fma(FloatVector.broadcast(SPECIES, a[aOff + 3]), c3);
+            c4 = vb.fma(FloatVector.broadcast(SPECIES, a[aOff + 4]), c4);
+            c5 = vb.fma(FloatVector.broadcast(SPECIES, a[aOff + 5]), c5);
+            c6 = vb.fma(FloatVector.broadcast(SPECIES, a[aOff + 6]), c6);
+            c7 = vb.fma(FloatVector.broadcast(SPECIES, a[aOff + 7]), c7);
+            aOff += Gemm.MR;
+            bOff += Gemm.NR;
+        }
+
+        addInto(c0, c, cOff);
+        addInto(c1, c, cOff + ldc);
+        addInto(c2, c, cOff + 2 * ldc);
+        addInto(c3, c, cOff + 3 * ldc);
+        addInto(c4, c, cOff + 4 * ldc);
+        addInto(c5, c, cOff + 5 * ldc);
+        addInto(c6, c, cOff + 6 * ldc);
+        addInto(c7, c, cOff + 7 * ldc);
+    }
+
+    /** c[off .. off + lanes) += v */
+    private static void addInto(FloatVector v, float[] c, int off) {
+        FloatVector.fromArray(SPECIES, c, off).add(v).intoArray(c, off);
+    }
+
+    private static FloatVector widenBf16(ShortVector bits) {
+        IntVector wide = (IntVector) bits.convertShape(VectorOperators.ZERO_EXTEND_S2I, INT_SPECIES, 0);
+        return wide.lanewise(VectorOperators.LSHL, 16).reinterpretAsFloats();
+    }
+
+    /**
+     * Shared loop for elementwise binary operations.
+     */
+    private static void binary(VectorOperators.Binary op,
+                               float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOff + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i);
+            va.lanewise(op, vb).intoArray(out, outOff + i);
+        }
+        if (i < n) {
+            VectorMask<Float> m = SPECIES.indexInRange(i, n);
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOff + i, m);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i, m);
+            va.lanewise(op, vb).intoArray(out, outOff + i, m);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package NeuralNetCPUv;
+
+/**
+ * Dataset with sparse (CSR) features and dense labels.
+ * Used for wide, mostly-zero inputs such as one-hot or hashed categorical features.
+ */
+public class SparseDataset {
+    public CsrMatrix features;
+    public Matrix labels;
+    public int numExamples;
+
+    /**
+     * Creates a dataset from already built CSR features and labels.
+     *
+     * @param features sparse feature rows
+     * @param labels   label rows (one per feature row)
+     */
+    public SparseDataset(CsrMatrix features, Matrix labels) {
+        if (features.rows != labels.rows) {
+            throw new IllegalArgumentException("Features and labels must have the same number of rows.");
+        }
+        this.features = features;
+        this.labels = labels;
+        this.numExamples = features.rows;
+    }
+
+    /**
+     * Converts a dense training dataset (features are compressed, labels shared).
+     */
+    public static SparseDataset fromDense(TrainDataset dataset) {
+        return new SparseDataset(CsrMatrix.fromDense(dataset.features), dataset.labels);
+    }
+
+    /**
+     * Converts a dense test dataset (features are compressed, labels shared).
+     */
+    public static SparseDataset fromDense(TestDataset dataset) {
+        return new SparseDataset(CsrMatrix.fromDense(dataset.features), dataset.labels);
+    }
+
+    /**
+     * Prints one sample from the dataset (both features and labels).
+     *
+     * @param index sample index to print
+     */
+    public void printSample(int index) {
+        if (index < 0 || index >= numExamples) {
+            System.out.println("Index out of bounds!");
+            return;
+        }
+
+        System.out.print("Features: {");
+        for (int p = features.rowPtr[index]; p < features.rowPtr[index + 1]; p++) {
+            System.out.printf("%d: %.4f", features.colIdx[p], features.values[p]);
+            if (p != features.rowPtr[index + 1] - 1) {
+                System.out.print(", ");
+            }
+        }
+        System.out.println("}");
+
+        System.out.print("Labels: ");
+        Vector.print(labels.getRow(index));
+    }
+}
@@ -0,0 +1,175 @@
+package NeuralNetCPUv;
+
+/**
+ * Inference-only copy of a pruned NeuralNetwork with sparse weights.
+ *
+ * Every layer whose weights are at least minSparsity zeros is stored as a
+ * CSR matrix of W^T (row j = the non-zero weights of output neuron j, with
+ * their input indices), so the layer is one sparse dot product per output:
+ *   z[j] = b[j] + sum_p values[p] * x[colIdx[p]]
+ * which costs nnz multiply-adds instead of inputSize * outputSize.
+ * Layers that are not sparse enough to profit keep a dense copy and use the
+ * regular dense kernel.
+ *
+ * Build one after Pruner.prune(...); forward buffers are reused, so an
+ * instance must not be shared between threads.
+ */
+public class SparseNetwork {
+
+    /**
+     * Default minimum sparsity for a layer to be stored as CSR. The sparse
+     * kernel gathers its inputs and so does less work per nanosecond than
+     * the streaming dense kernel; with SIMD it only wins above ~85% zeros.
+     */
+    public static final float DEFAULT_MIN_SPARSITY = 0.85f;
+
+    /** Inputs per layer */
+    public final int[] inputSizes;
+
+    /** Outputs per layer */
+    public final int[] outputSizes;
+
+    /** Transposed CSR weights per layer, or null for a dense layer */
+    public final CsrMatrix[] sparseWeights;
+
+    /** Dense weights (inputSize x outputSize) of layers kept dense, else null */
+    public final Matrix[] denseWeights;
+
+    /** Biases per layer */
+    public final float[][] biases;
+
+    /** Activation function per layer */
+    private final Activation[] activations;
+
+    /** Output buffer per layer and the softmax output */
+    private final float[][] outputs;
+    private final float[] probabilities;
+
+    /**
+     * Converts a network with the default minimum sparsity.
+     */
+    public SparseNetwork(NeuralNetwork source) {
+        this(source, DEFAULT_MIN_SPARSITY);
+    }
+
+    /**
+     * Converts a (pruned) network.
+     *
+     * @param source      network to convert (left unchanged)
+     * @param minSparsity layers with at least this fraction of zero weights are stored as CSR
+     */
+    public SparseNetwork(NeuralNetwork source, float minSparsity) {
+        int n = source.layers.length;
+        this.inputSizes = new int[n];
+        this.outputSizes = new int[n];
+        this.sparseWeights = new CsrMatrix[n];
+        this.denseWeights = new Matrix[n];
+        this.biases = new float[n][];
+        this.activations = new Activation[n];
+        this.outputs = new float[n][];
+
+        for (int l = 0; l < n; l++) {
+            Layer layer = source.layers[l];
+            inputSizes[l] = layer.inputSize;
+            outputSizes[l] = layer.outputSize;
+            biases[l] = layer.biases.clone();
+            activations[l] = layer.activation;
+            outputs[l] = new float[layer.outputSize];
+
+            if (Pruner.sparsity(layer) >= minSparsity) {
+                sparseWeights[l] = CsrMatrix.fromDense(Matrix.transpose(layer.weights));
+            } else {
+                Matrix copy = new Matrix(layer.inputSize, layer.outputSize);
+                for (int i = 0; i < layer.inputSize; i++) {
+                    System.arraycopy(layer.weights.data, layer.weights.index(i, 0),
+                            copy.data, copy.index(i, 0), layer.outputSize);
+                }
+                denseWeights[l] = copy;
+            }
+        }
+        this.probabilities = new float[outputSizes[n - 1]];
+    }
+
+    /**
+     * Class probabilities for an input vector.
+     *
+     * @return probabilities (owned by this network, overwritten by the next call)
+     */
+    public float[] predict(float[] input) {
+        return predict(input, 0);
+    }
+
+    /**
+     * Class probabilities for an input stored at an offset inside a larger array.
+     *
+     * @return probabilities (owned by this network, overwritten by the next call)
+     */
+    public float[] predict(float[] input, int inputOffset) {
+        Kernels kernels = Kernels.get();
+        float[] x = input;
+        int xOff = inputOffset;
+
+        for (int l = 0; l < outputs.length; l++) {
+            float[] z = outputs[l];
+            int out = outputSizes[l];
+
+            // Step 1: z = W^T x, sparse or dense
+            if (sparseWeights[l] != null) {
+                sparseWeights[l].multiply(x, xOff, z, 0);
+                kernels.add(z, 0, biases[l], 0, z, 0, out);
+            } else {
+                System.arraycopy(biases[l], 0, z, 0, out);
+                Matrix w = denseWeights[l];
+                kernels.gemvTransposed(w.data, w.offset, w.stride, w.rows, w.cols, x, xOff, z, 0);
+            }
+
+            // Step 2: activation in place
+            activations[l].apply(z, z, out);
+
+            x = z;
+            xOff = 0;
+        }
+
+        Activations.softmaxInto(x, 0, probabilities, 0, probabilities.length);
+        return probabilities;
+    }
+
+    /**
+     * Classification accuracy on a test dataset.
+     */
+    public float evaluate(TestDataset test) {
+        int correct = 0;
+        for (int i = 0; i < test.numExamples; i++) {
+            float[] pred = predict(test.features.data, test.features.index(i, 0));
+            int label = NeuralNetwork.argMax(test.labels.data, test.labels.index(i, 0), test.labels.cols);
+            if (NeuralNetwork.argMax(pred) == label) {
+                correct++;
+            }
+        }
+        return (float) correct / test.numExamples;
+    }
+
+    /** Number of stored weights (non-zeros of CSR layers plus all weights of dense layers) */
+    public long storedWeights() {
+        long count = 0;
+        for (int l = 0; l < outputs.length; l++) {
+            count += sparseWeights[l] != null ? sparseWeights[l].nnz() : (long) inputSizes[l] * outputSizes[l];
+        }
+        return count;
+    }
+
+    /** Bytes used by the stored parameters (CSR values, indices and row pointers, dense weights, biases) */
+    public long parameterBytes() {
+        long bytes = 0;
+        for (int l = 0; l < outputs.length; l++) {
+            CsrMatrix w = sparseWeights[l];
+            if (w != null) {
+                bytes += 8L * w.nnz() + 4L * (w.rows + 1);
+            } else {
+                bytes += 4L * inputSizes[l] * outputSizes[l];
+            }
+            bytes += 4L * biases[l].length;
+        }
+        return bytes;
+    }
+}
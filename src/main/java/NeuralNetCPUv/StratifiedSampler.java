@@ -0,0 +1,108 @@
+package NeuralNetCPUv;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Random permutation in which every class is spread evenly over the epoch,
+ * so any window of consecutive indices (a mini-batch) has close to the
+ * dataset's class proportions, also for rare classes.
+ *
+ * Each epoch:
+ *  1. the rows of every class are shuffled among themselves;
+ *  2. the j-th row of class c (n_c rows) gets the slot
+ *       floor((j + u_c) * n / n_c),  u_c uniform in [0, 1)
+ *     i.e. the class is laid out with an even stride and a random phase;
+ *  3. rows are ordered by slot with a counting sort.
+ * Everything is O(n) int work.
+ */
+public class StratifiedSampler extends Sampler {
+
+    /** Class id per row */
+    public final int[] classes;
+
+    /** Number of distinct class ids (max + 1) */
+    public final int numClasses;
+
+    private final Random random;
+
+    /** Rows grouped by class; class c occupies members[classStart[c] .. classStart[c + 1]) */
+    private final int[] members;
+    private final int[] classStart;
+
+    /** Slot of members[k], and counting-sort buckets */
+    private final int[] slots;
+    private final int[] bucketStart;
+
+    public StratifiedSampler(int[] classes, Random random) {
+        super(classes.length);
+        this.classes = classes.clone();
+        this.random = random;
+        int n = classes.length;
+
+        int max = -1;
+        for (int c : classes) {
+            if (c < 0) {
+                throw new IllegalArgumentException("Negative class id " + c);
+            }
+            max = Math.max(max, c);
+        }
+        this.numClasses = max + 1;
+
+        // Group rows by class (stable counting sort)
+        this.classStart = new int[numClasses + 1];
+        for (int c : classes) {
+            classStart[c + 1]++;
+        }
+        for (int c = 0; c < numClasses; c++) {
+            classStart[c + 1] += classStart[c];
+        }
+        this.members = new int[n];
+        int[] fill = Arrays.copyOf(classStart, numClasses);
+        for (int i = 0; i < n; i++) {
+            members[fill[classes[i]]++] = i;
+        }
+
+        this.slots = new int[n];
+        this.bucketStart = new int[n + 1];
+    }
+
+    @Override
+    public String name() {
+        return "Stratified(n=" + order.length + ", classes=" + numClasses + ")";
+    }
+
+    @Override
+    public int[] nextEpoch() {
+        int n = order.length;
+
+        // Step 1 + 2: shuffle within each class and assign evenly spaced slots
+        for (int c = 0; c < numClasses; c++) {
+            int from = classStart[c];
+            int count = classStart[c + 1] - from;
+            for (int k = count - 1; k > 0; k--) {
+                int r = random.nextInt(k + 1);
+                int tmp = members[from + k];
+                members[from + k] = members[from + r];
+                members[from + r] = tmp;
+            }
+            double phase = random.nextDouble();
+            for (int j = 0; j < count; j++) {
+                slots[from + j] = (int) ((j + phase) * n / count);
+            }
+        }
+
+        // Step 3: counting sort by slot
+        Arrays.fill(bucketStart, 0);
+        for (int k = 0; k < n; k++) {
+            bucketStart[slots[k] + 1]++;
+        }
+        for (int s = 0; s < n; s++) {
+            bucketStart[s + 1] += bucketStart[s];
+        }
+        for (int k = 0; k < n; k++) {
+            order[bucketStart[slots[k]]++] = members[k];
+        }
+        return order;
+    }
+}
@@ -52,10 +52,10 @@ public class TestDataset {
 
         // If index is valid, print the feature vector and label vector
         System.out.print("Features: ");
-        Vector.print(features.data[index]);
+        Vector.print(features.getRow(index));
 
         System.out.print("Labels: ");
-        Vector.print(labels.data[index]);
+        Vector.print(labels.getRow(index));
     }
 }
 
@@ -52,17 +52,17 @@ public class TrainDataset {
 
         // If index is valid, print the feature vector and label vector
         System.out.print("Features: ");
-        Vector.print(features.data[index]);
+        Vector.print(features.getRow(index));
 
         System.out.print("Labels: ");
-        Vector.print(labels.data[index]);
+        Vector.print(labels.getRow(index));
     }
 
     /**
      * Shuffles the dataset so inputs and outputs remain aligned.
      */
     public void shuffle() {
-        RandomUtil.shuffle(this.features.data, this.labels.data);
+        RandomUtil.shuffle(this.features, this.labels);
     }
 }
 
@@ -6,50 +6,82 @@ package NeuralNetCPUv;
 public class Trainer {
 
     private NeuralNetwork network;
-    private float learningRate;
+    private Optimizer optimizer;
+    private Sampler sampler;
 
     /**
-     * Creates a new Trainer for a given neural network.
+     * Creates a new Trainer for a given neural network using plain SGD.
      *
      * @param network      the neural network to train
      * @param learningRate the learning rate for weight updates
      */
     public Trainer(NeuralNetwork network, float learningRate) {
+        this(network, Optimizer.sgd(learningRate));
+    }
+
+    /**
+     * Creates a new Trainer with a custom update rule (momentum, Adam, ...).
+     *
+     * @param network   the neural network to train
+     * @param optimizer the optimizer applied after every sample
+     */
+    public Trainer(NeuralNetwork network, Optimizer optimizer) {
         this.network = network;
-        this.learningRate = learningRate;
+        this.optimizer = optimizer;
+    }
+
+    /**
+     * Sets the order in which train() visits samples (e.g. Sampler.stratified
+     * or Sampler.weighted). Without a sampler every epoch uses a fresh random
+     * permutation.
+     *
+     * @param sampler the sampler, sized for the dataset passed to train()
+     */
+    public void setSampler(Sampler sampler) {
+        this.sampler = sampler;
     }
 
     /**
      * Trains the neural network on the given dataset for a number of epochs.
+     * The trainer's optimizer is installed on the network for the duration of
+     * the call; the network's previous optimizer is restored afterwards.
      *
      * @param trainData the training dataset
      * @param epochs    number of passes over the dataset
      */
     public void train(TrainDataset trainData, int epochs) {
+        Optimizer previous = network.getOptimizer();
+        network.setOptimizer(optimizer);
+        try {
+            runEpochs(trainData, epochs);
+        } finally {
+            network.setOptimizer(previous);
+        }
+    }
+
+    private void runEpochs(TrainDataset trainData, int epochs) {
+        Sampler epochSampler = sampler != null ? sampler : Sampler.random(trainData.numExamples);
+
         for (int epoch = 1; epoch <= epochs; epoch++) {
 
-            // Shuffle dataset at the start of each epoch
-            DataUtils.shuffleDataset(trainData.features, trainData.labels);
+            // Visiting order of this epoch (the dataset itself is not reordered)
+            int[] order = epochSampler.nextEpoch();
 
             float totalLoss = 0f;
 
             // Go through each training sample
-            for (int i = 0; i < trainData.numExamples; i++) {
-                float[] input = trainData.features.data[i];
-                float[] target = trainData.labels.data[i];
-
-                // Forward pass
-                float[] predicted = network.forward(input);
-
-                // Accumulate loss
-                totalLoss += NeuralNetwork.crossEntropyLoss(predicted, target);
-
-                // Backpropagation
-                network.trainSample(input, target);
+            for (int i : order) {
+                // Rows are read in place from the flat feature / label storage
+                int inputOffset = trainData.features.index(i, 0);
+                int targetOffset = trainData.labels.index(i, 0);
+
+                // Forward pass, loss and backpropagation in one step
+                totalLoss += network.trainStep(trainData.features.data, inputOffset,
+                        trainData.labels.data, targetOffset);
             }
 
             // Report average loss after each epoch
-            System.out.printf("Epoch %d: Loss = %.4f%n", epoch, totalLoss / trainData.numExamples);
+            System.out.printf("Epoch %d: Loss = %.4f%n", epoch, totalLoss / epochSampler.size());
         }
     }
 
@@ -64,9 +96,9 @@ public class Trainer {
 
         // Go through each test example
         for (int i = 0; i < testData.numExamples; i++) {
-            float[] predicted = network.forward(testData.features.data[i]);
+            float[] predicted = network.predict(testData.features.data, testData.features.index(i, 0));
             int predLabel = NeuralNetwork.argMax(predicted);
-            int trueLabel = NeuralNetwork.argMax(testData.labels.data[i]);
+            int trueLabel = NeuralNetwork.argMax(testData.labels.data, testData.labels.index(i, 0), testData.labels.cols);
 
             // Explicit if condition
             if (predLabel == trueLabel) {
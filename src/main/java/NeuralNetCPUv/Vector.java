@@ -29,12 +29,17 @@ public class Vector {
         return vec;
     }
 
+    // ============================
+    // Allocating operations
+    // (thin wrappers around the "Into" versions below)
+    // ============================
+
     /**
      * Copy a vector into a new array.
      */
     public static float[] copy(float[] vec) {
         float[] newVec = new float[vec.length];
-        System.arraycopy(vec, 0, newVec, 0, vec.length);
+        copyInto(vec, newVec);
         return newVec;
     }
 
@@ -42,11 +47,7 @@ public class Vector {
      * Compute dot product of two vectors.
      */
     public static float dot(float[] a, float[] b) {
-        float sum = 0.0f;
-        for (int i = 0; i < a.length; i++) {
-            sum += a[i] * b[i];
-        }
-        return sum;
+        return Kernels.get().dot(a, 0, b, 0, a.length);
     }
 
     /**
@@ -54,9 +55,7 @@ public class Vector {
      */
     public static float[] add(float[] a, float[] b) {
         float[] result = new float[a.length];
-        for (int i = 0; i < a.length; i++) {
-            result[i] = a[i] + b[i];
-        }
+        addInto(a, b, result);
         return result;
     }
 
@@ -65,9 +64,7 @@ public class Vector {
      */
     public static float[] subtract(float[] a, float[] b) {
         float[] result = new float[a.length];
-        for (int i = 0; i < a.length; i++) {
-            result[i] = a[i] - b[i];
-        }
+        subtractInto(a, b, result);
         return result;
     }
 
@@ -76,9 +73,7 @@ public class Vector {
      */
     public static float[] multiplyElem(float[] a, float[] b) {
         float[] result = new float[a.length];
-        for (int i = 0; i < a.length; i++) {
-            result[i] = a[i] * b[i];
-        }
+        multiplyElemInto(a, b, result);
         return result;
     }
 
@@ -87,9 +82,7 @@ public class Vector {
      */
     public static float[] divideElem(float[] a, float[] b) {
         float[] result = new float[a.length];
-        for (int i = 0; i < a.length; i++) {
-            result[i] = a[i] / b[i];
-        }
+        divideElemInto(a, b, result);
         return result;
     }
 
@@ -98,9 +91,7 @@ public class Vector {
      */
     public static float[] scale(float[] a, float scalar) {
         float[] result = new float[a.length];
-        for (int i = 0; i < a.length; i++) {
-            result[i] = a[i] * scalar;
-        }
+        scaleInto(a, scalar, result);
         return result;
     }
 
@@ -108,10 +99,7 @@ public class Vector {
      * Compute Euclidean norm of a vector.
      */
     public static float norm(float[] a) {
-        float sum = 0.0f;
-        for (float v : a) {
-            sum += v * v;
-        }
+        float sum = Kernels.get().sumOfSquares(a, 0, a.length);
         return (float) Math.sqrt(sum);
     }
 
@@ -119,14 +107,117 @@ public class Vector {
      * Normalize a vector to unit length.
      */
     public static float[] normalize(float[] a) {
+        float[] result = new float[a.length];
+        normalizeInto(a, result);
+        return result;
+    }
+
+    // ============================
+    // Destination ("Into") and in-place operations
+    //
+    // These never allocate. The result is written to "out", which must
+    // have at least a.length elements.
+    //
+    // Aliasing rules:
+    //  - out may be the very same array as an input (e.g. addInto(a, b, a)
+    //    is a valid in-place add), because element i of the result only
+    //    depends on element i of the inputs.
+    //  - out must NOT be a different array view that partially overlaps
+    //    an input; Java arrays cannot express that, so this only matters
+    //    for the offset-based kernels in Kernels.
+    // ============================
+
+    /**
+     * out = a (copy without allocating).
+     */
+    public static void copyInto(float[] a, float[] out) {
+        System.arraycopy(a, 0, out, 0, a.length);
+    }
+
+    /**
+     * out = a + b. out may alias a or b.
+     */
+    public static void addInto(float[] a, float[] b, float[] out) {
+        Kernels.get().add(a, 0, b, 0, out, 0, a.length);
+    }
+
+    /**
+     * out = a - b. out may alias a or b.
+     */
+    public static void subtractInto(float[] a, float[] b, float[] out) {
+        Kernels.get().subtract(a, 0, b, 0, out, 0, a.length);
+    }
+
+    /**
+     * out = a * b (elementwise). out may alias a or b.
+     */
+    public static void multiplyElemInto(float[] a, float[] b, float[] out) {
+        Kernels.get().multiply(a, 0, b, 0, out, 0, a.length);
+    }
+
+    /**
+     * out = a / b (elementwise). out may alias a or b.
+     */
+    public static void divideElemInto(float[] a, float[] b, float[] out) {
+        Kernels.get().divide(a, 0, b, 0, out, 0, a.length);
+    }
+
+    /**
+     * out = a * scalar. out may alias a.
+     */
+    public static void scaleInto(float[] a, float scalar, float[] out) {
+        Kernels.get().scale(a, 0, scalar, out, 0, a.length);
+    }
+
+    /**
+     * a = a * scalar.
+     */
+    public static void scaleInPlace(float[] a, float scalar) {
+        Kernels.get().scale(a, 0, scalar, a, 0, a.length);
+    }
+
+    /**
+     * y = y + alpha * x (BLAS axpy). x and y may be the same array.
+     */
+    public static void axpy(float alpha, float[] x, float[] y) {
+        Kernels.get().axpy(alpha, x, 0, y, 0, x.length);
+    }
+
+    /**
+     * out = a / |a| (or a copy of a when |a| == 0). out may alias a.
+     */
+    public static void normalizeInto(float[] a, float[] out) {
         float mag = norm(a);
         if (mag == 0.0f) {
-            return copy(a);
+            if (out != a) {
+                copyInto(a, out);
+            }
         } else {
-            return scale(a, 1.0f / mag);
+            scaleInto(a, 1.0f / mag, out);
         }
     }
 
+    /**
+     * a = a / |a| (unchanged when |a| == 0).
+     */
+    public static void normalizeInPlace(float[] a) {
+        normalizeInto(a, a);
+    }
+
+    /**
+     * a = a + b.
+     */
+    public static void addInPlace(float[] a, float[] b) {
+        addInto(a, b, a);
+    }
+
+    /**
+     * a = a - b.
+     */
+    public static void subtractInPlace(float[] a, float[] b) {
+        subtractInto(a, b, a);
+    }
+
     /**
      * Fill a vector with zeros.
      */
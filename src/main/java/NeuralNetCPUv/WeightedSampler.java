@@ -0,0 +1,100 @@
+package NeuralNetCPUv;
+
+import java.util.Random;
+
+/**
+ * Draws rows with replacement, each with probability proportional to its
+ * weight (e.g. Sampler.balancedWeights to oversample rare classes).
+ *
+ * Uses Vose's alias method: O(n) setup, then every draw is one random
+ * column plus one coin flip, so an epoch of m draws costs O(m).
+ */
+public class WeightedSampler extends Sampler {
+
+    private final Random random;
+
+    /** Acceptance probability per column */
+    private final float[] probability;
+
+    /** Row taken when column i rejects */
+    private final int[] alias;
+
+    /**
+     * @param weights         non-negative weight per row (not all zero)
+     * @param samplesPerEpoch draws per epoch
+     * @param random          generator
+     */
+    public WeightedSampler(float[] weights, int samplesPerEpoch, Random random) {
+        super(samplesPerEpoch);
+        this.random = random;
+        int n = weights.length;
+
+        double total = 0.0;
+        for (float w : weights) {
+            if (!(w >= 0.0f) || Float.isInfinite(w)) {
+                throw new IllegalArgumentException("Weights must be finite and non-negative");
+            }
+            total += w;
+        }
+        if (total <= 0.0 && samplesPerEpoch > 0) {
+            throw new IllegalArgumentException("At least one weight must be positive");
+        }
+
+        // Scaled weights (mean 1), split into columns below and above 1
+        this.probability = new float[n];
+        this.alias = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        // Pair every small column with a large one that donates the rest of it
+        while (smallCount > 0 && largeCount > 0) {
+            int s = small[--smallCount];
+            int l = large[--largeCount];
+            probability[s] = (float) scaled[s];
+            alias[s] = l;
+            scaled[l] -= 1.0 - scaled[s];
+            if (scaled[l] < 1.0) {
+                small[smallCount++] = l;
+            } else {
+                large[largeCount++] = l;
+            }
+        }
+        // Leftovers are 1 up to rounding
+        while (largeCount > 0) {
+            int l = large[--largeCount];
+            probability[l] = 1.0f;
+            alias[l] = l;
+        }
+        while (smallCount > 0) {
+            int s = small[--smallCount];
+            probability[s] = 1.0f;
+            alias[s] = s;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "Weighted(rows=" + probability.length + ", draws=" + order.length + ")";
+    }
+
+    @Override
+    public int[] nextEpoch() {
+        int n = probability.length;
+        for (int k = 0; k < order.length; k++) {
+            int column = random.nextInt(n);
+            order[k] = random.nextFloat() < probability[column] ? column : alias[column];
+        }
+        return order;
+    }
+}